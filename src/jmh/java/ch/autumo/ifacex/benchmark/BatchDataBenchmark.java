@@ -0,0 +1,129 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.autumo.ifacex.batch.BatchCursor;
+import ch.autumo.ifacex.batch.BatchData;
+
+
+/**
+ * Batch data: Adding records, iterating and serializing
+ * a batch; row vs. columnar storage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchDataBenchmark {
+
+	@Param({"1000", "20000"})
+	private int rows;
+	
+	@Param({"10", "40"})
+	private int columns;
+	
+	@Param({BatchData.STORAGE_ROW, BatchData.STORAGE_COLUMNAR})
+	private String storage;
+	
+	private StubIPC config;
+	private String records[][];
+	private BatchData batch;
+	private WritableByteChannel nullChannel;
+	private ByteBuffer buffer;
+	
+	
+	@Setup
+	public void setup() {
+		config = new StubIPC();
+		records = Records.create(rows, columns);
+		batch = add();
+		nullChannel = Channels.newChannel(OutputStream.nullOutputStream());
+		buffer = ByteBuffer.allocateDirect(64 * 1024);
+	}
+	
+	/**
+	 * BatchData.addRecordValues
+	 * 
+	 * @return batch
+	 */
+	@Benchmark
+	public BatchData add() {
+		final BatchData data = new BatchData(config, BatchData.STORAGE_COLUMNAR.equals(storage));
+		for (int r = 0; r < records.length; r++)
+			data.addRecordValues(records[r]);
+		return data;
+	}
+
+	/**
+	 * Iterate all records of a batch.
+	 * 
+	 * @param blackhole blackhole
+	 */
+	@Benchmark
+	public void iterate(Blackhole blackhole) {
+		final BatchCursor cursor = batch.cursor();
+		while (cursor.hasNext())
+			blackhole.consume(cursor.next());
+	}
+
+	/**
+	 * Serialize a batch into a string; same as an uncached
+	 * BatchData.toString.
+	 * 
+	 * @return serialized batch
+	 * @throws IOException
+	 */
+	@Benchmark
+	public StringBuilder serialize() throws IOException {
+		final StringBuilder out = new StringBuilder();
+		batch.writeTo(out);
+		return out;
+	}
+
+	/**
+	 * Stream a batch into a channel (UTF-8).
+	 * 
+	 * @throws IOException
+	 */
+	@Benchmark
+	public void writeToChannel() throws IOException {
+		buffer.clear();
+		batch.writeTo(nullChannel, buffer, StandardCharsets.UTF_8);
+	}
+	
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.reader.CSVTokenizer;
+import ch.autumo.ifacex.reader.FieldSlices;
+
+
+/**
+ * CSV line splitting: A reference splitter vs. the CSV tokenizer
+ * from strings and from UTF-8 bytes.
+ * 
+ * The reference splitter is IPC.getCSVSepValues of {@link StubIPC},
+ * which runs offline; it isn't the splitter of the ifaceX configuration.
+ * To measure that or another IPC implementation instead, set the system
+ * property 'benchmark.ipc' to its class name; it needs a no-argument
+ * constructor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CSVSplitBenchmark {
+
+	private static final int ROWS = 1000;
+	
+	@Param({"10", "40"})
+	private int columns;
+	
+	@Param({"", "\""})
+	private String enclosure;
+	
+	private IPC config;
+	private String lines[];
+	private byte bytes[][];
+	private CSVTokenizer tokenizer;
+	private FieldSlices slices;
+	
+	
+	@Setup
+	public void setup() throws ReflectiveOperationException {
+		final String ipcClass = System.getProperty("benchmark.ipc");
+		if (ipcClass == null)
+			config = new StubIPC().csv(";", enclosure);
+		else
+			config = (IPC) Class.forName(ipcClass).getDeclaredConstructor().newInstance();
+		lines = Records.lines(Records.create(ROWS, columns), config.getCSVDelimiterChar(), enclosure);
+		bytes = new byte[lines.length][];
+		for (int i = 0; i < lines.length; i++)
+			bytes[i] = lines[i].getBytes(StandardCharsets.UTF_8);
+		tokenizer = config.getCSVTokenizer();
+		slices = new FieldSlices();
+	}
+	
+	/**
+	 * Reference splitter; IPC.getCSVSepValues of the stub IPC
+	 * or of the IPC given by 'benchmark.ipc'.
+	 * 
+	 * @param blackhole blackhole
+	 */
+	@Benchmark
+	public void referenceSepValues(Blackhole blackhole) {
+		for (int i = 0; i < lines.length; i++)
+			blackhole.consume(config.getCSVSepValues(lines[i]));
+	}
+
+	/**
+	 * Tokenize strings into field slices; no values copied.
+	 * 
+	 * @return amount of fields
+	 */
+	@Benchmark
+	public int tokenize() {
+		int fields = 0;
+		for (int i = 0; i < lines.length; i++)
+			fields += tokenizer.tokenize(lines[i], slices);
+		return fields;
+	}
+
+	/**
+	 * Tokenize UTF-8 bytes into field slices; no values copied.
+	 * 
+	 * @return amount of fields
+	 */
+	@Benchmark
+	public int tokenizeBytes() {
+		int fields = 0;
+		for (int i = 0; i < bytes.length; i++)
+			fields += tokenizer.tokenize(bytes[i], 0, bytes[i].length, slices);
+		return fields;
+	}
+
+	/**
+	 * Tokenize strings and copy the values, same
+	 * result as the reference splitter.
+	 * 
+	 * @param blackhole blackhole
+	 */
+	@Benchmark
+	public void tokenizeToArray(Blackhole blackhole) {
+		for (int i = 0; i < lines.length; i++) {
+			tokenizer.tokenize(lines[i], slices);
+			blackhole.consume(slices.toArray());
+		}
+	}
+	
+}
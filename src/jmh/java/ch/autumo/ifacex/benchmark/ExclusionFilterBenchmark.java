@@ -0,0 +1,113 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.autumo.ifacex.CompiledExclusionFilter;
+import ch.autumo.ifacex.ExclusionFilter;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.developer.ExampleExclusionFilter;
+
+
+/**
+ * Record exclusion: ExclusionFilter.addRecord with the developer example
+ * filter (field lookup by name per record) vs. the compiled exclusion
+ * filter of ifaceX with the same rule ('position' is 'CEO') and with
+ * a combined rule.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExclusionFilterBenchmark {
+
+	private static final int ROWS = 1000;
+	
+	@Param({"10", "40"})
+	private int columns;
+	
+	private String fields[];
+	private String records[][];
+	private ExclusionFilter exampleFilter;
+	private ExclusionFilter compiledFilter;
+	private ExclusionFilter combinedFilter;
+	
+	
+	@Setup
+	public void setup() throws IfaceXException {
+		fields = Records.fields(columns);
+		records = Records.create(ROWS, columns);
+		exampleFilter = new ExampleExclusionFilter();
+		compiledFilter = CompiledExclusionFilter.compile("position = 'CEO'", fields);
+		combinedFilter = CompiledExclusionFilter.compile(
+				"position IN ('CEO', 'Sales') AND NOT field_4 IN ('status_0', 'status_1') OR field_0 IS EMPTY", fields);
+	}
+	
+	/**
+	 * ExclusionFilter.addRecord of the developer example filter.
+	 * 
+	 * @return amount of records added
+	 */
+	@Benchmark
+	public int exampleFilter() {
+		return addRecords(exampleFilter);
+	}
+	
+	/**
+	 * ExclusionFilter.addRecord of the compiled filter, same rule
+	 * as the developer example filter.
+	 * 
+	 * @return amount of records added
+	 */
+	@Benchmark
+	public int compiledFilter() {
+		return addRecords(compiledFilter);
+	}
+	
+	/**
+	 * ExclusionFilter.addRecord of the compiled filter, combined rule.
+	 * 
+	 * @return amount of records added
+	 */
+	@Benchmark
+	public int compiledCombinedFilter() {
+		return addRecords(combinedFilter);
+	}
+	
+	private int addRecords(ExclusionFilter filter) {
+		int added = 0;
+		for (int r = 0; r < records.length; r++) {
+			if (filter.addRecord(fields, records[r]))
+				added++;
+		}
+		return added;
+	}
+	
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.autumo.ifacex.batch.BatchData;
+import ch.autumo.ifacex.batch.ValueNormalizer;
+
+
+/**
+ * Value normalization of records before they are added to a batch:
+ * BatchData.modifyValueBeforeAdding by field name vs. a compiled
+ * normalizer by field index.
+ * 
+ * Country mapping isn't covered; it needs the geodata of a full
+ * ifaceX configuration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizerBenchmark {
+
+	private static final int ROWS = 1000;
+	
+	@Param({"10", "40"})
+	private int columns;
+	
+	@Param({"false", "true"})
+	private boolean replace;
+	
+	private String fields[];
+	private String records[][];
+	private BatchData batch;
+	private ValueNormalizer compiled;
+	
+	
+	@Setup
+	public void setup() {
+		fields = Records.fields(columns);
+		records = Records.create(ROWS, columns);
+		// both arms with the same settings
+		final StubIPC config = new StubIPC()
+				.set("replace_char", replace ? "yes" : "no")
+				.set("old_char", "-")
+				.set("new_char", "_")
+				.set("clean_null_values", "yes");
+		batch = new BatchData(config);
+		compiled = ValueNormalizer.of(config).compile(fields);
+	}
+	
+	/**
+	 * BatchData.modifyValueBeforeAdding
+	 * 
+	 * @param blackhole blackhole
+	 */
+	@Benchmark
+	public void modifyValueBeforeAdding(Blackhole blackhole) {
+		for (int r = 0; r < records.length; r++) {
+			final String record[] = records[r];
+			for (int c = 0; c < record.length; c++)
+				blackhole.consume(batch.modifyValueBeforeAdding(record[c], fields[c]));
+		}
+	}
+
+	/**
+	 * Compiled normalizer by field index.
+	 * 
+	 * @param blackhole blackhole
+	 */
+	@Benchmark
+	public void compiledNormalizer(Blackhole blackhole) {
+		for (int r = 0; r < records.length; r++) {
+			final String record[] = records[r];
+			for (int c = 0; c < record.length; c++)
+				blackhole.consume(compiled.normalize(record[c], c));
+		}
+	}
+	
+}
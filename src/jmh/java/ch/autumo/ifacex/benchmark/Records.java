@@ -0,0 +1,91 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.benchmark;
+
+import java.util.Random;
+
+
+/**
+ * Reproducible test records for benchmarks.
+ * 
+ * Every 4th column has only a few distinct values (e.g. a status
+ * or country), all other columns have distinct values per record.
+ */
+public final class Records {
+
+	private Records() {
+	}
+	
+	/**
+	 * Field names 'field_0' ... 'field_n'; the 2nd field is 'position'.
+	 * 
+	 * @param columns amount of columns
+	 * @return field names
+	 */
+	public static String[] fields(int columns) {
+		final String fields[] = new String[columns];
+		for (int c = 0; c < columns; c++)
+			fields[c] = c == 1 ? "position" : "field_" + c;
+		return fields;
+	}
+	
+	/**
+	 * Create records.
+	 * 
+	 * @param rows amount of records
+	 * @param columns amount of columns
+	 * @return records
+	 */
+	public static String[][] create(int rows, int columns) {
+		final Random random = new Random(42);
+		final String positions[] = {"Engineer", "Sales", "Support", "CEO"};
+		final String records[][] = new String[rows][columns];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < columns; c++) {
+				if (c == 1)
+					records[r][c] = positions[random.nextInt(positions.length)];
+				else if (c % 4 == 0)
+					records[r][c] = "status_" + random.nextInt(5);
+				else
+					records[r][c] = " value " + r + "-" + c + "-" + Long.toHexString(random.nextLong()) + " ";
+			}
+		}
+		return records;
+	}
+	
+	/**
+	 * Create CSV lines of records.
+	 * 
+	 * @param records records
+	 * @param delimiter delimiter
+	 * @param enclosure enclosure, empty for none
+	 * @return CSV lines
+	 */
+	public static String[] lines(String records[][], String delimiter, String enclosure) {
+		final String lines[] = new String[records.length];
+		final StringBuilder line = new StringBuilder();
+		for (int r = 0; r < records.length; r++) {
+			line.setLength(0);
+			for (int c = 0; c < records[r].length; c++) {
+				if (c > 0)
+					line.append(delimiter);
+				line.append(enclosure).append(records[r][c]).append(enclosure);
+			}
+			lines[r] = line.toString();
+		}
+		return lines;
+	}
+	
+}
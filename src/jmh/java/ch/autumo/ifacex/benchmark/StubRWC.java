@@ -0,0 +1,79 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import ch.autumo.ifacex.RWC;
+
+
+/**
+ * Offline reader/writer configuration for benchmarks.
+ * 
+ * The generic configuration accessors ('isYes', 'getConfig', 'getNumber',
+ * 'getSeparatedValues') read the given values by post-fix; all other
+ * methods return null, 0 or false.
+ */
+public final class StubRWC {
+
+	private StubRWC() {
+	}
+	
+	/**
+	 * Create a stub configuration.
+	 * 
+	 * @param values configuration values by post-fix, e.g. '_my_variable'
+	 * @return reader/writer configuration
+	 */
+	public static RWC create(final Map<String, String> values) {
+		return (RWC) Proxy.newProxyInstance(RWC.class.getClassLoader(), new Class<?>[] {RWC.class}, (proxy, method, args) -> {
+			final String value = args != null && args.length > 0 && args[0] instanceof String ? values.get(args[0]) : null;
+			switch (method.getName()) {
+				case "isYes":
+					return value != null ? Boolean.valueOf(value.equalsIgnoreCase("yes")) : (args.length > 1 ? args[1] : Boolean.FALSE);
+				case "getConfig":
+					return value != null ? value : (args.length > 1 ? args[1] : null);
+				case "getNumber":
+					try {
+						return Integer.valueOf(value.trim());
+					} catch (RuntimeException e) {
+						return args.length > 1 ? args[1] : Integer.valueOf(-1);
+					}
+				case "getSeparatedValues":
+					return value != null ? value.split(",") : null;
+				case "toString":
+					return "StubRWC" + values;
+				case "hashCode":
+					return Integer.valueOf(System.identityHashCode(proxy));
+				case "equals":
+					return Boolean.valueOf(proxy == args[0]);
+				default:
+					return defaultValue(method.getReturnType());
+			}
+		});
+	}
+	
+	private static Object defaultValue(Class<?> type) {
+		if (!type.isPrimitive() || type == void.class)
+			return null;
+		if (type == boolean.class)
+			return Boolean.FALSE;
+		if (type == double.class)
+			return Double.valueOf(0);
+		return Integer.valueOf(0);
+	}
+	
+}
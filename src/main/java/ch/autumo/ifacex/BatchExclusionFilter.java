@@ -0,0 +1,75 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex;
+
+import java.util.BitSet;
+
+import ch.autumo.ifacex.batch.BatchCursor;
+import ch.autumo.ifacex.batch.BatchData;
+import ch.autumo.ifacex.batch.FilteringBatchProcessor;
+
+
+/**
+ * Batch exclusion filter interface - implementation decides for a whole
+ * batch which records are kept, e.g. with one lookup of all values of a
+ * column in a blacklist table or service instead of one per record
+ * (see {@link BatchData#column(int)}).
+ * 
+ * Configured by the class name in
+ * '<rw-prefix>_<source-entity>_batch_exclusion_filter_class' and applied
+ * to every batch by the {@link FilteringBatchProcessor}, which readers
+ * install with {@link FilteringBatchProcessor#of(ch.autumo.ifacex.batch.BatchProcessor, IPC, SourceEntity)},
+ * so they don't have to call the filter themselves. Record-level filters are adapted with {@link #of(ExclusionFilter)}.
+ * 
+ * Implementations need a public no-argument constructor.
+ */
+public interface BatchExclusionFilter {
+
+	/**
+	 * Post-fix for the batch exclusion filter class:
+	 * '<rw-prefix>_<source-entity>_batch_exclusion_filter_class'.
+	 */
+	public static final String KEY_BATCH_EXCLUSION_FILTER_CLASS = "_batch_exclusion_filter_class";
+	
+	/**
+	 * Select the records of a batch that should be added.
+	 * 
+	 * @param entity source entity; the records are in the order of its source fields
+	 * @param batch batch data; read it with {@link BatchData#cursor()} or {@link BatchData#column(int)}
+	 * @return selection: bit set for every record index to keep
+	 * @throws IfaceXException
+	 */
+	public BitSet select(SourceEntity entity, BatchData batch) throws IfaceXException;
+	
+	/**
+	 * Adapt a record-level exclusion filter.
+	 * 
+	 * @param filter exclusion filter
+	 * @return batch exclusion filter
+	 */
+	public static BatchExclusionFilter of(ExclusionFilter filter) {
+		return (entity, batch) -> {
+			final String fields[] = entity.getSourceFields();
+			final BitSet selection = new BitSet(batch.size());
+			final BatchCursor cursor = batch.cursor();
+			for (int i = 0; cursor.hasNext(); i++) {
+				if (filter.addRecord(fields, cursor.next()))
+					selection.set(i);
+			}
+			return selection;
+		};
+	}
+	
+}
@@ -0,0 +1,710 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+
+/**
+ * Exclusion filter compiled from declarative exclusion rules
+ * ('<rw-prefix>_<source-entity>_exclusion_rules'); records matching
+ * the rules are excluded. See {@link RWC#getCompiledExclusionFilter(SourceEntity)}.
+ * 
+ * Rules language (keywords are case-insensitive):
+ * 
+ *   field = 'value'                 equals
+ *   field != 'value'                not equals ('<>' works too)
+ *   field IN ('a', 'b', 'c')        one of (NOT IN: none of)
+ *   field ~ '^[0-9]+$'              regular expression found in value
+ *   field BETWEEN 10 AND 20         range, inclusive
+ *   field < 10, <=, >, >=           comparison
+ *   field IS NULL                   field isn't present in the record
+ *   field IS EMPTY                  no value or only white-spaces
+ *   
+ * Predicates are combined with AND, OR, NOT and parentheses. Values are
+ * quoted with single quotes (escaped by doubling them); numbers can be
+ * unquoted. Ranges and comparisons are numeric if the bounds are numbers,
+ * otherwise lexical. Field names with special characters can be quoted
+ * with double quotes. Example:
+ * 
+ *   position IN ('CEO', 'CFO') OR (country = 'CH' AND NOT zip BETWEEN 1000 AND 1999)
+ *   
+ * The rules are parsed once and bound to field indexes, so a record costs
+ * a few comparisons instead of a field name scan. Predicates combined with
+ * AND/OR are evaluated in the order of their cost and observed selectivity,
+ * so the cheapest predicate most likely to decide comes first; the order is
+ * adapted continuously.
+ * 
+ * A filter isn't thread-safe, since it keeps these statistics; use
+ * a filter per thread, see {@link #copy()}.
+ */
+public final class CompiledExclusionFilter implements ExclusionFilter {
+
+	/**
+	 * Post-fix for the exclusion rules of an entity:
+	 * '<rw-prefix>_<source-entity>_exclusion_rules'.
+	 */
+	public static final String KEY_EXCLUSION_RULES = "_exclusion_rules";
+	
+	// evaluations of a combination between re-ordering its predicates
+	private static final int REORDER_INTERVAL = 4096;
+	
+	private final String rules;
+	
+	// rules bound to the field indexes of a fields array
+	private Bound bound;
+	
+	
+	private CompiledExclusionFilter(String rules, Bound bound) {
+		this.rules = rules;
+		this.bound = bound;
+	}
+	
+	/**
+	 * Compile exclusion rules for the fields of a source entity.
+	 * 
+	 * @param rules exclusion rules
+	 * @param fields source fields in record order
+	 * @return compiled exclusion filter
+	 * @throws IfaceXException if the rules are invalid or refer to unknown fields
+	 */
+	public static CompiledExclusionFilter compile(String rules, String fields[]) throws IfaceXException {
+		return new CompiledExclusionFilter(rules, new Bound(fields, new Parser(rules, fields, true).parse()));
+	}
+	
+	/**
+	 * Copy this filter for another thread; the copy is bound to the
+	 * same fields, but keeps its own evaluation statistics.
+	 * 
+	 * @return compiled exclusion filter
+	 */
+	public CompiledExclusionFilter copy() {
+		final String fields[] = bound.fields;
+		try {
+			return new CompiledExclusionFilter(rules, new Bound(fields, new Parser(rules, fields, false).parse()));
+		} catch (IfaceXException e) {
+			// rules have been parsed before
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Is a record excluded? Values must be in the order of the
+	 * fields this filter has been compiled for.
+	 * 
+	 * @param values record values
+	 * @return true if the record is excluded
+	 */
+	public boolean excludes(String values[]) {
+		return bound.root.eval(values);
+	}
+	
+	/**
+	 * Decision if record should be added; if the fields differ from the
+	 * fields this filter has been compiled for, the rules are bound to
+	 * these fields once. Fields that aren't present are null.
+	 * 
+	 * @param fields the fields of the record
+	 * @param values the values of the record
+	 * @return true, if record should be added, else false.
+	 */
+	@Override
+	public boolean addRecord(String fields[], String values[]) {
+		Bound b = bound;
+		if (b.fields != fields && fields != null) {
+			if (Arrays.equals(b.fields, fields)) {
+				b = new Bound(fields, b.root);
+			} else {
+				try {
+					b = new Bound(fields, new Parser(rules, fields, false).parse());
+				} catch (IfaceXException e) {
+					// rules have been parsed before
+					throw new IllegalStateException(e.getMessage(), e);
+				}
+			}
+			bound = b;
+		}
+		return !b.root.eval(values);
+	}
+	
+	/**
+	 * Get the rules.
+	 * 
+	 * @return rules
+	 */
+	public String getRules() {
+		return rules;
+	}
+	
+	@Override
+	public String toString() {
+		return bound.root.toString();
+	}
+	
+	
+	private static final class Bound {
+		private final String fields[];
+		private final Node root;
+		private Bound(String fields[], Node root) {
+			this.fields = fields;
+			this.root = root;
+		}
+	}
+	
+	
+	//------------------------------------------------------------------------------
+	// Predicates
+	//------------------------------------------------------------------------------
+	
+	/**
+	 * Predicate or combination with evaluation statistics.
+	 */
+	private abstract static class Node {
+		
+		private long evaluated = 0;
+		private long passed = 0;
+		
+		final boolean eval(String values[]) {
+			final boolean result = test(values);
+			evaluated++;
+			if (result)
+				passed++;
+			return result;
+		}
+
+		/** Pass probability; with a prior of 1/2. */
+		final double probability() {
+			return (passed + 1.0) / (evaluated + 2.0);
+		}
+
+		final void decay() {
+			evaluated >>= 1;
+			passed >>= 1;
+		}
+		
+		abstract boolean test(String values[]);
+		
+		/** Relative evaluation cost. */
+		abstract double cost();
+	}
+	
+	private abstract static class FieldNode extends Node {
+		final String field;
+		final int index;
+		FieldNode(String field, int index) {
+			this.field = field;
+			this.index = index;
+		}
+		final String value(String values[]) {
+			return index >= 0 && index < values.length ? values[index] : null;
+		}
+	}
+	
+	private static final class Equals extends FieldNode {
+		private final String expected;
+		private Equals(String field, int index, String expected) {
+			super(field, index);
+			this.expected = expected;
+		}
+		@Override
+		boolean test(String values[]) {
+			return expected.equals(value(values));
+		}
+		@Override
+		double cost() {
+			return 1;
+		}
+		@Override
+		public String toString() {
+			return field + " = " + quote(expected);
+		}
+	}
+
+	private static final class In extends FieldNode {
+		private final Set<String> expected;
+		private In(String field, int index, List<String> expected) {
+			super(field, index);
+			this.expected = new HashSet<String>(expected);
+		}
+		@Override
+		boolean test(String values[]) {
+			final String value = value(values);
+			return value != null && expected.contains(value);
+		}
+		@Override
+		double cost() {
+			return 2;
+		}
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder(field).append(" IN (");
+			boolean first = true;
+			for (String value : expected) {
+				if (!first)
+					sb.append(", ");
+				sb.append(quote(value));
+				first = false;
+			}
+			return sb.append(')').toString();
+		}
+	}
+
+	private static final class Matches extends FieldNode {
+		private final Pattern pattern;
+		private Matches(String field, int index, Pattern pattern) {
+			super(field, index);
+			this.pattern = pattern;
+		}
+		@Override
+		boolean test(String values[]) {
+			final String value = value(values);
+			return value != null && pattern.matcher(value).find();
+		}
+		@Override
+		double cost() {
+			return 10;
+		}
+		@Override
+		public String toString() {
+			return field + " ~ " + quote(pattern.pattern());
+		}
+	}
+	
+	private static final class Range extends FieldNode {
+		// null: no bound
+		private final String min;
+		private final String max;
+		private final boolean minInclusive;
+		private final boolean maxInclusive;
+		private final boolean numeric;
+		private final double minNumber;
+		private final double maxNumber;
+		private Range(String field, int index, String min, boolean minInclusive, String max, boolean maxInclusive) {
+			super(field, index);
+			this.min = min;
+			this.max = max;
+			this.minInclusive = minInclusive;
+			this.maxInclusive = maxInclusive;
+			final Double minN = min == null ? Double.valueOf(Double.NEGATIVE_INFINITY) : number(min);
+			final Double maxN = max == null ? Double.valueOf(Double.POSITIVE_INFINITY) : number(max);
+			this.numeric = minN != null && maxN != null;
+			this.minNumber = numeric ? minN.doubleValue() : 0;
+			this.maxNumber = numeric ? maxN.doubleValue() : 0;
+		}
+		@Override
+		boolean test(String values[]) {
+			final String value = value(values);
+			if (value == null)
+				return false;
+			if (numeric) {
+				final Double n = number(value);
+				if (n == null)
+					return false;
+				final double d = n.doubleValue();
+				return (minInclusive ? d >= minNumber : d > minNumber) && (maxInclusive ? d <= maxNumber : d < maxNumber);
+			}
+			if (min != null) {
+				final int c = value.compareTo(min);
+				if (minInclusive ? c < 0 : c <= 0)
+					return false;
+			}
+			if (max != null) {
+				final int c = value.compareTo(max);
+				if (maxInclusive ? c > 0 : c >= 0)
+					return false;
+			}
+			return true;
+		}
+		@Override
+		double cost() {
+			return numeric ? 4 : 2;
+		}
+		@Override
+		public String toString() {
+			if (min != null && max != null && minInclusive && maxInclusive)
+				return field + " BETWEEN " + quote(min) + " AND " + quote(max);
+			if (min != null)
+				return field + (minInclusive ? " >= " : " > ") + quote(min);
+			return field + (maxInclusive ? " <= " : " < ") + quote(max);
+		}
+		private static Double number(String value) {
+			final String v = value.trim();
+			if (v.length() == 0)
+				return null;
+			try {
+				return Double.valueOf(v);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+	}
+
+	private static final class IsNull extends FieldNode {
+		private IsNull(String field, int index) {
+			super(field, index);
+		}
+		@Override
+		boolean test(String values[]) {
+			return value(values) == null;
+		}
+		@Override
+		double cost() {
+			return 0.5;
+		}
+		@Override
+		public String toString() {
+			return field + " IS NULL";
+		}
+	}
+
+	private static final class IsEmpty extends FieldNode {
+		private IsEmpty(String field, int index) {
+			super(field, index);
+		}
+		@Override
+		boolean test(String values[]) {
+			final String value = value(values);
+			if (value == null)
+				return true;
+			for (int i = 0; i < value.length(); i++) {
+				if (!Character.isWhitespace(value.charAt(i)))
+					return false;
+			}
+			return true;
+		}
+		@Override
+		double cost() {
+			return 1;
+		}
+		@Override
+		public String toString() {
+			return field + " IS EMPTY";
+		}
+	}
+	
+	private static final class Not extends Node {
+		private final Node node;
+		private Not(Node node) {
+			this.node = node;
+		}
+		@Override
+		boolean test(String values[]) {
+			return !node.eval(values);
+		}
+		@Override
+		double cost() {
+			return node.cost();
+		}
+		@Override
+		public String toString() {
+			return "NOT " + node;
+		}
+	}
+	
+	/**
+	 * AND/OR combination; the predicates are re-ordered by rank
+	 * (cost per decision) every {@value #REORDER_INTERVAL} evaluations.
+	 */
+	private static final class Combination extends Node {
+		
+		private final boolean and;
+		private Node nodes[];
+		private int evaluations = 0;
+		
+		private Combination(boolean and, List<Node> nodes) {
+			this.and = and;
+			final Node sorted[] = nodes.toArray(new Node[nodes.size()]);
+			// initially by cost
+			Arrays.sort(sorted, Comparator.comparingDouble(Node::cost));
+			this.nodes = sorted;
+		}
+		
+		@Override
+		boolean test(String values[]) {
+			if ((++evaluations & (REORDER_INTERVAL - 1)) == 0)
+				reorder();
+			final Node n[] = nodes;
+			for (int i = 0; i < n.length; i++) {
+				// AND: decided by the first false, OR: by the first true
+				if (n[i].eval(values) != and)
+					return !and;
+			}
+			return and;
+		}
+		
+		private void reorder() {
+			final Node sorted[] = nodes.clone();
+			final double ranks[] = new double[sorted.length];
+			final Map<Node, Double> rank = new HashMap<Node, Double>();
+			for (int i = 0; i < sorted.length; i++) {
+				final double p = sorted[i].probability();
+				// probability to decide: AND by false, OR by true
+				ranks[i] = sorted[i].cost() / (and ? 1.0 - p : p);
+				rank.put(sorted[i], Double.valueOf(ranks[i]));
+				sorted[i].decay();
+			}
+			Arrays.sort(sorted, Comparator.comparingDouble(rank::get));
+			nodes = sorted;
+		}
+		
+		@Override
+		double cost() {
+			double cost = 0;
+			for (Node node : nodes)
+				cost += node.cost();
+			return cost;
+		}
+		
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder("(");
+			final Node n[] = nodes;
+			for (int i = 0; i < n.length; i++) {
+				if (i > 0)
+					sb.append(and ? " AND " : " OR ");
+				sb.append(n[i]);
+			}
+			return sb.append(')').toString();
+		}
+	}
+	
+	private static String quote(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+	
+	
+	//------------------------------------------------------------------------------
+	// Parser
+	//------------------------------------------------------------------------------
+	
+	/**
+	 * Recursive descent parser:
+	 * 
+	 *   or        := and ('OR' and)*
+	 *   and       := unary ('AND' unary)*
+	 *   unary     := 'NOT' unary | '(' or ')' | predicate
+	 *   predicate := field operator ...
+	 */
+	private static final class Parser {
+		
+		private final String rules;
+		private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+		private final boolean strict;
+		private int pos = 0;
+		
+		private Parser(String rules, String fields[], boolean strict) {
+			this.rules = rules == null ? "" : rules;
+			this.strict = strict;
+			if (fields != null) {
+				for (int i = 0; i < fields.length; i++)
+					indexes.putIfAbsent(fields[i], Integer.valueOf(i));
+			}
+		}
+		
+		private Node parse() throws IfaceXException {
+			final Node node = or();
+			skipWhitespace();
+			if (pos < rules.length())
+				throw error("Unexpected '" + rules.substring(pos) + "'");
+			return node;
+		}
+		
+		private Node or() throws IfaceXException {
+			final List<Node> nodes = new ArrayList<Node>();
+			nodes.add(and());
+			while (keyword("OR"))
+				nodes.add(and());
+			return nodes.size() == 1 ? nodes.get(0) : new Combination(false, nodes);
+		}
+
+		private Node and() throws IfaceXException {
+			final List<Node> nodes = new ArrayList<Node>();
+			nodes.add(unary());
+			while (keyword("AND"))
+				nodes.add(unary());
+			return nodes.size() == 1 ? nodes.get(0) : new Combination(true, nodes);
+		}
+		
+		private Node unary() throws IfaceXException {
+			if (keyword("NOT"))
+				return new Not(unary());
+			if (symbol("(")) {
+				final Node node = or();
+				expect(")");
+				return node;
+			}
+			return predicate();
+		}
+		
+		private Node predicate() throws IfaceXException {
+			final String field = field();
+			final Integer i = indexes.get(field);
+			if (i == null && strict)
+				throw error("Unknown field '" + field + "'");
+			final int index = i == null ? -1 : i.intValue();
+			
+			if (symbol("!=") || symbol("<>"))
+				return new Not(new Equals(field, index, value()));
+			if (symbol("<="))
+				return new Range(field, index, null, false, value(), true);
+			if (symbol(">="))
+				return new Range(field, index, value(), true, null, false);
+			if (symbol("<"))
+				return new Range(field, index, null, false, value(), false);
+			if (symbol(">"))
+				return new Range(field, index, value(), false, null, false);
+			if (symbol("="))
+				return new Equals(field, index, value());
+			if (symbol("~")) {
+				final String regex = value();
+				try {
+					return new Matches(field, index, Pattern.compile(regex));
+				} catch (PatternSyntaxException e) {
+					throw error("Invalid regular expression '" + regex + "': " + e.getDescription());
+				}
+			}
+			if (keyword("BETWEEN")) {
+				final String min = value();
+				if (!keyword("AND"))
+					throw error("'AND' expected");
+				return new Range(field, index, min, true, value(), true);
+			}
+			if (keyword("IN"))
+				return new In(field, index, list());
+			if (keyword("NOT")) {
+				if (!keyword("IN"))
+					throw error("'IN' expected");
+				return new Not(new In(field, index, list()));
+			}
+			if (keyword("IS")) {
+				final boolean not = keyword("NOT");
+				final Node node;
+				if (keyword("NULL"))
+					node = new IsNull(field, index);
+				else if (keyword("EMPTY"))
+					node = new IsEmpty(field, index);
+				else
+					throw error("'NULL' or 'EMPTY' expected");
+				return not ? new Not(node) : node;
+			}
+			throw error("Operator expected after field '" + field + "'");
+		}
+		
+		private List<String> list() throws IfaceXException {
+			expect("(");
+			final List<String> values = new ArrayList<String>();
+			values.add(value());
+			while (symbol(","))
+				values.add(value());
+			expect(")");
+			return values;
+		}
+		
+		private String field() throws IfaceXException {
+			skipWhitespace();
+			if (pos < rules.length() && rules.charAt(pos) == '"')
+				return quoted('"');
+			final String word = word();
+			if (word.length() == 0)
+				throw error("Field expected");
+			return word;
+		}
+		
+		private String value() throws IfaceXException {
+			skipWhitespace();
+			if (pos < rules.length() && rules.charAt(pos) == '\'')
+				return quoted('\'');
+			final String word = word();
+			if (word.length() == 0)
+				throw error("Value expected");
+			return word;
+		}
+		
+		private String quoted(char quote) throws IfaceXException {
+			final int start = pos++;
+			final StringBuilder sb = new StringBuilder();
+			while (pos < rules.length()) {
+				final char c = rules.charAt(pos++);
+				if (c == quote) {
+					if (pos < rules.length() && rules.charAt(pos) == quote) {
+						sb.append(quote);
+						pos++;
+					} else {
+						return sb.toString();
+					}
+				} else {
+					sb.append(c);
+				}
+			}
+			pos = start;
+			throw error("Unterminated quote");
+		}
+		
+		private String word() {
+			final int start = pos;
+			while (pos < rules.length() && isWordChar(rules.charAt(pos)))
+				pos++;
+			return rules.substring(start, pos);
+		}
+		
+		private static boolean isWordChar(char c) {
+			return !Character.isWhitespace(c) && "()=!<>~,'\"".indexOf(c) < 0;
+		}
+		
+		private boolean keyword(String keyword) {
+			skipWhitespace();
+			final int end = pos + keyword.length();
+			if (end <= rules.length() && rules.regionMatches(true, pos, keyword, 0, keyword.length())
+					&& (end == rules.length() || !isWordChar(rules.charAt(end)))) {
+				pos = end;
+				return true;
+			}
+			return false;
+		}
+
+		private boolean symbol(String symbol) {
+			skipWhitespace();
+			if (rules.startsWith(symbol, pos)) {
+				pos += symbol.length();
+				return true;
+			}
+			return false;
+		}
+		
+		private void expect(String symbol) throws IfaceXException {
+			if (!symbol(symbol))
+				throw error("'" + symbol + "' expected");
+		}
+		
+		private void skipWhitespace() {
+			while (pos < rules.length() && Character.isWhitespace(rules.charAt(pos)))
+				pos++;
+		}
+		
+		private IfaceXException error(String message) {
+			return new IfaceXException("Invalid exclusion rules at position " + pos + ": " + message + " in '" + rules + "'!");
+		}
+	}
+	
+}
@@ -16,6 +16,10 @@ package ch.autumo.ifacex;
 
 /**
  * Data-mapper interface for customized additional parsing.
+ * 
+ * See {@link StatelessDataMapper} for a mapper that can be shared
+ * by parallel writer threads and {@link PreparedDataMapper} for a
+ * mapper that resolves its fields once per source entity.
  */
 public interface DataMapper {
 
@@ -0,0 +1,305 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.autumo.ifacex.batch.BatchProcessor;
+
+
+/**
+ * Schedules the source entities of an IPC; serially in the order
+ * of configuration (default) or concurrently.
+ *
+ * Concurrent mode ('parallel_entities' in the IPC configuration,
+ * the max. amount of entities processed at the same time; default 1):
+ * Independent entities are read and written concurrently, so the total
+ * run time approaches the largest entity rather than the sum of all.
+ *
+ * Entities that must stay ordered, e.g. because of foreign keys, are
+ * listed as chains ('ordered_entities'): Entities of a chain are
+ * separated by '>' and processed one after the other in that order;
+ * multiple chains are separated by ',', e.g.:
+ *
+ *   ordered_entities=customer>order>order_item, product>price
+ *
+ * In serial mode, chains are ignored and the order of configuration applies.
+ *
+ * Each chain is one stream of entities; unchained entities are streams
+ * of their own. Concurrent streams can't share a reader or a batch
+ * processor ({@link BatchProcessor} requires batches of different
+ * entities not to be mixed), hence every stream needs its own instances,
+ * selected by the stream index handed to the task. The 'hasMoreEntities'
+ * flag handed to the task tells if further entities are following in
+ * the same stream, so it ends the batch processor of that stream only.
+ * When all streams have been processed, {@link EntityTask#completed()}
+ * is called once; that's the end of all data of the IPC.
+ *
+ * First and last entities ({@link SourceEntity#isFirst()} and
+ * {@link SourceEntity#isLast()}) are marked according to the order
+ * of configuration in serial mode, and per stream in concurrent mode:
+ * the first and last entity of every stream are marked, so readers and
+ * writers of a stream can open and close their resources on these flags
+ * as they do in serial mode. An unchained entity is the first and the
+ * last entity of its stream.
+ *
+ * Example with a pipelined batch processor per stream:
+ *
+ * <pre>
+ * final EntityScheduler scheduler = EntityScheduler.of(config, entities);
+ * final Reader readers[] = new Reader[scheduler.getStreamCount()];
+ * final BatchProcessor processors[] = new BatchProcessor[scheduler.getStreamCount()];
+ * for (int i = 0; i &lt; processors.length; i++) {
+ *     readers[i] = initializedReader(readerName);
+ *     processors[i] = new PipelinedBatchProcessor(config, initializedWriters(config.getWriterNames()));
+ * }
+ * scheduler.run((entity, stream, hasMoreEntities) -&gt; {
+ *     readers[stream].initializeEntity(readerName, config, entity);
+ *     readers[stream].read(readerName, processors[stream], config, entity, hasMoreEntities);
+ * });
+ * </pre>
+ */
+public final class EntityScheduler {
+
+	/**
+	 * Configuration key for the max. amount of entities
+	 * processed concurrently.
+	 */
+	public static final String KEY_PARALLEL_ENTITIES = "parallel_entities";
+
+	/**
+	 * Configuration key for the chains of entities that
+	 * must be processed in order.
+	 */
+	public static final String KEY_ORDERED_ENTITIES = "ordered_entities";
+
+
+	/**
+	 * Entity processing, e.g. initialize the reader for the
+	 * entity and read it.
+	 */
+	@FunctionalInterface
+	public interface EntityTask {
+
+		/**
+		 * Process an entity.
+		 *
+		 * @param entity source entity
+		 * @param stream stream index, 0 in serial mode; see {@link EntityScheduler#getStreamCount()}
+		 * @param hasMoreEntities true, when more entities are following in this stream
+		 * @throws IfaceXException
+		 */
+		void process(SourceEntity entity, int stream, boolean hasMoreEntities) throws IfaceXException;
+
+		/**
+		 * Called once when all entities of all streams have been
+		 * processed successfully, e.g. to close writers shared by
+		 * all streams.
+		 *
+		 * @throws IfaceXException
+		 */
+		default void completed() throws IfaceXException {
+		}
+	}
+
+
+	private final SourceEntity entities[];
+	private final int parallelism;
+	private final List<List<SourceEntity>> streams;
+
+
+	/**
+	 * Create an entity scheduler.
+	 *
+	 * @param entities source entities in the order of configuration
+	 * @param parallelism max. amount of entities processed concurrently; 1 for serial processing
+	 * @param chains chains of entity names that must be processed in the given order
+	 * @throws IfaceXException if a chain contains an unknown entity or an entity twice
+	 */
+	public EntityScheduler(SourceEntity entities[], int parallelism, List<List<String>> chains) throws IfaceXException {
+		this.entities = entities;
+		this.parallelism = Math.max(1, parallelism);
+		this.streams = this.parallelism == 1 ? null : streams(entities, chains);
+		if (isConcurrent()) {
+			// processing order is defined per stream
+			for (List<SourceEntity> stream : streams) {
+				stream.get(0).markFirst();
+				stream.get(stream.size() - 1).markLast();
+			}
+		} else if (entities.length > 0) {
+			entities[0].markFirst();
+			entities[entities.length - 1].markLast();
+		}
+	}
+
+	/**
+	 * Create an entity scheduler according to the IPC configuration.
+	 *
+	 * @param config IPC
+	 * @param entities source entities in the order of configuration
+	 * @return entity scheduler
+	 * @throws IfaceXException if the configuration is invalid
+	 */
+	public static EntityScheduler of(IPC config, SourceEntity entities[]) throws IfaceXException {
+		final String value = config.getValue(KEY_PARALLEL_ENTITIES, "1").trim();
+		final int parallelism;
+		try {
+			parallelism = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IfaceXException("Invalid value '" + value + "' for '" + KEY_PARALLEL_ENTITIES + "'!", e);
+		}
+		final List<List<String>> chains = new ArrayList<List<String>>();
+		final String ordered = config.getValue(KEY_ORDERED_ENTITIES, "");
+		for (String chain : ordered.split(",")) {
+			if (chain.trim().length() == 0)
+				continue;
+			final List<String> names = new ArrayList<String>();
+			for (String name : chain.split(">"))
+				names.add(name.trim());
+			chains.add(names);
+		}
+		return new EntityScheduler(entities, parallelism, chains);
+	}
+
+	private static List<List<SourceEntity>> streams(SourceEntity entities[], List<List<String>> chains) throws IfaceXException {
+		final Map<String, SourceEntity> byName = new HashMap<String, SourceEntity>();
+		for (int i = 0; i < entities.length; i++)
+			byName.put(entities[i].getEntity(), entities[i]);
+
+		// stream per entity, chained entities share the stream of their chain
+		final Map<SourceEntity, List<SourceEntity>> streamOf = new IdentityHashMap<SourceEntity, List<SourceEntity>>();
+		for (List<String> chain : chains) {
+			final List<SourceEntity> stream = new ArrayList<SourceEntity>();
+			for (String name : chain) {
+				final SourceEntity entity = byName.get(name);
+				if (entity == null)
+					throw new IfaceXException("Unknown entity '" + name + "' in '" + KEY_ORDERED_ENTITIES + "'!");
+				if (streamOf.containsKey(entity))
+					throw new IfaceXException("Entity '" + name + "' is listed more than once in '" + KEY_ORDERED_ENTITIES + "'!");
+				stream.add(entity);
+				streamOf.put(entity, stream);
+			}
+		}
+		// streams in the order of their first entity's configuration
+		final List<List<SourceEntity>> streams = new ArrayList<List<SourceEntity>>();
+		for (int i = 0; i < entities.length; i++) {
+			final List<SourceEntity> stream = streamOf.get(entities[i]);
+			if (stream == null) {
+				final List<SourceEntity> single = new ArrayList<SourceEntity>(1);
+				single.add(entities[i]);
+				streams.add(single);
+			} else if (!containsStream(streams, stream)) {
+				streams.add(stream);
+			}
+		}
+		return streams;
+	}
+
+	private static boolean containsStream(List<List<SourceEntity>> streams, List<SourceEntity> stream) {
+		for (List<SourceEntity> s : streams) {
+			if (s == stream)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Is this scheduler processing entities concurrently?
+	 *
+	 * @return true if so
+	 */
+	public boolean isConcurrent() {
+		return streams != null && streams.size() > 1;
+	}
+
+	/**
+	 * Amount of streams processed concurrently; 1 in serial mode.
+	 *
+	 * @return stream count
+	 */
+	public int getStreamCount() {
+		return isConcurrent() ? streams.size() : 1;
+	}
+
+	/**
+	 * Process all entities and wait until all are done.
+	 *
+	 * In concurrent mode, the first failure cancels all
+	 * other streams and is thrown.
+	 *
+	 * @param task entity task
+	 * @throws IfaceXException first failure
+	 */
+	public void run(EntityTask task) throws IfaceXException {
+		if (!isConcurrent()) {
+			for (int i = 0; i < entities.length; i++)
+				task.process(entities[i], 0, i < entities.length - 1);
+			task.completed();
+			return;
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, streams.size()), r -> {
+			final Thread t = new Thread(r, "ifaceX-entities-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		final CompletionService<Void> completion = new ExecutorCompletionService<Void>(executor);
+		final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		// the stream finishing last completes the task
+		final AtomicInteger running = new AtomicInteger(streams.size());
+		try {
+			for (int s = 0; s < streams.size(); s++) {
+				final int index = s;
+				final List<SourceEntity> stream = streams.get(s);
+				futures.add(completion.submit(() -> {
+					final int size = stream.size();
+					for (int i = 0; i < size; i++)
+						task.process(stream.get(i), index, i < size - 1);
+					if (running.decrementAndGet() == 0)
+						task.completed();
+					return null;
+				}));
+			}
+			// in order of completion, so the first failure is thrown right away
+			for (int i = 0; i < futures.size(); i++)
+				completion.take().get();
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IfaceXException)
+				throw (IfaceXException) cause;
+			throw new IfaceXException("Entity processing failed: " + cause.getMessage(), cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IfaceXException("Interrupted while processing entities!", e);
+		} finally {
+			for (Future<Void> future : futures)
+				future.cancel(true);
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -17,6 +17,9 @@ package ch.autumo.ifacex;
 /**
  * Exclusion filter interface - implementation decides if a record is
  * ignored on the reader side and hence not added to processing.
+ * 
+ * Simple conditions don't need an implementation; they can be
+ * configured as exclusion rules, see {@link CompiledExclusionFilter}.
  */
 public interface ExclusionFilter {
 
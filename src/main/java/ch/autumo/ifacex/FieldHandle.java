@@ -0,0 +1,90 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex;
+
+
+/**
+ * Handle of a source field: The field's index within the records
+ * of a source entity, resolved once with {@link SourceEntity#handle(String)}.
+ * 
+ * Example in a data mapper or an exclusion filter:
+ * 
+ *   // once per entity
+ *   final FieldHandle segment = entity.handle("properties.segment");
+ *   // per record
+ *   final String value = segment.get(values);
+ *   
+ * A handle is immutable.
+ */
+public final class FieldHandle {
+
+	private final String name;
+	private final int index;
+	
+	
+	/**
+	 * Create a field handle.
+	 * 
+	 * @param name field name
+	 * @param index field index or -1 if the field isn't present
+	 */
+	public FieldHandle(String name, int index) {
+		this.name = name;
+		this.index = index;
+	}
+	
+	/**
+	 * Get field name.
+	 * 
+	 * @return field name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get field index.
+	 * 
+	 * @return field index or -1 if the field isn't present
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Is the field present in the source entity?
+	 * 
+	 * @return true if so
+	 */
+	public boolean isPresent() {
+		return index >= 0;
+	}
+	
+	/**
+	 * Get the field's value of a record.
+	 * 
+	 * @param values record values
+	 * @return value or null if the field isn't present
+	 */
+	public String get(String values[]) {
+		return index >= 0 && index < values.length ? values[index] : null;
+	}
+	
+	@Override
+	public String toString() {
+		return name + "[" + index + "]";
+	}
+	
+}
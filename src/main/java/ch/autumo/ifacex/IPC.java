@@ -14,7 +14,11 @@
  */
 package ch.autumo.ifacex;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import ch.autumo.ifacex.Configuration.RWConfig;
+import ch.autumo.ifacex.reader.CSVTokenizer;
 
 
 /**
@@ -116,6 +120,17 @@ public interface IPC {
 	 */
 	String getCSVEnclosureChar();
 
+	/**
+	 * Get a CSV tokenizer for the configured delimiter and enclosure
+	 * characters; it splits lines like {@link #getCSVSepValues(String)},
+	 * but into reusable field slices without copying any value.
+	 * 
+	 * @return CSV tokenizer
+	 */
+	default CSVTokenizer getCSVTokenizer() {
+		return CSVTokenizer.of(this);
+	}
+
 	/**
 	 * Get the processor timeout value
 	 * ('proc_timeout' in 'cfg/ifacex.cfg').
@@ -132,6 +147,97 @@ public interface IPC {
 	 */
 	String getBatchMode();
 
+	/**
+	 * Get writer execution mode; how writers execute record-level work,
+	 * 'serial' (default) or 'virtual' for concurrent records on virtual
+	 * threads. See {@link ch.autumo.ifacex.writer.RecordExecutor}.
+	 * ('writer_exec_mode' in 'cfg/ifacex.cfg').
+	 * 
+	 * @return writer execution mode
+	 */
+	default String getWriterExecMode() {
+		return getValue("writer_exec_mode", "serial");
+	}
+
+	/**
+	 * Replace characters in read values?
+	 * ('replace_char' in 'cfg/ifacex.cfg').
+	 * 
+	 * @return true if so
+	 */
+	default boolean replaceChar() {
+		return "yes".equalsIgnoreCase(getValue("replace_char", "no").trim());
+	}
+
+	/**
+	 * Get characters to replace in read values, a regular expression
+	 * ('old_char' in 'cfg/ifacex.cfg').
+	 * 
+	 * @return characters to replace
+	 */
+	default String getOldChar() {
+		return getValue("old_char");
+	}
+
+	/**
+	 * Get replacement characters for read values
+	 * ('new_char' in 'cfg/ifacex.cfg').
+	 * 
+	 * @return replacement characters
+	 */
+	default String getNewChar() {
+		return getValue("new_char", "");
+	}
+
+	/**
+	 * Clean 'null' values in read values?
+	 * ('clean_null_values' in 'cfg/ifacex.cfg').
+	 * 
+	 * @return true if so
+	 */
+	default boolean cleanNullValues() {
+		return "yes".equalsIgnoreCase(getValue("clean_null_values", "yes").trim());
+	}
+
+	/**
+	 * Map countries to ISO codes in read values?
+	 * ('map_2_iso_codes' in 'cfg/ifacex.cfg').
+	 * 
+	 * @return true if so
+	 */
+	default boolean map2ISOCodes() {
+		return "yes".equalsIgnoreCase(getValue("map_2_iso_codes", "no").trim());
+	}
+
+	/**
+	 * Get source (reader) field names holding countries
+	 * ('source_country_fields' in 'cfg/ifacex.cfg', comma-separated).
+	 * 
+	 * @return source country field names
+	 */
+	default List<String> getSourceCountryFieldsList() {
+		final List<String> fields = new ArrayList<String>();
+		final String value = getValue("source_country_fields");
+		if (value != null) {
+			for (String field : value.split(",")) {
+				field = field.trim();
+				if (field.length() > 0)
+					fields.add(field);
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * Get default ISO code for unknown countries
+	 * ('map_default_iso' in 'cfg/ifacex.cfg').
+	 * 
+	 * @return default ISO code or null
+	 */
+	default String getMapDefaultIso() {
+		return getValue("map_default_iso");
+	}
+
 	/**
 	 * Get general batch size.
 	 * ('general_batch_size' in 'cfg/ifacex.cfg').
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex;
+
+
+/**
+ * Result of a customized mapping of one destination field: The value
+ * and the decision whether the standard parsing goes on, together; see
+ * {@link StatelessDataMapper}.
+ * 
+ * A result is immutable.
+ */
+public final class MapResult {
+
+	/**
+	 * The field hasn't been mapped; the standard parsing takes place.
+	 */
+	public static final MapResult NOT_MAPPED = new MapResult("", true);
+	
+	// last result per thread, for the DataMapper contract
+	static final ThreadLocal<MapResult> LAST = ThreadLocal.withInitial(() -> NOT_MAPPED);
+	
+	private final String value;
+	private final boolean parseFurther;
+	
+	
+	private MapResult(String value, boolean parseFurther) {
+		this.value = value;
+		this.parseFurther = parseFurther;
+	}
+	
+	/**
+	 * The field has been mapped to the given value; 
+	 * no standard parsing takes place.
+	 * 
+	 * @param value destination value
+	 * @return map result
+	 */
+	public static MapResult of(String value) {
+		return new MapResult(value == null ? "" : value, false);
+	}
+	
+	/**
+	 * Get the destination value.
+	 * 
+	 * @return value; empty if the field hasn't been mapped
+	 */
+	public String getValue() {
+		return value;
+	}
+	
+	/**
+	 * Should the standard parsing go on?
+	 * 
+	 * @return true if the field hasn't been mapped
+	 */
+	public boolean parseFurther() {
+		return parseFurther;
+	}
+	
+	@Override
+	public String toString() {
+		return parseFurther ? "NOT_MAPPED" : value;
+	}
+	
+}
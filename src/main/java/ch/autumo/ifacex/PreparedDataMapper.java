@@ -0,0 +1,245 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Data mapper that is prepared once per source entity: Source fields
+ * are resolved to {@link FieldHandle}s and the destination fields this
+ * mapper maps are registered as integer ids, so mapping a record field
+ * neither compares destination field names nor looks up source fields.
+ * 
+ * Implement {@link #prepare(SourceEntity, DestinationFields)}, e.g.:
+ * 
+ *   protected EntityMapping prepare(SourceEntity entity, DestinationFields dest) {
+ *       final FieldHandle company = entity.handle("properties.company");
+ *       final int name = dest.register("name");
+ *       return (destField, values) -> destField == name ? company.get(values) : null;
+ *   }
+ *   
+ * Writers prepare the mapping with {@link #prepare(SourceEntity, WriterMapping)}
+ * and map by the index of the writer mapping's destination fields. When used as
+ * a {@link DataMapper} by the standard mapping, the preparation happens with the
+ * first record of an entity.
+ * 
+ * The mapper is stateless per record, see {@link StatelessDataMapper}.
+ */
+public abstract class PreparedDataMapper implements StatelessDataMapper {
+
+	/**
+	 * Prepared mapping of a source entity.
+	 */
+	@FunctionalInterface
+	public interface EntityMapping {
+
+		/**
+		 * Map a destination field of a record.
+		 * 
+		 * @param destField destination field id, see {@link DestinationFields#register(String)}
+		 * @param sourceValues record values in the order of the source entity's source fields
+		 * @return value or null if this mapper doesn't map the field (standard parsing applies)
+		 * @throws IfaceXException
+		 */
+		String map(int destField, String sourceValues[]) throws IfaceXException;
+	}
+	
+	/**
+	 * Destination fields mapped by this mapper; every destination
+	 * field registered gets an integer id.
+	 */
+	public static final class DestinationFields {
+		
+		private final Map<String, Integer> ids = new HashMap<String, Integer>();
+		private final List<String> names = new ArrayList<String>();
+		
+		private DestinationFields() {
+		}
+		
+		/**
+		 * Register a destination field mapped by this mapper.
+		 * 
+		 * @param destField destination field name
+		 * @return destination field id
+		 */
+		public int register(String destField) {
+			final Integer id = ids.get(destField);
+			if (id != null)
+				return id.intValue();
+			names.add(destField);
+			ids.put(destField, Integer.valueOf(names.size() - 1));
+			return names.size() - 1;
+		}
+		
+		/**
+		 * Get the id of a destination field.
+		 * 
+		 * @param destField destination field name
+		 * @return destination field id or -1 if the field isn't mapped by this mapper
+		 */
+		public int idOf(String destField) {
+			final Integer id = ids.get(destField);
+			return id == null ? -1 : id.intValue();
+		}
+		
+		/**
+		 * Get all destination fields mapped by this mapper.
+		 * 
+		 * @return destination field names in the order of their id
+		 */
+		public List<String> getNames() {
+			return Collections.unmodifiableList(names);
+		}
+	}
+	
+	/**
+	 * Mapping prepared for a source entity and a writer mapping.
+	 */
+	public static final class Prepared {
+		
+		private final EntityMapping mapping;
+		private final DestinationFields destFields;
+		private final int ids[];
+		
+		private Prepared(EntityMapping mapping, DestinationFields destFields, String allFields[]) {
+			this.mapping = mapping;
+			this.destFields = destFields;
+			if (allFields == null) {
+				this.ids = null;
+			} else {
+				this.ids = new int[allFields.length];
+				for (int i = 0; i < allFields.length; i++)
+					ids[i] = destFields.idOf(allFields[i]);
+			}
+		}
+		
+		/**
+		 * Is a destination field of the writer mapping mapped by this mapper?
+		 * 
+		 * @param field index of the destination field in {@link WriterMapping#getAllFields()}
+		 * @return true if so
+		 */
+		public boolean maps(int field) {
+			return ids[field] >= 0;
+		}
+		
+		/**
+		 * Map a destination field of the writer mapping.
+		 * 
+		 * @param field index of the destination field in {@link WriterMapping#getAllFields()}
+		 * @param sourceValues record values
+		 * @return value or null if this mapper doesn't map the field
+		 * @throws IfaceXException
+		 */
+		public String map(int field, String sourceValues[]) throws IfaceXException {
+			final int id = ids[field];
+			return id < 0 ? null : mapping.map(id, sourceValues);
+		}
+		
+		/**
+		 * Map a destination field by name.
+		 * 
+		 * @param destField destination field name
+		 * @param sourceValues record values
+		 * @return value or null if this mapper doesn't map the field
+		 * @throws IfaceXException
+		 */
+		public String map(String destField, String sourceValues[]) throws IfaceXException {
+			final int id = destFields.idOf(destField);
+			return id < 0 ? null : mapping.map(id, sourceValues);
+		}
+	}
+	
+	
+	// last prepared entity first, then all
+	private volatile Last last = null;
+	private final Map<SourceEntity, Prepared> prepared = new IdentityHashMap<SourceEntity, Prepared>();
+	
+	
+	/**
+	 * Prepare the mapping of a source entity: Resolve the source fields with 
+	 * {@link SourceEntity#handle(String)} and register the destination fields
+	 * mapped with {@link DestinationFields#register(String)}.
+	 * 
+	 * Called once per source entity and writer mapping; the mapping
+	 * returned must be thread-safe.
+	 * 
+	 * @param entity source entity
+	 * @param destFields destination fields mapped by this mapper
+	 * @return entity mapping
+	 * @throws IfaceXException
+	 */
+	protected abstract EntityMapping prepare(SourceEntity entity, DestinationFields destFields) throws IfaceXException;
+	
+	/**
+	 * Prepare the mapping of a source entity for a writer mapping.
+	 * 
+	 * @param entity source entity
+	 * @param mapping writer mapping or null; destination fields can only be mapped by name then
+	 * @return prepared mapping
+	 * @throws IfaceXException
+	 */
+	public final Prepared prepare(SourceEntity entity, WriterMapping mapping) throws IfaceXException {
+		final DestinationFields destFields = new DestinationFields();
+		final EntityMapping entityMapping = prepare(entity, destFields);
+		return new Prepared(entityMapping, destFields, mapping == null ? null : mapping.getAllFields());
+	}
+	
+	/**
+	 * Get the mapping prepared for a source entity without
+	 * writer mapping; prepared once.
+	 * 
+	 * @param entity source entity
+	 * @return prepared mapping
+	 * @throws IfaceXException
+	 */
+	protected final Prepared prepared(SourceEntity entity) throws IfaceXException {
+		final Last l = last;
+		if (l != null && l.entity == entity)
+			return l.prepared;
+		Prepared p;
+		synchronized (prepared) {
+			p = prepared.get(entity);
+			if (p == null) {
+				p = prepare(entity, (WriterMapping) null);
+				prepared.put(entity, p);
+			}
+		}
+		last = new Last(entity, p);
+		return p;
+	}
+	
+	@Override
+	public MapResult map(FieldMapping mapping, String sourceValues[], SourceEntity sourceEntity) throws IfaceXException {
+		final String value = prepared(sourceEntity).map(mapping.getDestField(), sourceValues);
+		return value == null ? MapResult.NOT_MAPPED : MapResult.of(value);
+	}
+	
+	private static final class Last {
+		private final SourceEntity entity;
+		private final Prepared prepared;
+		private Last(SourceEntity entity, Prepared prepared) {
+			this.entity = entity;
+			this.prepared = prepared;
+		}
+	}
+	
+}
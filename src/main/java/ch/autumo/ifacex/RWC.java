@@ -164,6 +164,43 @@ public interface RWC {
 	 */
 	ExclusionFilter getExclusionFilter(SourceEntity entity) throws IfaceXException;
 
+	/**
+	 * Get the exclusion filter compiled from the exclusion rules
+	 * '<rw-prefix>_<source-entity>_exclusion_rules', if available,
+	 * otherwise the exclusion filter, see {@link #getExclusionFilter(SourceEntity)}.
+	 * 
+	 * See {@link CompiledExclusionFilter} for the rules language.
+	 * 
+	 * @param entity source entity
+	 * @return exclusion filter or null
+	 * @throws IfaceXException if the exclusion rules are invalid
+	 */
+	default ExclusionFilter getCompiledExclusionFilter(SourceEntity entity) throws IfaceXException {
+		final String rules = getConfig("_" + entity.getEntity() + CompiledExclusionFilter.KEY_EXCLUSION_RULES);
+		if (rules == null || rules.trim().length() == 0)
+			return getExclusionFilter(entity);
+		return CompiledExclusionFilter.compile(rules, entity.getSourceFields());
+	}
+
+	/**
+	 * Get the batch exclusion filter of the class configured in
+	 * '<rw-prefix>_<source-entity>_batch_exclusion_filter_class'.
+	 * 
+	 * @param entity source entity
+	 * @return new batch exclusion filter or null
+	 * @throws IfaceXException if the filter can't be created
+	 */
+	default BatchExclusionFilter getBatchExclusionFilter(SourceEntity entity) throws IfaceXException {
+		final String className = getConfig("_" + entity.getEntity() + BatchExclusionFilter.KEY_BATCH_EXCLUSION_FILTER_CLASS);
+		if (className == null || className.trim().length() == 0)
+			return null;
+		try {
+			return (BatchExclusionFilter) Class.forName(className.trim()).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IfaceXException("Couldn't create batch exclusion filter '" + className + "'!", e);
+		}
+	}
+
 	/**
 	 * Get data output mapping.
 	 * 
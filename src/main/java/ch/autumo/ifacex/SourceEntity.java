@@ -15,7 +15,10 @@
 package ch.autumo.ifacex;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -47,6 +50,10 @@ public final class SourceEntity implements Comparable<String> {
 	
 	private String entity = null;
 	private String sourceFields[] = null;
+	
+	// built once per source fields: name -> index, list view
+	private Map<String, Integer> fieldIndexes = null;
+	private List<String> sourceFieldsList = null;
 
 	/**
 	 * Create a source entity.
@@ -61,6 +68,21 @@ public final class SourceEntity implements Comparable<String> {
 		this.config = config;
 		this.entity = entity;
 		this.sourceFields = sourceFields;
+		this.indexSourceFields();
+	}
+	
+	private void indexSourceFields() {
+		if (sourceFields == null) {
+			fieldIndexes = Collections.emptyMap();
+			sourceFieldsList = null;
+			return;
+		}
+		final Map<String, Integer> indexes = new HashMap<String, Integer>(sourceFields.length * 2);
+		// first occurrence wins, same as a scan
+		for (int i = 0; i < sourceFields.length; i++)
+			indexes.putIfAbsent(sourceFields[i], Integer.valueOf(i));
+		fieldIndexes = Collections.unmodifiableMap(indexes);
+		sourceFieldsList = Arrays.asList(sourceFields);
 	}
 
 	/**
@@ -91,12 +113,15 @@ public final class SourceEntity implements Comparable<String> {
 	}
 
 	/**
-	 * Get all source fields as a list.
+	 * Get all source fields as a list; the list is a view that
+	 * writes through to the source fields array. Field lookups
+	 * by name don't see names set through the list; overwrite
+	 * the source fields instead, see {@link #overwriteSourceFields(String[])}.
 	 * 
 	 * @return source field list
 	 */
 	public List<String> getSourceFieldsList() {
-		return Arrays.asList(sourceFields);
+		return sourceFieldsList;
 	}
 	
 	/**
@@ -106,35 +131,43 @@ public final class SourceEntity implements Comparable<String> {
 	 * @return true if so
 	 */
 	public boolean containsSourceField(String fieldName) {
-		for (int i = 0; i < sourceFields.length; i++) {
-			if (sourceFields[i].equals(fieldName))
-				return true;
-		}
-		return false;
+		return fieldIndexes.containsKey(fieldName);
 	}
 	
 	/**
 	 * Get the index of a source field name.
 	 * 
 	 * @param fieldName field name
-	 * @return index
+	 * @return index or -1 if there's no such field
 	 */
 	public int indexOfSourceField(String fieldName) {
-		for (int i = 0; i < sourceFields.length; i++) {
-			if (sourceFields[i].equals(fieldName))
-				return i;
-		}
-		return -1;
+		final Integer index = fieldIndexes.get(fieldName);
+		return index == null ? -1 : index.intValue();
 	}
 
+	/**
+	 * Get a handle for a source field, so its value can be
+	 * accessed by index in every record. Resolve handles once,
+	 * e.g. per entity, not per record.
+	 * 
+	 * @param fieldName field name
+	 * @return field handle; not present if there's no such field
+	 */
+	public FieldHandle handle(String fieldName) {
+		return new FieldHandle(fieldName, indexOfSourceField(fieldName));
+	}
+	
 	/**
 	 * Overwrite source fields. Can be done for special cases.
 	 * The CSV reader does this in certain cases.
+	 * 
+	 * Field handles must be resolved again afterwards.
 	 *  
 	 * @param sourceFields new source fields
 	 */
 	public void overwriteSourceFields(String sourceFields[]) {
 		this.sourceFields = sourceFields;
+		this.indexSourceFields();
 	}
 	
 	/**
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex;
+
+
+/**
+ * Data mapper that returns the value and the decision whether the
+ * standard parsing goes on together ({@link MapResult}) instead of
+ * keeping it in an instance field until {@link #parseFurther()} is
+ * called. One mapper instance can be shared by parallel writer
+ * threads and batches can be mapped concurrently.
+ * 
+ * Callers aware of this interface call {@link #map(FieldMapping, String[], SourceEntity)};
+ * for the {@link DataMapper} contract, the decision of the last result
+ * is kept per thread.
+ */
+public interface StatelessDataMapper extends DataMapper {
+
+	/**
+	 * Customized mapping of a single output field mapping; 
+	 * must be thread-safe.
+	 * 
+	 * @param mapping one destination field mapping
+	 * @param sourceValues current records values in the order of the source entity's source fields
+	 * @param sourceEntity source entity
+	 * @return map result; {@link MapResult#NOT_MAPPED} if this mapper doesn't map the field
+	 * @throws IfaceXException
+	 */
+	public MapResult map(FieldMapping mapping, String sourceValues[], SourceEntity sourceEntity) throws IfaceXException;
+	
+	@Override
+	public default String parseCustomized(FieldMapping mapping, String sourceValues[], SourceEntity sourceEntity) throws IfaceXException {
+		final MapResult result = map(mapping, sourceValues, sourceEntity);
+		MapResult.LAST.set(result);
+		return result.getValue();
+	}
+
+	@Override
+	public default boolean parseFurther() {
+		return MapResult.LAST.get().parseFurther();
+	}
+	
+}
@@ -16,6 +16,9 @@ package ch.autumo.ifacex;
 
 import java.util.Map;
 
+import ch.autumo.ifacex.writer.db.StatementPlan;
+import ch.autumo.ifacex.writer.json.JsonBodyWriter;
+
 
 /**
  * The writer mapping is the IPC representation of the 
@@ -177,6 +180,20 @@ public interface WriterMapping {
 	 */
 	String createJSONBodyForUpdate(String values[]) throws IfaceXException;
 
+	/**
+	 * Get a streaming JSON body writer for inserts according to this mapping;
+	 * it writes records or whole batches directly into output streams or
+	 * byte buffers, without building strings or maps per record.
+	 * 
+	 * Create it once per entity.
+	 * 
+	 * @return JSON body writer
+	 * @throws IfaceXException
+	 */
+	default JsonBodyWriter getJSONBodyWriter() throws IfaceXException {
+		return JsonBodyWriter.forInsert(this);
+	}
+
 	/**
 	 * Get parameters for given filter fields without destination mapping.
 	 * Values are UTF-8 encoded.
@@ -295,6 +312,21 @@ public interface WriterMapping {
 	 */
 	String getDbFieldsForInsert() throws IfaceXException;
 
+	/**
+	 * Compile the statement plan of this mapping for database writers:
+	 * Fixed columns and parameter slots, so records are bound to one
+	 * prepared statement instead of building SQL for every record.
+	 * 
+	 * Compile it once per entity.
+	 * 
+	 * @param config writer configuration; for filter fields and extended insert mapping
+	 * @return statement plan
+	 * @throws IfaceXException
+	 */
+	default StatementPlan getStatementPlan(RWC config) throws IfaceXException {
+		return StatementPlan.compile(this, config);
+	}
+
 	/**
 	 * Get a plain text record. 
 	 * 
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2020 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.batch;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Independent read-only cursor over the records of a batch.
+ * 
+ * Records are either returned as arrays ({@link #next()}) or read
+ * value by value ({@link #advance()} and {@link #value(int)}); the
+ * latter doesn't materialize records of a columnar batch.
+ * 
+ * See {@link BatchData#cursor()}.
+ */
+public final class BatchCursor implements Iterator<String[]> {
+
+	private final RecordStore store;
+	private final int size;
+	
+	private int position = 0;
+	
+
+	/**
+	 * Create a cursor.
+	 * 
+	 * @param store record store
+	 * @param size amount of records visible to this cursor
+	 */
+	BatchCursor(RecordStore store, int size) {
+		this.store = store;
+		this.size = size;
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return position < size;
+	}
+
+	@Override
+	public String[] next() {
+		if (position >= size)
+			throw new NoSuchElementException();
+		return store.get(position++);
+	}
+	
+	/**
+	 * Move to the next record without materializing it; read
+	 * its values with {@link #value(int)}.
+	 * 
+	 * @return true if there is a next record, otherwise false
+	 */
+	public boolean advance() {
+		if (position >= size)
+			return false;
+		position++;
+		return true;
+	}
+
+	/**
+	 * Get a value of the current record, i.e. the record
+	 * moved to with {@link #advance()} or returned by {@link #next()}.
+	 * 
+	 * @param column column (field index)
+	 * @return value or null if the record has no such column
+	 */
+	public String value(int column) {
+		if (position == 0)
+			throw new IllegalStateException("No current record!");
+		return store.value(position - 1, column);
+	}
+
+	/**
+	 * Get the amount of values of the current record.
+	 * 
+	 * @return amount of values
+	 */
+	public int width() {
+		if (position == 0)
+			throw new IllegalStateException("No current record!");
+		return store.width(position - 1);
+	}
+
+	/**
+	 * Amount of records visible to this cursor.
+	 * 
+	 * @return size
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Position of the record returned next.
+	 * 
+	 * @return position
+	 */
+	public int position() {
+		return position;
+	}
+	
+	/**
+	 * Rewind this cursor to the first record.
+	 */
+	public void rewind() {
+		position = 0;
+	}
+	
+}
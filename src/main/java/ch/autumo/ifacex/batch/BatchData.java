@@ -14,14 +14,23 @@
  */
 package ch.autumo.ifacex.batch;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import ch.autumo.commons.utils.system.OSUtils;
-import ch.autumo.ifacex.Configuration;
-import ch.autumo.ifacex.Constants;
 import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.SourceEntity;
 
 
 /**
@@ -30,27 +39,43 @@ import ch.autumo.ifacex.IPC;
  * 
  * Batches are created by a reader and added to a
  * batch processor.
+ * 
+ * The records are stored either row by row (default) or
+ * column by column, see {@link #STORAGE_COLUMNAR}.
  */
 public class BatchData implements Iterator<String[]> {
 
-	private List<String[]> data = new ArrayList<String[]>();
-	private Iterator<String[]> iterator = null;
+	/**
+	 * Configuration key for the record storage of batches
+	 * ('batch_storage' in 'cfg/ifacex.cfg').
+	 */
+	public static final String KEY_STORAGE = "batch_storage";
+	
+	/**
+	 * Row storage: Every record is kept as added (default).
+	 */
+	public static final String STORAGE_ROW = "row";
+	
+	/**
+	 * Columnar storage: Values are kept per column and repeated values 
+	 * are dictionary-encoded. Uses considerably less heap for large batches 
+	 * with many columns; records are materialized when iterated.
+	 */
+	public static final String STORAGE_COLUMNAR = "columnar";
+	
+	private RecordStore store = null;
 	
-	private boolean firstIterCall = true;
+	private int position = 0;
+	
+	// records are shared with copies from here on
+	private volatile boolean frozen = false;
 	
 	private String batch = null;
 	
 	private boolean first = false;
 	private boolean last = false;
 	
-	private boolean replace = false;
-	private String oldD; 
-	private String newD; 
-	private boolean cleanNullValues = true;
-
-	private boolean mapCountry;
-	private List<String> countryFieldNames; 
-	private String defaultIso;
+	private ValueNormalizer normalizer = null;
 	
 	private String csvDelim = ";";
 	
@@ -63,23 +88,25 @@ public class BatchData implements Iterator<String[]> {
 	 */
 	private BatchData() {
 	}
-
+	
 	/**
 	 * Create a new batch of data.
 	 * 
 	 * @param config config
 	 */
 	public BatchData(IPC config) {
-		replace = ((Configuration) config).replaceChar();
-		oldD = ((Configuration) config).getOldChar();
-		newD = ((Configuration) config).getNewChar();
-		cleanNullValues = ((Configuration) config).cleanNullValues();
-		mapCountry = ((Configuration) config).map2ISOCodes();
-		countryFieldNames = ((Configuration) config).getSourceCountryFieldsList();
-		defaultIso = ((Configuration) config).getMapDefaultIso();
-		if (defaultIso == null)
-			defaultIso = Constants.DEFAULT_ISO;
-		defaultIso = defaultIso.toUpperCase();
+		this(config, STORAGE_COLUMNAR.equalsIgnoreCase(config.getValue(KEY_STORAGE, STORAGE_ROW)));
+	}
+
+	/**
+	 * Create a new batch of data with a specific storage.
+	 * 
+	 * @param config config
+	 * @param columnar true for columnar storage, false for row storage
+	 */
+	public BatchData(IPC config, boolean columnar) {
+		store = columnar ? new ColumnarRecordStore() : new RowRecordStore();
+		normalizer = ValueNormalizer.of(config);
 		csvDelim = config.getCSVDelimiterChar();
 	}
 
@@ -91,28 +118,16 @@ public class BatchData implements Iterator<String[]> {
 	 * Helper method, that doesn't modify this batch, only the given
 	 * value that is possibly modified and returned.
 	 * 
+	 * For large volumes, rather compile a {@link ValueNormalizer}
+	 * once per source entity and normalize values by field index,
+	 * see {@link ValueNormalizer#compile(SourceEntity)}.
+	 * 
 	 * @param val batch value.
 	 * @param fieldName source (reader) field name
 	 * @return
 	 */
 	public String modifyValueBeforeAdding(String val, String fieldName) {
-		if (val == null)
-			return "";
-		val = val.trim();
-		// 'null' string values are just futile, always, fight me!
-		if (cleanNullValues && val.equalsIgnoreCase("null")) 
-			return "";
-		// replace char ?
-		if (replace && val.indexOf(oldD) != -1) {
-			val = val.replaceAll(oldD, newD);
-		}
-		if (mapCountry && countryFieldNames.contains(fieldName)) {
-			if (Configuration.containsGeodata(val))
-				val = Configuration.getGeodata(val).getISO().toUpperCase();
-			else
-				val = defaultIso;
-		}
-		return val;
+		return normalizer.normalize(val, fieldName);
 	}
 	
 	/**
@@ -127,24 +142,28 @@ public class BatchData implements Iterator<String[]> {
 	/**
 	 * Main add method (all add calls end here).
 	 * 
+	 * Records can't be added anymore, once the batch 
+	 * has been handed over to the batch processor.
+	 * 
 	 * @param record record
 	 */
 	public void addRecordValues(String record[]) {
-		data.add(record);
+		if (frozen)
+			throw new IllegalStateException("Batch has been handed over for processing, no records can be added anymore!");
+		store.add(record);
+		batch = null;
 	}
 	
 	@Override
 	public boolean hasNext() {
-		if (firstIterCall) {
-			iterator = data.iterator();
-			firstIterCall = false;
-		}
-		return iterator.hasNext();
+		return position < store.size();
 	}
 
 	@Override
 	public String[] next() {
-		return iterator.next();
+		if (position >= store.size())
+			throw new NoSuchElementException();
+		return store.get(position++);
 	}
 	
 	/**
@@ -153,7 +172,62 @@ public class BatchData implements Iterator<String[]> {
 	 * @return size of batch
 	 */
 	public int size() {
-		return data.size();
+		return store.size();
+	}
+	
+	/**
+	 * Create a new independent cursor over all records of this batch.
+	 * 
+	 * Cursors don't consume the iteration of this batch nor of other
+	 * cursors and they don't copy records, hence many writers can read 
+	 * the same batch at the same time. The records returned are shared
+	 * and must not be modified!
+	 * 
+	 * @return new cursor
+	 */
+	public BatchCursor cursor() {
+		return new BatchCursor(store, store.size());
+	}
+	
+	/**
+	 * Get all values of a column, e.g. to look them up at once.
+	 * 
+	 * @param fieldIndex column (field index)
+	 * @return values in record order; null for records without such column
+	 */
+	public String[] column(int fieldIndex) {
+		final int size = store.size();
+		final String values[] = new String[size];
+		for (int i = 0; i < size; i++)
+			values[i] = store.value(i, fieldIndex);
+		return values;
+	}
+	
+	/**
+	 * Select records of this batch, e.g. the records to keep
+	 * after a {@link ch.autumo.ifacex.BatchExclusionFilter}.
+	 * 
+	 * With row storage, records aren't copied, but shared with the
+	 * selected batch; with columnar storage, the selected records are
+	 * added to a new columnar store. First and last batch markers are kept.
+	 * 
+	 * @param selection selection: bit set for every record index to keep
+	 * @return new batch with the selected records, 
+	 * 		or this batch if all records are selected
+	 */
+	public BatchData select(BitSet selection) {
+		final int size = store.size();
+		if (selection.nextClearBit(0) >= size)
+			return this;
+		final BatchData selected = new BatchData();
+		selected.store = store instanceof ColumnarRecordStore ? new ColumnarRecordStore() : new RowRecordStore();
+		for (int i = selection.nextSetBit(0); i >= 0 && i < size; i = selection.nextSetBit(i + 1))
+			selected.store.add(store.get(i));
+		selected.normalizer = this.normalizer;
+		selected.csvDelim = this.csvDelim;
+		selected.first = this.first;
+		selected.last = this.last;
+		return selected;
 	}
 	
 	/**
@@ -216,6 +290,16 @@ public class BatchData implements Iterator<String[]> {
 		this.processed = true;
 	}
 	
+	/**
+	 * Freeze this batch; no records can be added anymore.
+	 * 
+	 * Don't bother, the batch processor is
+	 * freezing batches before processing them.
+	 */
+	void freeze() {
+		this.frozen = true;
+	}
+	
 	/**
 	 * Copy this batch.
 	 * 
@@ -225,52 +309,150 @@ public class BatchData implements Iterator<String[]> {
 	 * 
 	 * Don't used it.
 	 * 
+	 * The records aren't copied, but shared with this 
+	 * batch, which is frozen thereby. The copy has its
+	 * own iteration state and processing flags.
+	 * 
 	 * Only the following values are copied:
 	 * - Value delimiter for string representation
 	 * - String representation
-	 * - All records of the batch
+	 * - Value normalizer
+	 * - All records of the batch (shared)
 	 * 
 	 * @return copied batch
 	 */
 	BatchData copy() {
+		this.freeze();
 		final BatchData newData = new BatchData();
 		newData.csvDelim = this.csvDelim;
-		// We don't need to copy infos for modifyng, 
-		// only the first batch created in the reader
-		// needs this data.
+		newData.normalizer = this.normalizer;
 		newData.batch = this.batch;
-		int len = data.size();
-		for (int i = 0; i < len; i++) {
-			newData.data.add(this.data.get(i));
-		}
+		newData.store = this.store;
+		newData.frozen = true;
 		return newData;
 	}
 	
+	/**
+	 * Write the batch representation to the given output; records
+	 * are written as CSV records separated by line separators, the
+	 * same way as {@link #toString()}, but without building the whole
+	 * batch representation in memory.
+	 * 
+	 * Use a buffered output, e.g. a {@link java.io.BufferedWriter}.
+	 * 
+	 * @param out output, e.g. a {@link java.io.Writer} or a {@link java.io.PrintStream}
+	 * @throws IOException on output errors
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		final int datalen = store.size();
+		for (int l = 0; l < datalen; l++) {
+			if (l > 0)
+				out.append(OSUtils.LINE_SEPARATOR);
+			final String record[] = store.get(l);
+			final int len = record.length;
+			for (int i = 0; i < len; i++) {
+				if (i > 0)
+					out.append(csvDelim);
+				out.append(record[i]);
+			}
+		}
+	}
+
+	/**
+	 * Write the batch representation to the given channel; records
+	 * are written as CSV records separated by line separators, the
+	 * same way as {@link #toString()}.
+	 * 
+	 * The values are encoded into the given buffer, which is written 
+	 * to the channel every time it is full and at the end. Any content
+	 * in the buffer before calling this method is written first.
+	 * 
+	 * @param channel channel, e.g. a {@link java.nio.channels.FileChannel}
+	 * @param buffer buffer used for encoding, e.g. a direct buffer
+	 * @param charset charset
+	 * @throws IOException on output errors
+	 */
+	public void writeTo(WritableByteChannel channel, ByteBuffer buffer, Charset charset) throws IOException {
+		final CharsetEncoder encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = CharBuffer.allocate(256);
+		final int datalen = store.size();
+		for (int l = 0; l < datalen; l++) {
+			if (l > 0)
+				chars = encode(OSUtils.LINE_SEPARATOR, chars, encoder, channel, buffer);
+			final String record[] = store.get(l);
+			final int len = record.length;
+			for (int i = 0; i < len; i++) {
+				if (i > 0)
+					chars = encode(csvDelim, chars, encoder, channel, buffer);
+				chars = encode(String.valueOf(record[i]), chars, encoder, channel, buffer);
+			}
+		}
+		chars.flip();
+		encodeAndDrain(chars, true, encoder, channel, buffer);
+		while (encoder.flush(buffer) == CoderResult.OVERFLOW)
+			drain(channel, buffer);
+		drain(channel, buffer);
+	}
+	
+	private static CharBuffer encode(String value, CharBuffer chars, CharsetEncoder encoder, 
+			WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		final int len = value.length();
+		if (chars.remaining() < len) {
+			chars.flip();
+			encodeAndDrain(chars, false, encoder, channel, buffer);
+			// unmapped surrogate halves may be left over
+			chars.compact();
+			if (chars.remaining() < len) {
+				final CharBuffer larger = CharBuffer.allocate(Math.max(chars.capacity() << 1, chars.position() + len));
+				chars.flip();
+				larger.put(chars);
+				chars = larger;
+			}
+		}
+		final int pos = chars.position();
+		value.getChars(0, len, chars.array(), chars.arrayOffset() + pos);
+		chars.position(pos + len);
+		return chars;
+	}
+	
+	private static void encodeAndDrain(CharBuffer chars, boolean endOfInput, CharsetEncoder encoder, 
+			WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (encoder.encode(chars, buffer, endOfInput) == CoderResult.OVERFLOW)
+			drain(channel, buffer);
+	}
+	
+	private static void drain(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+	
 	/**
 	 * Batch representation. Records are shown
 	 * as CSV records.
 	 * 
+	 * The representation is cached until further 
+	 * records are added to this batch.
+	 * 
 	 * @return batch representation
 	 */
 	public final String toString() {
-		if (batch == null) {
-			batch = "";
-			int datalen = data.size();
-			for (int l = 0; l < datalen; l++) {
-				final String record[] = data.get(l);
-				int len = record.length;
-				for (int i = 0; i < len; i++) {
-					if (i+1 == len)
-						batch += record[i];
-					else
-						batch += ( record[i] + csvDelim );
-				}
-				batch += OSUtils.LINE_SEPARATOR;				
+		String representation = batch;
+		if (representation == null) {
+			final StringBuilder sb = new StringBuilder(store.size() * 64);
+			try {
+				writeTo(sb);
+			} catch (IOException e) {
+				// never thrown by a string builder
+				throw new UncheckedIOException(e);
 			}
+			representation = sb.toString();
+			batch = representation;
 		}
-		if (batch.length() != 0)
-			return batch.substring(0, batch.length()-1);
-		else return "";
+		return representation;
 	}
 	
 }
@@ -22,6 +22,11 @@ import ch.autumo.ifacex.SourceEntity;
  * Batch processor; 1 Interface Processor (IP) = 1 BatchProcessor.
  * 
  * Processing batches for all IP writers serially or in parallel.
+ * 
+ * See {@link PipelinedBatchProcessor} for a processor that runs
+ * every writer in its own thread with bounded queues, and
+ * {@link FilteringBatchProcessor} for applying batch exclusion
+ * filters to every batch.
  */
 public interface BatchProcessor {
 
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2020 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.batch;
+
+import java.util.Arrays;
+
+
+/**
+ * Columnar storage. Values are stored per column as integer codes:
+ *
+ * - Repeated values are dictionary-encoded; every distinct value
+ *   is held once per column, no matter how many records use it.
+ * - When a column exceeds the dictionary limit (high cardinality,
+ *   e.g. IDs or e-mail addresses), further values are appended to
+ *   a shared char buffer of that column instead of being kept as
+ *   single string objects.
+ *
+ * The dictionary is an open-addressing table of primitive codes,
+ * so no boxed index or map entry is held per distinct value.
+ *
+ * Records are materialized on access with {@link #get(int)}; single
+ * values can be read without materializing the record, see
+ * {@link BatchCursor#value(int)}. Values of dictionary-encoded columns
+ * are shared, values from the char buffer are created anew.
+ */
+final class ColumnarRecordStore implements RecordStore {
+
+	/** Default max. distinct values per column that are dictionary-encoded. */
+	static final int DEFAULT_DICTIONARY_LIMIT = 1024;
+
+	private static final int INITIAL_ROWS = 64;
+	private static final int NULL_CODE = -1;
+
+	private final int dictionaryLimit;
+
+	private Column columns[] = new Column[0];
+	private int widths[] = new int[INITIAL_ROWS];
+	private int size = 0;
+
+
+	/**
+	 * Create a columnar store with the default dictionary limit.
+	 */
+	ColumnarRecordStore() {
+		this(DEFAULT_DICTIONARY_LIMIT);
+	}
+
+	/**
+	 * Create a columnar store.
+	 *
+	 * @param dictionaryLimit max. distinct values per column that are dictionary-encoded
+	 */
+	ColumnarRecordStore(int dictionaryLimit) {
+		this.dictionaryLimit = dictionaryLimit;
+	}
+
+	@Override
+	public void add(String record[]) {
+		final int len = record.length;
+		if (size == widths.length)
+			widths = Arrays.copyOf(widths, size << 1);
+		widths[size] = len;
+		// Records with more values than seen before open new columns,
+		// all previous records have no value there
+		if (len > columns.length) {
+			final int old = columns.length;
+			columns = Arrays.copyOf(columns, len);
+			for (int i = old; i < len; i++)
+				columns[i] = new Column(size);
+		}
+		for (int i = 0; i < columns.length; i++)
+			columns[i].append(size, i < len ? record[i] : null);
+		size++;
+	}
+
+	@Override
+	public String[] get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		final String record[] = new String[widths[index]];
+		for (int i = 0; i < record.length; i++)
+			record[i] = columns[i].value(index);
+		return record;
+	}
+
+	@Override
+	public String value(int index, int column) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		return column < widths[index] ? columns[column].value(index) : null;
+	}
+
+	@Override
+	public int width(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		return widths[index];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	private static int mix(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * One column.
+	 *
+	 * Codes: '>= 0' dictionary entry, '-1' null value, '<= -2' char buffer entry.
+	 */
+	private final class Column {
+
+		private int codes[];
+
+		// open addressing: dictionary code + 1, 0 for free slots; null when spilled
+		private int table[] = new int[32];
+		private String dictionary[] = new String[16];
+		private int dictSize = 0;
+
+		private char chars[] = null;
+		private int offsets[] = null;
+		private int bufSize = 0;
+
+		private Column(int paddedRows) {
+			codes = new int[Math.max(INITIAL_ROWS, widths.length)];
+			Arrays.fill(codes, 0, paddedRows, NULL_CODE);
+		}
+
+		private void append(int row, String value) {
+			if (row == codes.length)
+				codes = Arrays.copyOf(codes, row << 1);
+			codes[row] = encode(value);
+		}
+
+		private int encode(String value) {
+			if (value == null)
+				return NULL_CODE;
+			if (table != null) {
+				final int mask = table.length - 1;
+				int slot = mix(value.hashCode()) & mask;
+				int entry;
+				while ((entry = table[slot]) != 0) {
+					if (dictionary[entry - 1].equals(value))
+						return entry - 1;
+					slot = (slot + 1) & mask;
+				}
+				if (dictSize < dictionaryLimit) {
+					if (dictSize == dictionary.length)
+						dictionary = Arrays.copyOf(dictionary, dictSize << 1);
+					dictionary[dictSize] = value;
+					table[slot] = dictSize + 1;
+					// load factor max. 0.5
+					if (++dictSize << 1 > table.length)
+						rehash();
+					return dictSize - 1;
+				}
+				// Cardinality too high, dictionary stays as it is
+				table = null;
+				chars = new char[1024];
+				offsets = new int[INITIAL_ROWS + 1];
+			}
+			return -2 - appendChars(value);
+		}
+
+		private void rehash() {
+			final int larger[] = new int[table.length << 1];
+			final int mask = larger.length - 1;
+			for (int code = 0; code < dictSize; code++) {
+				int slot = mix(dictionary[code].hashCode()) & mask;
+				while (larger[slot] != 0)
+					slot = (slot + 1) & mask;
+				larger[slot] = code + 1;
+			}
+			table = larger;
+		}
+
+		private int appendChars(String value) {
+			final int len = value.length();
+			final int start = offsets[bufSize];
+			if (start + len > chars.length)
+				chars = Arrays.copyOf(chars, Math.max(chars.length << 1, start + len));
+			value.getChars(0, len, chars, start);
+			if (bufSize + 2 > offsets.length)
+				offsets = Arrays.copyOf(offsets, offsets.length << 1);
+			offsets[bufSize + 1] = start + len;
+			return bufSize++;
+		}
+
+		private String value(int row) {
+			final int code = codes[row];
+			if (code >= 0)
+				return dictionary[code];
+			if (code == NULL_CODE)
+				return null;
+			final int entry = -2 - code;
+			final int start = offsets[entry];
+			return new String(chars, start, offsets[entry + 1] - start);
+		}
+	}
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright 2020 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.batch;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import ch.autumo.ifacex.Configuration;
+
+
+/**
+ * Country to ISO code lookup used when countries are mapped
+ * to ISO codes ('map_2_iso_codes').
+ *
+ * Every country value is resolved once with the geodata of the
+ * configuration; the upper-case ISO code is then cached, so further
+ * lookups of the same country value need neither a geodata lookup
+ * nor an allocation. Unknown values (free-text variants) are cached
+ * too, so they aren't looked up again and again either.
+ *
+ * Both caches are keyed by the trimmed, upper-case value, so 'ch',
+ * ' CH' and 'Ch' share one entry; a value is resolved with the trimmed
+ * value as given first and with the upper-case key second. Both caches
+ * are bounded and evict the least recently used value once full.
+ *
+ * Cached ISO codes aren't tied to a geodata version: when geodata is
+ * reloaded, {@link #clear()} must be called on the lookups in use,
+ * including the {@link #shared()} one; otherwise they keep answering
+ * with the geodata they have been filled with.
+ *
+ * A lookup is thread-safe.
+ */
+public final class CountryIsoLookup {
+
+	/** Default max. amount of known country values cached. */
+	public static final int DEFAULT_MAX_KNOWN = 10000;
+
+	/** Default max. amount of unknown country values cached. */
+	public static final int DEFAULT_MAX_UNKNOWN = 10000;
+
+	private static final CountryIsoLookup SHARED = new CountryIsoLookup(DEFAULT_MAX_KNOWN, DEFAULT_MAX_UNKNOWN);
+
+	private static final Boolean UNKNOWN = Boolean.TRUE;
+
+	private final Map<String, String> known;
+	private final Map<String, Boolean> unknown;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder unknownHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+
+	/**
+	 * Create a lookup.
+	 *
+	 * @param maxUnknown max. amount of unknown country values cached; 0 for none
+	 */
+	public CountryIsoLookup(int maxUnknown) {
+		this(DEFAULT_MAX_KNOWN, maxUnknown);
+	}
+
+	/**
+	 * Create a lookup.
+	 *
+	 * @param maxKnown max. amount of known country values cached; 0 for none
+	 * @param maxUnknown max. amount of unknown country values cached; 0 for none
+	 */
+	public CountryIsoLookup(int maxKnown, int maxUnknown) {
+		this.known = new Lru<String>(maxKnown);
+		this.unknown = new Lru<Boolean>(maxUnknown);
+	}
+
+	/**
+	 * Lookup shared by all readers; clear it when geodata
+	 * is reloaded.
+	 *
+	 * @return shared lookup
+	 */
+	public static CountryIsoLookup shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Get the upper-case ISO code of a country.
+	 *
+	 * @param country country value, e.g. 'Switzerland', 'CH', 'Schweiz'
+	 * @return upper-case ISO code or null if the country is unknown
+	 */
+	public String lookup(String country) {
+		final String value = country.trim();
+		final String key = value.toUpperCase(Locale.ROOT);
+		String iso;
+		synchronized (known) {
+			iso = known.get(key);
+		}
+		if (iso != null) {
+			hits.increment();
+			return iso;
+		}
+		synchronized (unknown) {
+			if (unknown.get(key) != null) {
+				unknownHits.increment();
+				return null;
+			}
+		}
+		misses.increment();
+		iso = resolve(value);
+		if (iso == null && !key.equals(value))
+			iso = resolve(key);
+		if (iso != null) {
+			synchronized (known) {
+				known.put(key, iso);
+			}
+			return iso;
+		}
+		synchronized (unknown) {
+			unknown.put(key, UNKNOWN);
+		}
+		return null;
+	}
+
+	private static String resolve(String country) {
+		if (Configuration.containsGeodata(country))
+			return Configuration.getGeodata(country).getISO().toUpperCase(Locale.ROOT);
+		return null;
+	}
+
+	/**
+	 * Amount of lookups answered with an ISO code from this lookup.
+	 *
+	 * @return hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Amount of lookups answered as unknown country from this lookup.
+	 *
+	 * @return unknown hits
+	 */
+	public long getUnknownHits() {
+		return unknownHits.sum();
+	}
+
+	/**
+	 * Amount of lookups that needed a geodata lookup.
+	 *
+	 * @return misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Clear all cached values and counters, e.g. after
+	 * geodata has been reloaded.
+	 */
+	public void clear() {
+		synchronized (known) {
+			known.clear();
+		}
+		synchronized (unknown) {
+			unknown.clear();
+		}
+		hits.reset();
+		unknownHits.reset();
+		misses.reset();
+	}
+
+	/**
+	 * Access-ordered map evicting the least recently used entry;
+	 * callers synchronize on it.
+	 */
+	private static final class Lru<V> extends LinkedHashMap<String, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int max;
+
+		private Lru(int max) {
+			super(16, 0.75f, true);
+			this.max = max;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+			return size() > max;
+		}
+	}
+
+}
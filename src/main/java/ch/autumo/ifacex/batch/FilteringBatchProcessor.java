@@ -0,0 +1,139 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.batch;
+
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import ch.autumo.ifacex.BatchExclusionFilter;
+import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.SourceEntity;
+
+
+/**
+ * Batch processor that applies the batch exclusion filter of the
+ * entity ({@link ch.autumo.ifacex.RWC#getBatchExclusionFilter(SourceEntity)})
+ * to every batch before handing the remaining records to the wrapped
+ * batch processor. 
+ * 
+ * Batches without excluded records are handed over as they are;
+ * otherwise a batch with the remaining records is handed over and
+ * the original batch is marked as processed.
+ * 
+ * Readers install it at the beginning of reading an entity with
+ * {@link #of(BatchProcessor, IPC, SourceEntity)}, e.g.:
+ * 
+ * <pre>
+ * batchProcessor = FilteringBatchProcessor.of(batchProcessor, config, entity);
+ * </pre>
+ */
+public class FilteringBatchProcessor implements BatchProcessor {
+
+	// cached 'no filter' for an entity
+	private static final BatchExclusionFilter NONE = (entity, batch) -> null;
+	
+	private final BatchProcessor processor;
+	private final IPC config;
+	private final BatchExclusionFilter filter;
+	private final Map<SourceEntity, BatchExclusionFilter> filters = new IdentityHashMap<SourceEntity, BatchExclusionFilter>();
+	
+	
+	/**
+	 * Create a filtering batch processor with the configured 
+	 * batch exclusion filter per entity.
+	 * 
+	 * @param processor wrapped batch processor
+	 * @param config IPC
+	 */
+	public FilteringBatchProcessor(BatchProcessor processor, IPC config) {
+		this.processor = processor;
+		this.config = config;
+		this.filter = null;
+	}
+
+	/**
+	 * Create a filtering batch processor with the given 
+	 * batch exclusion filter for all entities.
+	 * 
+	 * @param processor wrapped batch processor
+	 * @param filter batch exclusion filter
+	 */
+	public FilteringBatchProcessor(BatchProcessor processor, BatchExclusionFilter filter) {
+		this.processor = processor;
+		this.config = null;
+		this.filter = filter;
+	}
+	
+	/**
+	 * Wrap a batch processor with the configured batch exclusion
+	 * filter of an entity, if there is one.
+	 * 
+	 * @param processor batch processor
+	 * @param config IPC
+	 * @param entity source entity
+	 * @return filtering batch processor or the given batch processor,
+	 * 		if the entity has no batch exclusion filter
+	 * @throws IfaceXException if the filter can't be created
+	 */
+	public static BatchProcessor of(BatchProcessor processor, IPC config, SourceEntity entity) throws IfaceXException {
+		final BatchExclusionFilter filter = config.getReaderConfig().getBatchExclusionFilter(entity);
+		return filter == null ? processor : new FilteringBatchProcessor(processor, filter);
+	}
+	
+	@Override
+	public boolean isInParallelMode() {
+		return processor.isInParallelMode();
+	}
+
+	@Override
+	public void noDataIsComing() {
+		processor.noDataIsComing();
+	}
+
+	@Override
+	public void processBatchData(BatchData batch, SourceEntity entity, boolean moreData) throws IfaceXException {
+		final BatchExclusionFilter f = filterFor(entity);
+		if (f != NONE && batch.size() > 0) {
+			final BitSet selection = f.select(entity, batch);
+			if (selection != null) {
+				final BatchData selected = batch.select(selection);
+				if (selected != batch) {
+					// replaced, nobody else processes the original
+					batch.markProcessed();
+					batch = selected;
+				}
+			}
+		}
+		processor.processBatchData(batch, entity, moreData);
+	}
+	
+	private BatchExclusionFilter filterFor(SourceEntity entity) throws IfaceXException {
+		if (filter != null)
+			return filter;
+		synchronized (filters) {
+			BatchExclusionFilter f = filters.get(entity);
+			if (f == null) {
+				f = config.getReaderConfig().getBatchExclusionFilter(entity);
+				if (f == null)
+					f = NONE;
+				filters.put(entity, f);
+			}
+			return f;
+		}
+	}
+	
+}
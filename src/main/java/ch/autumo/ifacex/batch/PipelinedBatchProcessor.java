@@ -0,0 +1,332 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.batch;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.writer.Writer;
+
+
+/**
+ * Pipelined batch processor.
+ *
+ * Every writer of the IPC runs in its own thread and consumes batches
+ * from its own bounded queue; the reader publishes batches into all
+ * queues and continues reading right away. When a queue is full, the
+ * reader waits (backpressure), so memory stays bounded and the IPC runs
+ * at the speed of the slowest stage rather than the sum of all stages.
+ *
+ * Each writer still receives the batches of an entity in the order
+ * they have been read, one after the other. Batches aren't copied
+ * per writer, their records are shared; see {@link BatchData#copy()}.
+ *
+ * Writers are initialized for every new entity by this processor
+ * ({@link Writer#initializeEntity(String, IPC, SourceEntity)} and
+ * {@link Writer#writeHeader(String, IPC, SourceEntity)}) in their
+ * own thread, before the first batch of that entity is written.
+ * When the pipeline ends, every writer is closed in its own thread
+ * after its last batch ({@link Writer#close(String)}); don't close
+ * the writers again.
+ *
+ * The first writer failure stops all writers; it is thrown to the
+ * reader with the next call of this processor.
+ *
+ * This processor isn't selected by the batch mode configuration;
+ * it is a programmatic API for processes that drive a reader and
+ * its writers themselves. The writers must have been initialized
+ * ({@link Writer#initialize(String, IPC, ch.autumo.ifacex.Processor)}).
+ * Example:
+ *
+ * <pre>
+ * final Map&lt;String, Writer&gt; writers = new HashMap&lt;String, Writer&gt;();
+ * for (String name : config.getWriterNames())
+ *     writers.put(name, initializedWriter(name));
+ * final BatchProcessor processor = new PipelinedBatchProcessor(config, writers);
+ * for (int i = 0; i &lt; entities.length; i++) {
+ *     reader.initializeEntity(readerName, config, entities[i]);
+ *     reader.read(readerName, processor, config, entities[i], i &lt; entities.length - 1);
+ * }
+ * </pre>
+ */
+public class PipelinedBatchProcessor implements BatchProcessor {
+
+	/**
+	 * Configuration key for the queue depth per writer
+	 * ('batch_queue_depth' in 'cfg/ifacex.cfg').
+	 */
+	public static final String KEY_QUEUE_DEPTH = "batch_queue_depth";
+
+	/**
+	 * Default queue depth per writer (batches).
+	 */
+	public static final int DEFAULT_QUEUE_DEPTH = 4;
+
+	private static final Item END = new Item(null, null, null);
+
+	private final IPC config;
+	private final Stage stages[];
+
+	private final AtomicReference<IfaceXException> failure = new AtomicReference<IfaceXException>();
+
+	private boolean first = true;
+	private boolean finished = false;
+
+
+	/**
+	 * Create a pipelined batch processor with the configured queue depth.
+	 *
+	 * @param config IPC
+	 * @param writers all writers by writer name, see {@link IPC#getWriterNames()}
+	 */
+	public PipelinedBatchProcessor(IPC config, Map<String, Writer> writers) {
+		this(config, writers, queueDepth(config));
+	}
+
+	/**
+	 * Create a pipelined batch processor.
+	 *
+	 * @param config IPC
+	 * @param writers all writers by writer name, see {@link IPC#getWriterNames()}
+	 * @param queueDepth max. batches queued per writer
+	 */
+	public PipelinedBatchProcessor(IPC config, Map<String, Writer> writers, int queueDepth) {
+		if (queueDepth < 1)
+			throw new IllegalArgumentException("Queue depth must be at least 1, but is " + queueDepth + "!");
+		this.config = config;
+		final String names[] = config.getWriterNames();
+		this.stages = new Stage[names.length];
+		for (int i = 0; i < names.length; i++) {
+			final Writer writer = writers.get(names[i]);
+			if (writer == null)
+				throw new IllegalArgumentException("No writer for writer name '" + names[i] + "'!");
+			stages[i] = new Stage(names[i], writer, queueDepth);
+		}
+		for (int i = 0; i < stages.length; i++)
+			stages[i].start();
+	}
+
+	private static int queueDepth(IPC config) {
+		final String value = config.getValue(KEY_QUEUE_DEPTH, String.valueOf(DEFAULT_QUEUE_DEPTH));
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return DEFAULT_QUEUE_DEPTH;
+		}
+	}
+
+	@Override
+	public boolean isInParallelMode() {
+		return true;
+	}
+
+	@Override
+	public void noDataIsComing() {
+		if (finished)
+			return;
+		try {
+			finish();
+		} catch (IfaceXException e) {
+			// nothing has been written
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	@Override
+	public void processBatchData(BatchData batch, SourceEntity entity, boolean moreData) throws IfaceXException {
+		if (finished)
+			throw new IllegalStateException("Last batch has already been processed!");
+		if (failure.get() != null) {
+			// stop all writers; they drain their queues after a failure
+			finished = true;
+			for (int i = 0; i < stages.length; i++)
+				stages[i].put(END);
+			throwFailure();
+		}
+
+		batch.freeze();
+		final boolean isFirst = first;
+		first = false;
+		if (isFirst)
+			batch.markFirst();
+		if (!moreData)
+			batch.markLast();
+
+		final AtomicInteger pending = new AtomicInteger(stages.length);
+		for (int i = 0; i < stages.length; i++) {
+			final BatchData copy = batch.copy();
+			if (isFirst)
+				copy.markFirst();
+			if (!moreData)
+				copy.markLast();
+			stages[i].put(new Item(copy, entity, new Done(batch, pending)));
+		}
+		if (stages.length == 0)
+			batch.markProcessed();
+
+		if (!moreData)
+			finish();
+	}
+
+	/**
+	 * Signal the end to all writers and wait until they have
+	 * written all queued batches.
+	 *
+	 * @throws IfaceXException first writer failure, if any
+	 */
+	private void finish() throws IfaceXException {
+		finished = true;
+		for (int i = 0; i < stages.length; i++)
+			stages[i].put(END);
+		for (int i = 0; i < stages.length; i++)
+			stages[i].await();
+		throwFailure();
+	}
+
+	private void throwFailure() throws IfaceXException {
+		final IfaceXException e = failure.get();
+		if (e != null)
+			throw e;
+	}
+
+
+	/**
+	 * Queued batch.
+	 */
+	private static final class Item {
+		private final BatchData batch;
+		private final SourceEntity entity;
+		private final Done done;
+		private Item(BatchData batch, SourceEntity entity, Done done) {
+			this.batch = batch;
+			this.entity = entity;
+			this.done = done;
+		}
+	}
+
+	/**
+	 * Marks the original batch as processed, when
+	 * all writers have written it.
+	 */
+	private static final class Done {
+		private final BatchData batch;
+		private final AtomicInteger pending;
+		private Done(BatchData batch, AtomicInteger pending) {
+			this.batch = batch;
+			this.pending = pending;
+		}
+		private void writtenOnce() {
+			if (pending.decrementAndGet() == 0)
+				batch.markProcessed();
+		}
+	}
+
+	/**
+	 * One writer with its queue and thread.
+	 */
+	private final class Stage implements Runnable {
+
+		private final String writerName;
+		private final Writer writer;
+		private final BlockingQueue<Item> queue;
+		private final Thread thread;
+
+		private Stage(String writerName, Writer writer, int queueDepth) {
+			this.writerName = writerName;
+			this.writer = writer;
+			this.queue = new ArrayBlockingQueue<Item>(queueDepth);
+			this.thread = new Thread(this, "ifaceX-writer-" + writerName);
+			this.thread.setDaemon(true);
+		}
+
+		private void start() {
+			thread.start();
+		}
+
+		private void put(Item item) throws IfaceXException {
+			try {
+				queue.put(item);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IfaceXException("Interrupted while queuing batch for writer '" + writerName + "'!", e);
+			}
+		}
+
+		private void await() throws IfaceXException {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IfaceXException("Interrupted while waiting for writer '" + writerName + "'!", e);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				drain();
+			} finally {
+				try {
+					writer.close(writerName);
+				} catch (IfaceXException e) {
+					failure.compareAndSet(null, e);
+				} catch (Throwable e) {
+					failure.compareAndSet(null, new IfaceXException("Writer '" + writerName + "' couldn't be closed: " + e.getMessage(), e));
+				}
+			}
+		}
+
+		private void drain() {
+			SourceEntity current = null;
+			while (true) {
+				final Item item;
+				try {
+					item = queue.take();
+				} catch (InterruptedException e) {
+					// record it, but keep draining until END, so the reader never blocks
+					failure.compareAndSet(null, new IfaceXException("Writer '" + writerName + "' has been interrupted!", e));
+					continue;
+				}
+				if (item == END)
+					return;
+				// keep draining after a failure, so the reader never blocks
+				if (failure.get() != null)
+					continue;
+				try {
+					if (item.entity != current) {
+						writer.initializeEntity(writerName, config, item.entity);
+						writer.writeHeader(writerName, config, item.entity);
+						current = item.entity;
+					}
+					writer.writeBatchData(writerName, config, item.batch, item.entity);
+					item.batch.markProcessed();
+					item.done.writtenOnce();
+				} catch (IfaceXException e) {
+					failure.compareAndSet(null, e);
+				} catch (Throwable e) {
+					// also errors, otherwise the stage would end without a failure
+					failure.compareAndSet(null, new IfaceXException("Writer '" + writerName + "' failed: " + e.getMessage(), e));
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2020 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.batch;
+
+
+/**
+ * Record storage behind a {@link BatchData}.
+ * 
+ * Records are only appended, never removed or changed,
+ * and the insertion order is preserved.
+ */
+interface RecordStore {
+
+	/**
+	 * Append a record.
+	 * 
+	 * @param record record
+	 */
+	void add(String record[]);
+
+	/**
+	 * Get the record at the given position.
+	 * 
+	 * @param index record position
+	 * @return record values
+	 */
+	String[] get(int index);
+
+	/**
+	 * Get a single value of the record at the given position.
+	 * 
+	 * @param index record position
+	 * @param column column (field index)
+	 * @return value or null if the record has no such column
+	 */
+	String value(int index, int column);
+
+	/**
+	 * Get the amount of values of the record at the given position.
+	 * 
+	 * @param index record position
+	 * @return amount of values
+	 */
+	int width(int index);
+
+	/**
+	 * Amount of records stored.
+	 * 
+	 * @return size
+	 */
+	int size();
+	
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2020 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Row storage; every record is kept as the array
+ * it has been added with. Default storage.
+ */
+final class RowRecordStore implements RecordStore {
+
+	private final List<String[]> data = new ArrayList<String[]>();
+	
+	@Override
+	public void add(String record[]) {
+		data.add(record);
+	}
+
+	@Override
+	public String[] get(int index) {
+		return data.get(index);
+	}
+
+	@Override
+	public String value(int index, int column) {
+		final String record[] = data.get(index);
+		return column < record.length ? record[column] : null;
+	}
+
+	@Override
+	public int width(int index) {
+		return data.get(index).length;
+	}
+
+	@Override
+	public int size() {
+		return data.size();
+	}
+	
+}
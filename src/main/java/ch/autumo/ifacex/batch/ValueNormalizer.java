@@ -0,0 +1,271 @@
+/**
+ * Copyright 2020 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.batch;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import ch.autumo.ifacex.Configuration;
+import ch.autumo.ifacex.Constants;
+import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.SourceEntity;
+
+
+/**
+ * Value normalization applied by readers to every value before
+ * it is added to a batch; see {@link BatchData#modifyValueBeforeAdding(String, String)}.
+ *
+ * The normalization steps are built once from the configuration:
+ * - Trim values
+ * - Clean 'null' values ('clean_null_values')
+ * - Replace characters ('replace_char', 'old_char', 'new_char'); the old
+ *   characters are a regular expression and the new characters a replacement
+ *   as for {@link String#replaceAll(String, String)}, applied to values that
+ *   contain the old characters literally; plain characters are replaced
+ *   without a regular expression
+ * - Map countries to ISO codes ('map_2_iso_codes'), see {@link CountryIsoLookup}
+ *
+ * Compile a normalizer for the fields of a source entity with
+ * {@link #compile(String[])} or {@link #compile(SourceEntity)}, so
+ * values are normalized by field index; this is the fastest way.
+ * A normalizer is immutable and can be shared between threads.
+ */
+public final class ValueNormalizer {
+
+	private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}";
+	private static final String REPLACEMENT_META_CHARS = "\\$";
+
+	private final boolean replace;
+	private final String oldD;
+	private final String newD;
+	private final boolean replaceSingleChar;
+	// null if old and new characters are plain
+	private final Pattern oldPattern;
+
+	private final boolean cleanNullValues;
+
+	private final boolean mapCountry;
+	private final Set<String> countryFieldNames;
+	private final String defaultIso;
+	private final CountryIsoLookup isoLookup;
+
+	// compiled: true for country fields at their index
+	private final boolean countryFields[];
+
+
+	/**
+	 * Create a value normalizer.
+	 *
+	 * @param replace replace characters?
+	 * @param oldChar characters to replace (regular expression)
+	 * @param newChar replacement characters
+	 * @param cleanNullValues clean 'null' values?
+	 * @param mapCountry map countries to ISO codes?
+	 * @param countryFieldNames source (reader) field names holding countries
+	 * @param defaultIso default ISO code for unknown countries
+	 */
+	public ValueNormalizer(boolean replace, String oldChar, String newChar, boolean cleanNullValues,
+			boolean mapCountry, Collection<String> countryFieldNames, String defaultIso) {
+		this(replace, oldChar, newChar, cleanNullValues, mapCountry, countryFieldNames, defaultIso, CountryIsoLookup.shared());
+	}
+	
+	/**
+	 * Create a value normalizer with a specific country ISO code lookup.
+	 *
+	 * @param replace replace characters?
+	 * @param oldChar characters to replace (regular expression)
+	 * @param newChar replacement characters
+	 * @param cleanNullValues clean 'null' values?
+	 * @param mapCountry map countries to ISO codes?
+	 * @param countryFieldNames source (reader) field names holding countries
+	 * @param defaultIso default ISO code for unknown countries
+	 * @param isoLookup country ISO code lookup
+	 * @throws java.util.regex.PatternSyntaxException if the characters to replace are an invalid regular expression
+	 */
+	public ValueNormalizer(boolean replace, String oldChar, String newChar, boolean cleanNullValues,
+			boolean mapCountry, Collection<String> countryFieldNames, String defaultIso, CountryIsoLookup isoLookup) {
+		this.replace = replace && oldChar != null && oldChar.length() > 0;
+		this.oldD = oldChar;
+		this.newD = newChar == null ? "" : newChar;
+		this.oldPattern = this.replace && (hasMetaChars(this.oldD, REGEX_META_CHARS) || hasMetaChars(this.newD, REPLACEMENT_META_CHARS))
+				? Pattern.compile(this.oldD)
+				: null;
+		this.replaceSingleChar = this.replace && this.oldPattern == null && this.oldD.length() == 1 && this.newD.length() == 1;
+		this.cleanNullValues = cleanNullValues;
+		this.mapCountry = mapCountry;
+		this.countryFieldNames = countryFieldNames == null
+				? Collections.<String>emptySet()
+				: Collections.unmodifiableSet(new HashSet<String>(countryFieldNames));
+		this.defaultIso = (defaultIso == null ? Constants.DEFAULT_ISO : defaultIso).toUpperCase();
+		this.isoLookup = isoLookup;
+		this.countryFields = null;
+	}
+
+	/**
+	 * Compiling constructor.
+	 *
+	 * @param source normalizer
+	 * @param fields source (reader) fields in record order
+	 */
+	private ValueNormalizer(ValueNormalizer source, String fields[]) {
+		this.replace = source.replace;
+		this.oldD = source.oldD;
+		this.newD = source.newD;
+		this.replaceSingleChar = source.replaceSingleChar;
+		this.oldPattern = source.oldPattern;
+		this.cleanNullValues = source.cleanNullValues;
+		this.mapCountry = source.mapCountry;
+		this.countryFieldNames = source.countryFieldNames;
+		this.defaultIso = source.defaultIso;
+		this.isoLookup = source.isoLookup;
+		this.countryFields = new boolean[fields.length];
+		if (mapCountry) {
+			for (int i = 0; i < fields.length; i++)
+				countryFields[i] = countryFieldNames.contains(fields[i]);
+		}
+	}
+
+	/**
+	 * Create a value normalizer from the configuration. The settings
+	 * of an ifaceX {@link Configuration} are used; other IPCs (e.g.
+	 * test stubs) fall back to the normalization settings of {@link IPC}.
+	 *
+	 * @param config IPC
+	 * @return value normalizer
+	 */
+	public static ValueNormalizer of(IPC config) {
+		if (config instanceof Configuration) {
+			final Configuration cfg = (Configuration) config;
+			return new ValueNormalizer(
+					cfg.replaceChar(),
+					cfg.getOldChar(),
+					cfg.getNewChar(),
+					cfg.cleanNullValues(),
+					cfg.map2ISOCodes(),
+					cfg.getSourceCountryFieldsList(),
+					cfg.getMapDefaultIso());
+		}
+		return new ValueNormalizer(
+				config.replaceChar(),
+				config.getOldChar(),
+				config.getNewChar(),
+				config.cleanNullValues(),
+				config.map2ISOCodes(),
+				config.getSourceCountryFieldsList(),
+				config.getMapDefaultIso());
+	}
+
+	/**
+	 * Compile this normalizer for the source fields of a source entity.
+	 *
+	 * @param entity source entity
+	 * @return compiled normalizer
+	 */
+	public ValueNormalizer compile(SourceEntity entity) {
+		return compile(entity.getSourceFields());
+	}
+
+	/**
+	 * Compile this normalizer for the given source fields, so
+	 * values can be normalized by field index.
+	 *
+	 * @param fields source (reader) fields in record order
+	 * @return compiled normalizer
+	 */
+	public ValueNormalizer compile(String fields[]) {
+		return new ValueNormalizer(this, fields);
+	}
+
+	/**
+	 * Is this normalizer compiled for field indexes?
+	 *
+	 * @return true if so
+	 */
+	public boolean isCompiled() {
+		return countryFields != null;
+	}
+
+	/**
+	 * Normalize a value by field name.
+	 *
+	 * @param val value
+	 * @param fieldName source (reader) field name
+	 * @return normalized value, never null
+	 */
+	public String normalize(String val, String fieldName) {
+		return normalize(val, mapCountry && countryFieldNames.contains(fieldName));
+	}
+
+	/**
+	 * Normalize a value by field index; only for
+	 * compiled normalizers.
+	 *
+	 * @param val value
+	 * @param fieldIndex source (reader) field index
+	 * @return normalized value, never null
+	 * @throws IllegalStateException if this normalizer isn't compiled
+	 */
+	public String normalize(String val, int fieldIndex) {
+		if (countryFields == null)
+			throw new IllegalStateException("Value normalizer isn't compiled for field indexes!");
+		return normalize(val, mapCountry && fieldIndex < countryFields.length && countryFields[fieldIndex]);
+	}
+
+	/**
+	 * Normalize all values of a record in place; only
+	 * for compiled normalizers.
+	 *
+	 * @param values record values in source field order
+	 * @throws IllegalStateException if this normalizer isn't compiled
+	 */
+	public void normalize(String values[]) {
+		for (int i = 0; i < values.length; i++)
+			values[i] = normalize(values[i], i);
+	}
+
+	private String normalize(String val, boolean countryField) {
+		if (val == null)
+			return "";
+		// no copy if there's nothing to trim
+		val = val.trim();
+		// 'null' string values are just futile, always, fight me!
+		if (cleanNullValues && val.length() == 4 && val.equalsIgnoreCase("null"))
+			return "";
+		// replace char ?
+		if (replace) {
+			if (replaceSingleChar)
+				val = val.replace(oldD.charAt(0), newD.charAt(0));
+			else if (val.indexOf(oldD) != -1)
+				val = oldPattern == null ? val.replace(oldD, newD) : oldPattern.matcher(val).replaceAll(newD);
+		}
+		if (countryField) {
+			final String iso = isoLookup.lookup(val);
+			val = iso != null ? iso : defaultIso;
+		}
+		return val;
+	}
+
+	private static boolean hasMetaChars(String chars, String metaChars) {
+		for (int i = 0; i < chars.length(); i++) {
+			if (metaChars.indexOf(chars.charAt(i)) != -1)
+				return true;
+		}
+		return false;
+	}
+
+}
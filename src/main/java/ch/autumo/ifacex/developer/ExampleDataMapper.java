@@ -1,11 +1,10 @@
 package ch.autumo.ifacex.developer;
 
-import java.util.List;
-
-import ch.autumo.ifacex.DataMapper;
 import ch.autumo.ifacex.FieldMapping;
 import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.MapResult;
 import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.StatelessDataMapper;
 
 /**
  * 
@@ -62,38 +61,31 @@ import ch.autumo.ifacex.SourceEntity;
  * The above mapping is usually done with the 'ifaceX Studio' GUI, where
  * association can be comfortably be made by Drag'n'Drop.  
  * 
+ * This mapper is stateless: The value and the decision if parsing should
+ * continue are returned together, hence one instance can be used by
+ * parallel writer threads.
+ * 
  */
-public class ExampleDataMapper implements DataMapper {
+public class ExampleDataMapper implements StatelessDataMapper {
 
-	/**
-	 * A boolean that indicates, if parsing should continue is always needed.
-	 * The mapper should called every output field mapping, until we have the
-	 * output field mapping that needs special logic.
-	 */
-	boolean parseFurther = true;
-	
 	@Override
-	public String parseCustomized(FieldMapping mapping, String[] sourceValues, SourceEntity sourceEntity) throws IfaceXException {
+	public MapResult map(FieldMapping mapping, String[] sourceValues, SourceEntity sourceEntity) throws IfaceXException {
 		
 		String valueResult = null;
 			
 		// Get current destination mapping
 		final String destField = mapping.getDestField();
-		List<String> sfields = null;
 
 		// If destination filed 'contact_person' is processed...
 		// (Note: above we assign '*'; could be anything and will
 		//  be ignored; the value is set here!)
 		if (destField.equals("contact_person")) {
 			
-			// Get all selected source fields from the source entity;
-			// they have been selected by a reader
-			sfields = sourceEntity.getSourceFieldsList();
-			
 			// Manual mapping of source field 'properties.segment'
-			// 1. Get the index of the source field name (header index)
+			// 1. Get the index of the source field name (header index);
+			//    a hashed lookup, see also 'SourceEntity.handle'
 			// 2. Get the source value with the field name index
-			final int idx = sfields.indexOf("properties.segment");
+			final int idx = sourceEntity.indexOfSourceField("properties.segment");
 			final String segment = sourceValues[idx].trim().toLowerCase();
 			
 			// Decide what to do depending on the value of the source field
@@ -102,55 +94,42 @@ public class ExampleDataMapper implements DataMapper {
 				valueResult = "";
 			} else {
 				// In this case map the 'first_name' and 'last_name' together as one string to the output field 'contact_person'
-				valueResult = sourceValues[sfields.indexOf("properties.first_name")] + " " + sourceValues[sfields.indexOf("properties_lastname")];
+				valueResult = sourceValues[sourceEntity.indexOfSourceField("properties.first_name")] + " " + sourceValues[sourceEntity.indexOfSourceField("properties_lastname")];
 			}
 
 			// work is done, we don't need to consume further destination
 			// mapping fields, to map something
-			parseFurther = false; 
+			return MapResult.of(valueResult); 
 			
 			// If destination filed 'name' is processed...
 		} else if (destField.equals("name")) {
 			
-			// Get all selected source fields from the source entity;
-			// they have been selected by a reader
-			sfields = sourceEntity.getSourceFieldsList();
-
 			// Manual mapping of source field 'properties.segment'
-			// 1. Get the index of the source field name (header index)
+			// 1. Get the index of the source field name (header index);
+			//    a hashed lookup, see also 'SourceEntity.handle'
 			// 2. Get the source value with the field name index
-			final int idx = sfields.indexOf("properties.segment");
+			final int idx = sourceEntity.indexOfSourceField("properties.segment");
 			final String segment = sourceValues[idx].trim().toLowerCase();
 			
 			// Decide what to do depending on the value of the source field
 			if (segment.equals("PrivateCustomer")) {
 				// In this case map the 'first_name' and 'last_name' together as one string to the output field 'contact_person'
-				valueResult = sourceValues[sfields.indexOf("properties.firstname")] + " " + sourceValues[sfields.indexOf("properties.lastname")];
+				valueResult = sourceValues[sourceEntity.indexOfSourceField("properties.firstname")] + " " + sourceValues[sourceEntity.indexOfSourceField("properties.lastname")];
 			} else {
 				// In this case map the 'company' the output field 'name'
-				valueResult = sourceValues[sfields.indexOf("properties.company")];
+				valueResult = sourceValues[sourceEntity.indexOfSourceField("properties.company")];
 			}
 			
 			// Work is done, we don't need to consume further destination
 			// mapping fields, to map something
-			parseFurther = false; 
-			
-		} else {
-			
-			// Not the right destination mapping yet; process further
-			parseFurther = true; 
+			return MapResult.of(valueResult); 
 			
 		}
 		
-		return valueResult;
+		// Not the right destination mapping yet; process further.
+		// Tell the parser that it should parse further; this is
+		// a performance-related feature and always should be done
+		return MapResult.NOT_MAPPED;
 	}
 
-	@Override
-	public boolean parseFurther() {
-		// Tell the parser if it should parse further or not;
-		// This is a performance-related feature and always
-		// should be done
-		return parseFurther;
-	}	
-
 }
@@ -0,0 +1,64 @@
+package ch.autumo.ifacex.developer;
+
+import ch.autumo.ifacex.FieldHandle;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.PreparedDataMapper;
+import ch.autumo.ifacex.SourceEntity;
+
+/**
+ * 
+ * Same mapping as {@link ExampleDataMapper}, but prepared once per
+ * source entity: Source fields are resolved to handles and the
+ * destination fields 'contact_person' and 'name' to ids, hence
+ * mapping a record is only a few index accesses.
+ * 
+ * Configuration in the IPC (*.ifacex) is the same:
+ * 
+ *   db_out_contacts_data_mapper_class=ch.autumo.ifacex.developer.ExamplePreparedDataMapper
+ *   
+ * See {@link ExampleDataMapper} for the whole example mapping.
+ * 
+ */
+public class ExamplePreparedDataMapper extends PreparedDataMapper {
+
+	@Override
+	protected EntityMapping prepare(SourceEntity entity, DestinationFields destFields) throws IfaceXException {
+		
+		// Destination fields this mapper maps; all other
+		// destination fields are parsed by the standard mapping
+		final int contactPerson = destFields.register("contact_person");
+		final int name = destFields.register("name");
+		
+		// Source fields needed; resolved once per entity
+		final FieldHandle segment = entity.handle("properties.segment");
+		final FieldHandle firstName = entity.handle("properties.first_name");
+		final FieldHandle lastName = entity.handle("properties.last_name");
+		final FieldHandle company = entity.handle("properties.company");
+		
+		if (!segment.isPresent())
+			throw new IfaceXException("Source entity '" + entity + "' has no field 'properties.segment'!");
+		
+		// Called per destination field and record; must be thread-safe
+		return (destField, values) -> {
+			
+			// null for short records or null values
+			final String segmentValue = segment.get(values);
+			final boolean privateCustomer = segmentValue != null && segmentValue.trim().equalsIgnoreCase("PrivateCustomer");
+			
+			if (destField == contactPerson) {
+				// Private customers have no contact person, otherwise
+				// map the 'first_name' and 'last_name' together
+				return privateCustomer ? "" : firstName.get(values) + " " + lastName.get(values);
+				
+			} else if (destField == name) {
+				// Private customers are named by 'first_name' and 'last_name',
+				// otherwise the 'company' is the name
+				return privateCustomer ? firstName.get(values) + " " + lastName.get(values) : company.get(values);
+			}
+			
+			// Not mapped by this mapper
+			return null;
+		};
+	}
+	
+}
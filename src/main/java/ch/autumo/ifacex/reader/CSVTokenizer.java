@@ -0,0 +1,332 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.reader;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import ch.autumo.ifacex.IPC;
+
+
+/**
+ * CSV tokenizer: Splits a line into fields by the configured
+ * delimiter and enclosure ('value_delimiter' and 'value_enclosure'
+ * in 'cfg/ifacex.cfg'), same as {@link IPC#getCSVSepValues(String)},
+ * but into reusable {@link FieldSlices} without copying any value.
+ * 
+ * Lines can be tokenized from any char sequence (e.g. a String or a
+ * {@link CharBuffer}), from a char array or directly from bytes, e.g. a read buffer of
+ * a file; byte lines must be in an ASCII-compatible encoding such as
+ * UTF-8 or ISO-8859-1. Bytes are scanned for the delimiter 8 bytes at
+ * a time, so plain fields cost about one comparison per 8 bytes.
+ * 
+ * Enclosures are recognized at the beginning of a field; double
+ * enclosures within an enclosed field are an escaped enclosure. 
+ * Values aren't trimmed. A line must not contain the line terminator;
+ * enclosed line breaks aren't supported.
+ * 
+ * A tokenizer is immutable and can be shared between threads.
+ */
+public final class CSVTokenizer {
+
+	/**
+	 * No enclosure character.
+	 */
+	public static final char NO_ENCLOSURE = 0;
+	
+	private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGHS = 0x8080808080808080L;
+	
+	private final char delimiter;
+	private final char enclosure;
+	
+	// byte patterns for the word-at-a-time scan
+	private final long delimiterPattern;
+	private final long enclosurePattern;
+	
+	
+	/**
+	 * Create a CSV tokenizer.
+	 * 
+	 * @param delimiter delimiter character
+	 * @param enclosure enclosure character or {@link #NO_ENCLOSURE}
+	 */
+	public CSVTokenizer(char delimiter, char enclosure) {
+		if (delimiter == enclosure)
+			throw new IllegalArgumentException("Delimiter and enclosure must not be the same character!");
+		this.delimiter = delimiter;
+		this.enclosure = enclosure;
+		this.delimiterPattern = ONES * (delimiter & 0xFF);
+		this.enclosurePattern = ONES * (enclosure & 0xFF);
+	}
+	
+	/**
+	 * Create a CSV tokenizer from the configuration.
+	 * 
+	 * @param config IPC
+	 * @return CSV tokenizer
+	 * @throws IllegalArgumentException if the configured delimiter or
+	 * 		enclosure isn't a single character
+	 */
+	public static CSVTokenizer of(IPC config) {
+		final String delim = config.getCSVDelimiterChar();
+		final String encl = config.getCSVEnclosureChar();
+		if (delim == null || delim.length() != 1)
+			throw new IllegalArgumentException("CSV delimiter '" + delim + "' isn't a single character!");
+		if (encl != null && encl.length() > 1)
+			throw new IllegalArgumentException("CSV enclosure '" + encl + "' isn't a single character!");
+		return new CSVTokenizer(delim.charAt(0), encl == null || encl.length() == 0 ? NO_ENCLOSURE : encl.charAt(0));
+	}
+	
+	/**
+	 * Delimiter character.
+	 * 
+	 * @return delimiter character
+	 */
+	public char getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * Enclosure character.
+	 * 
+	 * @return enclosure character or {@link #NO_ENCLOSURE}
+	 */
+	public char getEnclosure() {
+		return enclosure;
+	}
+	
+	/**
+	 * Tokenize a line.
+	 * 
+	 * @param line line without line terminator
+	 * @param fields field slices to fill; indexes refer to the line
+	 * @return amount of fields
+	 */
+	public int tokenize(CharSequence line, FieldSlices fields) {
+		fields.reset(line, enclosure);
+		return tokenize(CHAR_SEQUENCE, line, 0, line.length(), fields);
+	}
+	
+	/**
+	 * Tokenize a line from a char array.
+	 * 
+	 * @param line char array
+	 * @param offset start of the line
+	 * @param length length of the line without line terminator
+	 * @param fields field slices to fill; indexes refer to the char array
+	 * @return amount of fields
+	 */
+	public int tokenize(char line[], int offset, int length, FieldSlices fields) {
+		fields.reset(line, enclosure);
+		return tokenize(CHAR_ARRAY, line, offset, offset + length, fields);
+	}
+	
+	/**
+	 * Tokenize a UTF-8 line from a byte array.
+	 * 
+	 * @param line byte array
+	 * @param offset start of the line
+	 * @param length length of the line without line terminator
+	 * @param fields field slices to fill; indexes refer to the byte array
+	 * @return amount of fields
+	 */
+	public int tokenize(byte line[], int offset, int length, FieldSlices fields) {
+		return tokenize(line, offset, length, StandardCharsets.UTF_8, fields);
+	}
+	
+	/**
+	 * Tokenize a line from a byte array.
+	 * 
+	 * @param line byte array
+	 * @param offset start of the line
+	 * @param length length of the line without line terminator
+	 * @param charset ASCII-compatible charset of the line, e.g. UTF-8
+	 * @param fields field slices to fill; indexes refer to the byte array
+	 * @return amount of fields
+	 * @throws IllegalStateException if delimiter or enclosure aren't ASCII characters
+	 */
+	public int tokenize(byte line[], int offset, int length, Charset charset, FieldSlices fields) {
+		if (delimiter >= 0x80 || enclosure >= 0x80)
+			throw new IllegalStateException("Bytes can only be tokenized with ASCII delimiter and enclosure characters!");
+		fields.reset(line, charset, enclosure);
+		return tokenize(BYTE_ARRAY, line, offset, offset + length, fields);
+	}
+	
+	/**
+	 * Split a line into fields; the same for all input types,
+	 * only the scan primitives differ.
+	 * 
+	 * @param input scan primitives of the input type
+	 * @param line line
+	 * @param pos start of the line
+	 * @param n end of the line (exclusive)
+	 * @param fields field slices to fill
+	 * @return amount of fields
+	 */
+	private <L> int tokenize(Input<L> input, L line, int pos, int n, FieldSlices fields) {
+		while (true) {
+			if (enclosure != NO_ENCLOSURE && pos < n && input.charAt(line, pos) == enclosure) {
+				final int start = pos + 1;
+				boolean escaped = false;
+				int close = start;
+				while (true) {
+					close = input.indexOf(this, line, false, close, n);
+					if (close < 0 || close + 1 >= n || input.charAt(line, close + 1) != enclosure)
+						break;
+					escaped = true;
+					close += 2;
+				}
+				if (close < 0) {
+					// not closed: rest of the line
+					fields.add(escaped ? pos : start, n, escaped ? FieldSlices.ESCAPED : FieldSlices.PLAIN);
+					return fields.size();
+				}
+				int next = close + 1;
+				if (next == n || input.charAt(line, next) == delimiter) {
+					if (escaped)
+						fields.add(pos, next, FieldSlices.ESCAPED);
+					else
+						fields.add(start, close, FieldSlices.PLAIN);
+				} else {
+					// characters after the closing enclosure are kept
+					next = input.indexOf(this, line, true, next, n);
+					if (next < 0)
+						next = n;
+					fields.add(pos, next, FieldSlices.ESCAPED);
+				}
+				if (next == n)
+					return fields.size();
+				pos = next + 1;
+			} else {
+				final int d = input.indexOf(this, line, true, pos, n);
+				if (d < 0) {
+					fields.add(pos, n, FieldSlices.PLAIN);
+					return fields.size();
+				}
+				fields.add(pos, d, FieldSlices.PLAIN);
+				pos = d + 1;
+			}
+		}
+	}
+	
+	/**
+	 * Scan primitives of an input type.
+	 */
+	private interface Input<L> {
+		
+		/**
+		 * Character at a position; bytes are returned unsigned.
+		 */
+		char charAt(L line, int i);
+		
+		/**
+		 * Find the delimiter or the enclosure of the tokenizer.
+		 */
+		int indexOf(CSVTokenizer tokenizer, L line, boolean delimiter, int from, int to);
+	}
+	
+	private static final Input<CharSequence> CHAR_SEQUENCE = new Input<CharSequence>() {
+		@Override
+		public char charAt(CharSequence line, int i) {
+			return line.charAt(i);
+		}
+		@Override
+		public int indexOf(CSVTokenizer tokenizer, CharSequence line, boolean delimiter, int from, int to) {
+			return CSVTokenizer.indexOf(line, delimiter ? tokenizer.delimiter : tokenizer.enclosure, from, to);
+		}
+	};
+	
+	private static final Input<char[]> CHAR_ARRAY = new Input<char[]>() {
+		@Override
+		public char charAt(char line[], int i) {
+			return line[i];
+		}
+		@Override
+		public int indexOf(CSVTokenizer tokenizer, char line[], boolean delimiter, int from, int to) {
+			return CSVTokenizer.indexOf(line, delimiter ? tokenizer.delimiter : tokenizer.enclosure, from, to);
+		}
+	};
+	
+	private static final Input<byte[]> BYTE_ARRAY = new Input<byte[]>() {
+		@Override
+		public char charAt(byte line[], int i) {
+			// non-ASCII bytes never match the ASCII delimiter or enclosure
+			return (char) (line[i] & 0xFF);
+		}
+		@Override
+		public int indexOf(CSVTokenizer tokenizer, byte line[], boolean delimiter, int from, int to) {
+			return delimiter
+					? CSVTokenizer.indexOf(line, from, to, tokenizer.delimiterPattern, (byte) tokenizer.delimiter)
+					: CSVTokenizer.indexOf(line, from, to, tokenizer.enclosurePattern, (byte) tokenizer.enclosure);
+		}
+	};
+	
+	private static int indexOf(CharSequence line, char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (line.charAt(i) == c)
+				return i;
+		}
+		return -1;
+	}
+
+	private static int indexOf(char line[], char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (line[i] == c)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Find a byte, e.g. a line feed, 8 bytes at a time.
+	 * 
+	 * @param bytes bytes
+	 * @param from start index (inclusive)
+	 * @param to end index (exclusive)
+	 * @param b byte to find
+	 * @return index of the byte or -1
+	 */
+	static int indexOf(byte bytes[], int from, int to, byte b) {
+		return indexOf(bytes, from, to, ONES * (b & 0xFF), b);
+	}
+	
+	/**
+	 * Find a byte, 8 bytes at a time: A byte of the word XOR the pattern
+	 * is zero where the byte matches; the lowest zero byte is found with
+	 * the high bits of '(x - 0x01..) & ~x'.
+	 */
+	private static int indexOf(byte line[], int from, int to, long pattern, byte b) {
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			final long x = (long) LONG_LE.get(line, i) ^ pattern;
+			final long found = (x - ONES) & ~x & HIGHS;
+			if (found != 0)
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+		}
+		for (; i < to; i++) {
+			if (line[i] == b)
+				return i;
+		}
+		return -1;
+	}
+	
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.reader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import ch.autumo.ifacex.ExclusionFilter;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.batch.ValueNormalizer;
+
+
+/**
+ * Parses the CSV lines of a line-aligned chunk into records:
+ * Tokenize, normalize and filter every line.
+ * 
+ * Lines aren't tokenized from the mapped chunk itself: its bytes are
+ * copied block by block (256 KB, grown for longer lines) with one
+ * bulk get into a reusable heap buffer, where lines are found and
+ * tokenized in place by the byte array scanner of the
+ * {@link CSVTokenizer}. Empty lines are skipped, a carriage return
+ * before a line feed is removed.
+ * 
+ * A parser isn't thread-safe; use one per thread.
+ */
+final class ChunkParser {
+
+	/**
+	 * Receives the parsed records.
+	 */
+	@FunctionalInterface
+	interface RecordSink {
+
+		/**
+		 * Add a record.
+		 * 
+		 * @param values normalized record values
+		 * @throws IfaceXException
+		 */
+		void add(String values[]) throws IfaceXException;
+	}
+	
+	private static final int BLOCK_SIZE = 256 * 1024;
+	
+	private final CSVTokenizer tokenizer;
+	private final Charset charset;
+	private final ValueNormalizer normalizer;
+	private final ExclusionFilter filter;
+	private final String fields[];
+	
+	private final FieldSlices slices = new FieldSlices();
+	private byte block[] = new byte[BLOCK_SIZE];
+	
+	
+	/**
+	 * Create a chunk parser.
+	 * 
+	 * @param tokenizer CSV tokenizer
+	 * @param charset ASCII-compatible charset of the file
+	 * @param normalizer value normalizer compiled for the fields
+	 * @param filter exclusion filter or null
+	 * @param fields field names for the exclusion filter
+	 */
+	ChunkParser(CSVTokenizer tokenizer, Charset charset, ValueNormalizer normalizer, ExclusionFilter filter, String fields[]) {
+		this.tokenizer = tokenizer;
+		this.charset = charset;
+		this.normalizer = normalizer;
+		this.filter = filter;
+		this.fields = fields;
+	}
+	
+	/**
+	 * Parse all lines of a chunk.
+	 * 
+	 * @param chunk line-aligned chunk; consumed
+	 * @param sink record sink
+	 * @throws IfaceXException
+	 */
+	void parse(ByteBuffer chunk, RecordSink sink) throws IfaceXException {
+		int carry = 0;
+		while (chunk.hasRemaining()) {
+			if (carry == block.length) {
+				// a line longer than the block
+				final byte bigger[] = new byte[block.length << 1];
+				System.arraycopy(block, 0, bigger, 0, carry);
+				block = bigger;
+			}
+			final int n = Math.min(block.length - carry, chunk.remaining());
+			chunk.get(block, carry, n);
+			final int len = carry + n;
+			final boolean end = !chunk.hasRemaining();
+			int pos = 0;
+			while (true) {
+				final int lf = CSVTokenizer.indexOf(block, pos, len, (byte) '\n');
+				if (lf < 0) {
+					if (end && pos < len) {
+						line(pos, len, sink);
+						pos = len;
+					}
+					break;
+				}
+				line(pos, lf, sink);
+				pos = lf + 1;
+			}
+			carry = len - pos;
+			System.arraycopy(block, pos, block, 0, carry);
+		}
+	}
+
+	private void line(int start, int end, RecordSink sink) throws IfaceXException {
+		if (end > start && block[end - 1] == '\r')
+			end--;
+		if (end == start)
+			return;
+		tokenizer.tokenize(block, start, end - start, charset, slices);
+		final String values[] = slices.toArray();
+		normalizer.normalize(values);
+		if (filter == null || filter.addRecord(fields, values))
+			sink.add(values);
+	}
+	
+}
@@ -21,9 +21,17 @@ import ch.autumo.ifacex.Processor;
 import ch.autumo.ifacex.SourceEntity;
 import ch.autumo.ifacex.batch.BatchData;
 import ch.autumo.ifacex.batch.BatchProcessor;
+import ch.autumo.ifacex.batch.FilteringBatchProcessor;
+import ch.autumo.ifacex.batch.ValueNormalizer;
 
 /**
  * EXAMPLE reader.
+ * 
+ * Lines are split with the CSV tokenizer of the configuration, which
+ * only supports single-character delimiters and enclosures; with a
+ * multi-character delimiter or enclosure, initialization fails with
+ * an IllegalArgumentException. Use 'config.getCSVSepValues(record)'
+ * instead of the tokenizer in that case.
  */
 public class ExampleReader implements Reader {
 	
@@ -33,6 +41,11 @@ public class ExampleReader implements Reader {
 	private String fields[] = null;
 	
 	private ExclusionFilter exFilter = null;
+	
+	private ValueNormalizer normalizer = null;
+
+	private CSVTokenizer tokenizer = null;
+	private final FieldSlices slices = new FieldSlices();
 
 	
 	@Override
@@ -45,6 +58,10 @@ public class ExampleReader implements Reader {
 		//config.getWriterConfig().getXYZ();
 		
 		batchSize = config.getGeneralBatchSize();		
+		
+		// CSV tokenizer for configured delimiter and enclosure; throws an
+		// IllegalArgumentException if they aren't single characters
+		tokenizer = config.getCSVTokenizer();
 	}
 
 	@Override
@@ -66,7 +83,10 @@ public class ExampleReader implements Reader {
 			i++;
 		}
 		
-		exFilter = config.getReaderConfig().getExclusionFilter(entity);
+		exFilter = config.getReaderConfig().getCompiledExclusionFilter(entity);
+		
+		// compile value modifications once per entity
+		normalizer = ValueNormalizer.of(config).compile(fields != null ? fields : entity.getSourceFields());
 	}
 
 	@Override
@@ -80,6 +100,9 @@ public class ExampleReader implements Reader {
 		
 		String record = null;
 		
+		// SHOULD: Apply the configured batch exclusion filter to every batch, if any
+		final BatchProcessor processor = FilteringBatchProcessor.of(batchProcessor, config, entity);
+		
 		// at start we have more data
 		boolean hasMoreData = true;
 
@@ -98,17 +121,18 @@ public class ExampleReader implements Reader {
 				// check record
 				if (record != null) {
 					
-					// we still have data to process
-					String values[] = config.getCSVSepValues(record);
-					
-					// MUST: make modifications based on configuration, must be called in every reader !
-					for (int j = 0; j < values.length; j++) {
-						values[i] = batch.modifyValueBeforeAdding(values[i], fields[i]);
-					}
+					// we still have data to process; tokenize the line into the reused
+					// field slices (same as 'config.getCSVSepValues(record)')
+					final int size = tokenizer.tokenize(record, slices);
+					final String values[] = new String[size];
+					for (int j = 0; j < size; j++)
+						// MUST: make modifications based on configuration, must be called in every reader !
+						// (same as 'batch.modifyValueBeforeAdding(value, fields[j])' for every value)
+						values[j] = normalizer.normalize(slices.get(j), j);
 					
 					// SHOULD: Call configured exclusion filter, if you want to filter data based on
 					// exclusion filters
-					if (exFilter != null && exFilter.addRecord(fields, values))
+					if (exFilter == null || exFilter.addRecord(fields, values))
 						// MUST: Must be called always! With or without exclusion filters!
 						batch.addRecordValues(values);
 					
@@ -119,7 +143,7 @@ public class ExampleReader implements Reader {
 				}
 			}
 			// process batch
-			batchProcessor.processBatchData(batch, entity, hasMoreData || hasMoreEntities);
+			processor.processBatchData(batch, entity, hasMoreData || hasMoreEntities);
 		}
 	}
 
@@ -0,0 +1,296 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.reader;
+
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Fields of one tokenized CSV line, see {@link CSVTokenizer}.
+ * 
+ * The fields are slices (start/end) of the tokenized line; no value
+ * is copied until it is requested with {@link #get(int)}. An instance
+ * is reused for every line, so tokenizing doesn't allocate anything
+ * once the capacity fits the amount of fields. An instance isn't
+ * thread-safe; use one per reader thread.
+ * 
+ * The slices are only valid until the next line is tokenized, and
+ * as long as the tokenized line (chars or bytes) isn't modified.
+ */
+public final class FieldSlices {
+
+	/** Plain value: the slice is the value. */
+	static final byte PLAIN = 0;
+	
+	/** Raw value with enclosures that must be decoded. */
+	static final byte ESCAPED = 1;
+	
+	private CharSequence chars = null;
+	private char charArray[] = null;
+	private byte bytes[] = null;
+	private Charset charset = StandardCharsets.UTF_8;
+	private char enclosure = CSVTokenizer.NO_ENCLOSURE;
+	
+	private int starts[];
+	private int ends[];
+	private byte kinds[];
+	private int size = 0;
+	
+	
+	/**
+	 * Create field slices.
+	 */
+	public FieldSlices() {
+		this(16);
+	}
+
+	/**
+	 * Create field slices.
+	 * 
+	 * @param capacity initial capacity (fields)
+	 */
+	public FieldSlices(int capacity) {
+		capacity = Math.max(1, capacity);
+		this.starts = new int[capacity];
+		this.ends = new int[capacity];
+		this.kinds = new byte[capacity];
+	}
+	
+	void reset(CharSequence line, char enclosure) {
+		this.chars = line;
+		this.charArray = null;
+		this.bytes = null;
+		this.enclosure = enclosure;
+		this.size = 0;
+	}
+
+	void reset(char line[], char enclosure) {
+		this.chars = null;
+		this.charArray = line;
+		this.bytes = null;
+		this.enclosure = enclosure;
+		this.size = 0;
+	}
+
+	void reset(byte line[], Charset charset, char enclosure) {
+		this.chars = null;
+		this.charArray = null;
+		this.bytes = line;
+		this.charset = charset;
+		this.enclosure = enclosure;
+		this.size = 0;
+	}
+	
+	void add(int start, int end, byte kind) {
+		if (size == starts.length) {
+			final int capacity = size << 1;
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			kinds = Arrays.copyOf(kinds, capacity);
+		}
+		starts[size] = start;
+		ends[size] = end;
+		kinds[size] = kind;
+		size++;
+	}
+	
+	/**
+	 * Amount of fields.
+	 * 
+	 * @return amount of fields
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Start index of a field within the tokenized line or buffer.
+	 * 
+	 * @param field field index
+	 * @return start index (inclusive)
+	 */
+	public int start(int field) {
+		check(field);
+		return starts[field];
+	}
+
+	/**
+	 * End index of a field within the tokenized line or buffer.
+	 * 
+	 * @param field field index
+	 * @return end index (exclusive)
+	 */
+	public int end(int field) {
+		check(field);
+		return ends[field];
+	}
+	
+	/**
+	 * Is the slice of a field the raw value with enclosures (escaped
+	 * enclosures within the value)? Such a value is decoded
+	 * by {@link #get(int)}; otherwise the slice is the value.
+	 * 
+	 * @param field field index
+	 * @return true if so
+	 */
+	public boolean isEscaped(int field) {
+		check(field);
+		return kinds[field] == ESCAPED;
+	}
+	
+	/**
+	 * Get the value of a field.
+	 * 
+	 * @param field field index
+	 * @return value
+	 */
+	public String get(int field) {
+		check(field);
+		final int start = starts[field];
+		final int end = ends[field];
+		if (kinds[field] == PLAIN) {
+			if (bytes != null)
+				return new String(bytes, start, end - start, charset);
+			if (charArray != null)
+				return new String(charArray, start, end - start);
+			return chars.subSequence(start, end).toString();
+		}
+		if (bytes != null)
+			return decode(bytes, start, end);
+		if (charArray != null)
+			return decode(CharBuffer.wrap(charArray), start, end);
+		return decode(chars, start, end);
+	}
+	
+	/**
+	 * Get all values.
+	 * 
+	 * @return values
+	 */
+	public String[] toArray() {
+		final String values[] = new String[size];
+		for (int i = 0; i < size; i++)
+			values[i] = get(i);
+		return values;
+	}
+	
+	/**
+	 * Compare the value of a field; without copying plain values.
+	 * 
+	 * @param field field index
+	 * @param value value to compare
+	 * @return true if equal
+	 */
+	public boolean contentEquals(int field, String value) {
+		check(field);
+		final int start = starts[field];
+		final int len = ends[field] - start;
+		if (kinds[field] == ESCAPED)
+			return get(field).equals(value);
+		if (charArray != null) {
+			if (len != value.length())
+				return false;
+			for (int i = 0; i < len; i++) {
+				if (charArray[start + i] != value.charAt(i))
+					return false;
+			}
+			return true;
+		}
+		if (bytes == null) {
+			if (len != value.length())
+				return false;
+			for (int i = 0; i < len; i++) {
+				if (chars.charAt(start + i) != value.charAt(i))
+					return false;
+			}
+			return true;
+		}
+		// bytes: compare directly if ASCII
+		if (len != value.length())
+			return len > value.length() && get(field).equals(value);
+		for (int i = 0; i < len; i++) {
+			final char c = value.charAt(i);
+			if (c >= 0x80)
+				return get(field).equals(value);
+			if (bytes[start + i] != (byte) c)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decode a raw value: Enclosures are removed, 
+	 * double enclosures are an escaped enclosure.
+	 */
+	private String decode(CharSequence line, int start, int end) {
+		final StringBuilder value = new StringBuilder(end - start);
+		boolean enclosed = false;
+		for (int i = start; i < end; i++) {
+			final char c = line.charAt(i);
+			if (c == enclosure) {
+				if (enclosed && i + 1 < end && line.charAt(i + 1) == enclosure) {
+					value.append(c);
+					i++;
+				} else {
+					enclosed = !enclosed;
+				}
+			} else {
+				value.append(c);
+			}
+		}
+		return value.toString();
+	}
+
+	private String decode(byte line[], int start, int end) {
+		final byte value[] = new byte[end - start];
+		final byte encl = (byte) enclosure;
+		int len = 0;
+		boolean enclosed = false;
+		for (int i = start; i < end; i++) {
+			final byte b = line[i];
+			if (b == encl) {
+				if (enclosed && i + 1 < end && line[i + 1] == encl) {
+					value[len++] = b;
+					i++;
+				} else {
+					enclosed = !enclosed;
+				}
+			} else {
+				value[len++] = b;
+			}
+		}
+		return new String(value, 0, len, charset);
+	}
+	
+	private void check(int field) {
+		if (field < 0 || field >= size)
+			throw new IndexOutOfBoundsException("Field index " + field + " out of bounds for " + size + " fields!");
+	}
+	
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(get(i));
+		}
+		return sb.append(']').toString();
+	}
+	
+}
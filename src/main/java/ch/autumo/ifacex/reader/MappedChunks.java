@@ -0,0 +1,107 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Line-aligned, memory-mapped chunks of a file.
+ * 
+ * Every chunk ends after a line feed (or at the end of the file), so
+ * chunks can be parsed independently. A chunk is grown if a single
+ * line is longer than the chunk size.
+ */
+final class MappedChunks implements Closeable {
+
+	private static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE - 8;
+	
+	private final FileChannel channel;
+	private final long size;
+	private final int chunkSize;
+	private long position;
+	
+	
+	/**
+	 * Create mapped chunks.
+	 * 
+	 * @param file file
+	 * @param start start position, e.g. after the header
+	 * @param chunkSize chunk size in bytes
+	 * @throws IOException
+	 */
+	MappedChunks(Path file, long start, int chunkSize) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.size = channel.size();
+		this.chunkSize = Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE));
+		this.position = Math.min(start, size);
+	}
+	
+	/**
+	 * Are there chunks left?
+	 * 
+	 * @return true if so
+	 */
+	boolean hasNext() {
+		return position < size;
+	}
+	
+	/**
+	 * Map the next chunk.
+	 * 
+	 * @return read-only chunk
+	 * @throws IOException
+	 */
+	ByteBuffer next() throws IOException {
+		long length = Math.min(chunkSize, size - position);
+		while (true) {
+			final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			if (position + length == size) {
+				position = size;
+				return window;
+			}
+			final int end = lastLineFeed(window);
+			if (end >= 0) {
+				window.limit(end + 1);
+				position += end + 1;
+				return window;
+			}
+			// a line longer than the chunk
+			if (length >= MAX_CHUNK_SIZE)
+				throw new IOException("Line at position " + position + " is longer than " + MAX_CHUNK_SIZE + " bytes!");
+			length = Math.min(Math.min(length << 1, MAX_CHUNK_SIZE), size - position);
+		}
+	}
+
+	private static int lastLineFeed(ByteBuffer buffer) {
+		for (int i = buffer.limit() - 1; i >= 0; i--) {
+			if (buffer.get(i) == '\n')
+				return i;
+		}
+		return -1;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+}
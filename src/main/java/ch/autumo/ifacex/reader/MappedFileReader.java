@@ -0,0 +1,260 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import ch.autumo.ifacex.ExclusionFilter;
+import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.Processor;
+import ch.autumo.ifacex.RWC;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.batch.BatchData;
+import ch.autumo.ifacex.batch.BatchProcessor;
+import ch.autumo.ifacex.batch.FilteringBatchProcessor;
+import ch.autumo.ifacex.batch.ValueNormalizer;
+
+
+/**
+ * Memory-mapped CSV file reader for large files.
+ * 
+ * The file of an entity is mapped in line-aligned chunks
+ * ('<rw-prefix>_chunk_size_mb', default: {@value #DEFAULT_CHUNK_SIZE_MB} MB)
+ * and parsed by a {@link ChunkParser}: the mapped bytes are copied in
+ * blocks into a reusable heap buffer and the lines are tokenized from
+ * that buffer with the configured delimiter and enclosure, see
+ * {@link CSVTokenizer}; no line is decoded into a string first, only
+ * the field values are.
+ * 
+ * Configuration:
+ * - '<rw-prefix>_header_size': Header lines; field names are in the last header line
+ * - '<rw-prefix>_file_extension': File extension (default: '{@value #DEFAULT_FILE_EXTENSION}')
+ * - '<rw-prefix>_from_custom_folder': 'yes' for '<folder>/<source-entity>.<extension>',
+ *   otherwise the file is '<folder>/<rw-prefix>_<source-entity>.<extension>'; 
+ *   see {@link RWC#getFileFromCustomFolder(SourceEntity, String)} and
+ *   {@link RWC#getFile(SourceEntity, String)}
+ * - '<rw-prefix>_charset': ASCII-compatible charset of the file (default: 'UTF-8')
+ * 
+ * Lines with enclosed line breaks aren't supported.
+ */
+public class MappedFileReader implements Reader {
+
+	/**
+	 * Post-fix for the file extension.
+	 */
+	public static final String KEY_FILE_EXTENSION = "_file_extension";
+	
+	/**
+	 * Default file extension.
+	 */
+	public static final String DEFAULT_FILE_EXTENSION = "csv";
+
+	/**
+	 * Post-fix for reading files from the custom folder without prefix.
+	 */
+	public static final String KEY_FROM_CUSTOM_FOLDER = "_from_custom_folder";
+	
+	/**
+	 * Post-fix for the chunk size in MB.
+	 */
+	public static final String KEY_CHUNK_SIZE_MB = "_chunk_size_mb";
+
+	/**
+	 * Default chunk size in MB.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE_MB = 64;
+	
+	/**
+	 * Post-fix for the charset of the file.
+	 */
+	public static final String KEY_CHARSET = "_charset";
+	
+	private static final byte UTF8_BOM[] = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+	
+	int batchSize = 0;
+	int chunkSize = 0;
+	Charset charset = StandardCharsets.UTF_8;
+	CSVTokenizer tokenizer = null;
+	
+	Path file = null;
+	long dataStart = 0;
+	String fields[] = null;
+	ExclusionFilter exFilter = null;
+	ValueNormalizer normalizer = null;
+	
+	
+	@Override
+	public void initialize(String readerName, IPC config, Processor processor) throws IfaceXException {
+		final RWC rwc = config.getReaderConfig();
+		batchSize = Math.max(1, config.getGeneralBatchSize());
+		final int mb = rwc.getNumber(KEY_CHUNK_SIZE_MB, DEFAULT_CHUNK_SIZE_MB);
+		chunkSize = (int) Math.min((long) Math.max(1, mb) * 1024 * 1024, Integer.MAX_VALUE - 8);
+		final String cs = rwc.getConfig(KEY_CHARSET, StandardCharsets.UTF_8.name());
+		try {
+			charset = Charset.forName(cs.trim());
+		} catch (IllegalArgumentException e) {
+			throw new ReaderException("Reader '" + readerName + "': Unknown charset '" + cs + "'!", e);
+		}
+		try {
+			tokenizer = config.getCSVTokenizer();
+		} catch (IllegalArgumentException e) {
+			throw new ReaderException("Reader '" + readerName + "': " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void initializeEntity(String readerName, IPC config, SourceEntity entity) throws IfaceXException {
+		final RWC rwc = config.getReaderConfig();
+		final String extension = rwc.getConfig(KEY_FILE_EXTENSION, DEFAULT_FILE_EXTENSION);
+		final String name = rwc.isYes(KEY_FROM_CUSTOM_FOLDER, false)
+				? rwc.getFileFromCustomFolder(entity, extension)
+				: rwc.getFile(entity, extension);
+		file = Paths.get(name);
+		if (!Files.isRegularFile(file))
+			throw new ReaderException("Reader '" + readerName + "': File '" + file + "' doesn't exist!");
+		
+		fields = null;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			readHeader(channel, rwc.getHeaderSize());
+		} catch (IOException e) {
+			throw new ReaderException("Reader '" + readerName + "': Couldn't read header of file '" + file + "'!", e);
+		}
+		if (fields == null)
+			fields = entity.getSourceFields();
+		
+		exFilter = rwc.getCompiledExclusionFilter(entity);
+		normalizer = ValueNormalizer.of(config).compile(fields);
+	}
+
+	/**
+	 * Skip the header lines and tokenize the field names of the
+	 * last header line; sets the start of the data.
+	 */
+	private void readHeader(FileChannel channel, int headerSize) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long pos = 0;
+		if (charset.equals(StandardCharsets.UTF_8)) {
+			channel.read(buffer, 0);
+			if (buffer.position() >= 3 && buffer.get(0) == UTF8_BOM[0] && buffer.get(1) == UTF8_BOM[1] && buffer.get(2) == UTF8_BOM[2])
+				pos = 3;
+		}
+		final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int lines = 0;
+		READ: while (lines < headerSize) {
+			buffer.clear();
+			final int read = channel.read(buffer, pos);
+			if (read <= 0) {
+				// header without data
+				if (line.size() > 0)
+					header(line.toByteArray());
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				final byte b = buffer.get(i);
+				pos++;
+				if (b == '\n') {
+					lines++;
+					if (lines == headerSize) {
+						header(line.toByteArray());
+						break READ;
+					}
+					line.reset();
+				} else {
+					line.write(b);
+				}
+			}
+		}
+		dataStart = pos;
+	}
+
+	private void header(byte line[]) {
+		int len = line.length;
+		if (len > 0 && line[len - 1] == '\r')
+			len--;
+		if (len == 0)
+			return;
+		final FieldSlices slices = new FieldSlices();
+		tokenizer.tokenize(line, 0, len, charset, slices);
+		fields = slices.toArray();
+		for (int i = 0; i < fields.length; i++)
+			fields[i] = fields[i].trim();
+	}
+	
+	@Override
+	public void read(String readerName, BatchProcessor batchProcessor, IPC config, SourceEntity entity,
+			boolean hasMoreEntities) throws IfaceXException {
+		
+		final ChunkParser parser = new ChunkParser(tokenizer, charset, normalizer, exFilter, fields);
+		final Batches batches = new Batches(FilteringBatchProcessor.of(batchProcessor, config, entity), config, entity);
+		try (MappedChunks chunks = new MappedChunks(file, dataStart, chunkSize)) {
+			while (chunks.hasNext())
+				parser.parse(chunks.next(), batches);
+		} catch (IOException e) {
+			throw new ReaderException("Reader '" + readerName + "': Couldn't read file '" + file + "'!", e);
+		}
+		batches.finish(hasMoreEntities);
+	}
+
+	@Override
+	public void close(String readerName) throws IfaceXException {
+		// files are closed per entity
+	}
+	
+	
+	/**
+	 * Fills batches of the configured size and processes every
+	 * full batch; the last batch is processed when finished.
+	 */
+	private final class Batches implements ChunkParser.RecordSink {
+		
+		private final BatchProcessor processor;
+		private final IPC config;
+		private final SourceEntity entity;
+		private BatchData batch;
+		
+		private Batches(BatchProcessor processor, IPC config, SourceEntity entity) {
+			this.processor = processor;
+			this.config = config;
+			this.entity = entity;
+			this.batch = new BatchData(config);
+		}
+		
+		@Override
+		public void add(String values[]) throws IfaceXException {
+			// a full batch is only processed with the next record,
+			// so the last batch is always marked as such
+			if (batch.size() == batchSize) {
+				processor.processBatchData(batch, entity, true);
+				batch = new BatchData(config);
+			}
+			batch.addRecordValues(values);
+		}
+		
+		private void finish(boolean hasMoreEntities) throws IfaceXException {
+			processor.processBatchData(batch, entity, hasMoreEntities);
+		}
+	}
+	
+}
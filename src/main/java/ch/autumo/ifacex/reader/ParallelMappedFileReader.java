@@ -0,0 +1,254 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+import ch.autumo.ifacex.CompiledExclusionFilter;
+import ch.autumo.ifacex.ExclusionFilter;
+import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.Processor;
+import ch.autumo.ifacex.RWC;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.batch.BatchData;
+import ch.autumo.ifacex.batch.BatchProcessor;
+import ch.autumo.ifacex.batch.FilteringBatchProcessor;
+
+
+/**
+ * Memory-mapped CSV file reader that parses chunks in parallel;
+ * see {@link MappedFileReader} for the file configuration.
+ * 
+ * Chunks are parsed, normalized and filtered independently on a
+ * fork-join pool ('<rw-prefix>_parallelism', default: all cores);
+ * each chunk results in its own batches. Like the sequential reader,
+ * every parser copies the mapped bytes of its chunk in blocks into its
+ * own heap buffer to tokenize them, see {@link ChunkParser}.
+ * The batches are processed in the reader thread:
+ * - In file order (default), or
+ * - in the order their chunk has been parsed ('<rw-prefix>_ordered=no'),
+ *   when the destination doesn't depend on the order of records.
+ * 
+ * Chunks in flight (parsed or waiting to be processed) are bounded,
+ * so memory stays bounded when writers are slower than the parser:
+ * - At most '<rw-prefix>_max_mb_in_flight' MB of the file (default:
+ *   {@value #DEFAULT_MAX_MB_IN_FLIGHT} MB), i.e. this amount divided
+ *   by the chunk size, at least 1 chunk, and
+ * - at most '<rw-prefix>_max_chunks_in_flight' chunks (default: twice
+ *   the parallelism).
+ * The chunk size of this reader defaults to {@value #DEFAULT_PARALLEL_CHUNK_SIZE_MB}
+ * MB ('<rw-prefix>_chunk_size_mb'), so all threads get chunks to parse.
+ * 
+ * Note that parsed records take more heap than their file bytes: Values
+ * are strings in UTF-16 with an object overhead each, so the records of
+ * the chunks in flight take roughly 2-4 times the bytes in flight, plus
+ * the batches queued by the batch processor.
+ * 
+ * The last batch of a chunk may be smaller than the batch size.
+ * Compiled exclusion filters are copied for every parser thread;
+ * any other exclusion filter of the entity must be thread-safe.
+ */
+public class ParallelMappedFileReader extends MappedFileReader {
+
+	/**
+	 * Post-fix for the amount of threads parsing chunks.
+	 */
+	public static final String KEY_PARALLELISM = "_parallelism";
+
+	/**
+	 * Post-fix for processing batches in file order ('yes' or 'no').
+	 */
+	public static final String KEY_ORDERED = "_ordered";
+
+	/**
+	 * Post-fix for the max. amount of chunks parsed or waiting.
+	 */
+	public static final String KEY_MAX_CHUNKS_IN_FLIGHT = "_max_chunks_in_flight";
+	
+	/**
+	 * Post-fix for the max. amount of file MB parsed or waiting.
+	 */
+	public static final String KEY_MAX_MB_IN_FLIGHT = "_max_mb_in_flight";
+
+	/**
+	 * Default max. amount of file MB parsed or waiting.
+	 */
+	public static final int DEFAULT_MAX_MB_IN_FLIGHT = 256;
+	
+	/**
+	 * Default chunk size in MB of this reader.
+	 */
+	public static final int DEFAULT_PARALLEL_CHUNK_SIZE_MB = 8;
+	
+	private boolean ordered = true;
+	private int maxInFlight = 0;
+	private ForkJoinPool pool = null;
+	
+	
+	@Override
+	public void initialize(String readerName, IPC config, Processor processor) throws IfaceXException {
+		super.initialize(readerName, config, processor);
+		final RWC rwc = config.getReaderConfig();
+		final int parallelism = Math.max(1, rwc.getNumber(KEY_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+		ordered = rwc.isYes(KEY_ORDERED, true);
+		final int mb = rwc.getNumber(KEY_CHUNK_SIZE_MB, DEFAULT_PARALLEL_CHUNK_SIZE_MB);
+		chunkSize = (int) Math.min((long) Math.max(1, mb) * 1024 * 1024, Integer.MAX_VALUE - 8);
+		final long maxBytes = (long) Math.max(1, rwc.getNumber(KEY_MAX_MB_IN_FLIGHT, DEFAULT_MAX_MB_IN_FLIGHT)) * 1024 * 1024;
+		final int maxChunks = Math.max(1, rwc.getNumber(KEY_MAX_CHUNKS_IN_FLIGHT, parallelism * 2));
+		maxInFlight = (int) Math.max(1, Math.min(maxChunks, maxBytes / chunkSize));
+		pool = new ForkJoinPool(parallelism, p -> {
+			final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			t.setName("ifaceX-parser-" + readerName + "-" + t.getPoolIndex());
+			return t;
+		}, null, false);
+	}
+
+	@Override
+	public void read(String readerName, BatchProcessor batchProcessor, IPC config, SourceEntity entity,
+			boolean hasMoreEntities) throws IfaceXException {
+		
+		final Emitter emitter = new Emitter(FilteringBatchProcessor.of(batchProcessor, config, entity), config, entity);
+		final ThreadLocal<ExclusionFilter> filters = ThreadLocal.withInitial(() -> exFilter instanceof CompiledExclusionFilter
+				? ((CompiledExclusionFilter) exFilter).copy()
+				: exFilter);
+		final Deque<Future<List<BatchData>>> inFlight = new ArrayDeque<Future<List<BatchData>>>();
+		final CompletionService<List<BatchData>> completion = ordered ? null : new ExecutorCompletionService<List<BatchData>>(pool);
+		try (MappedChunks chunks = new MappedChunks(file, dataStart, chunkSize)) {
+			while (chunks.hasNext()) {
+				if (inFlight.size() == maxInFlight)
+					emitter.emit(next(inFlight, completion));
+				final ByteBuffer chunk = chunks.next();
+				final Callable<List<BatchData>> task = () -> parse(chunk, config, filters.get());
+				inFlight.add(completion == null ? pool.submit(task) : completion.submit(task));
+			}
+			while (!inFlight.isEmpty())
+				emitter.emit(next(inFlight, completion));
+		} catch (IOException e) {
+			throw new ReaderException("Reader '" + readerName + "': Couldn't read file '" + file + "'!", e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IfaceXException)
+				throw (IfaceXException) cause;
+			throw new ReaderException("Reader '" + readerName + "': Parsing file '" + file + "' failed: " + cause.getMessage(), cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReaderException("Reader '" + readerName + "': Interrupted while reading file '" + file + "'!", e);
+		} finally {
+			for (Future<List<BatchData>> future : inFlight)
+				future.cancel(true);
+		}
+		emitter.finish(hasMoreEntities);
+	}
+
+	/**
+	 * Next parsed chunk; the oldest in ordered mode, otherwise
+	 * the first one completed.
+	 */
+	private static List<BatchData> next(Deque<Future<List<BatchData>>> inFlight, CompletionService<List<BatchData>> completion) 
+			throws InterruptedException, ExecutionException {
+		if (completion == null)
+			return inFlight.poll().get();
+		final Future<List<BatchData>> future = completion.take();
+		inFlight.remove(future);
+		return future.get();
+	}
+
+	private List<BatchData> parse(ByteBuffer chunk, IPC config, ExclusionFilter filter) throws IfaceXException {
+		final ChunkBatches batches = new ChunkBatches(config);
+		new ChunkParser(tokenizer, charset, normalizer, filter, fields).parse(chunk, batches);
+		return batches.finish();
+	}
+	
+	@Override
+	public void close(String readerName) throws IfaceXException {
+		if (pool != null)
+			pool.shutdownNow();
+	}
+	
+	
+	/**
+	 * Batches of one chunk.
+	 */
+	private final class ChunkBatches implements ChunkParser.RecordSink {
+
+		private final IPC config;
+		private final List<BatchData> batches = new ArrayList<BatchData>();
+		private BatchData batch;
+
+		private ChunkBatches(IPC config) {
+			this.config = config;
+			this.batch = new BatchData(config);
+		}
+		
+		@Override
+		public void add(String values[]) {
+			if (batch.size() == batchSize) {
+				batches.add(batch);
+				batch = new BatchData(config);
+			}
+			batch.addRecordValues(values);
+		}
+		
+		private List<BatchData> finish() {
+			if (batch.size() > 0)
+				batches.add(batch);
+			return batches;
+		}
+	}
+	
+	/**
+	 * Processes batches; the latest batch is held back, 
+	 * so the last batch is always marked as such.
+	 */
+	private static final class Emitter {
+		
+		private final BatchProcessor processor;
+		private final IPC config;
+		private final SourceEntity entity;
+		private BatchData pending = null;
+		
+		private Emitter(BatchProcessor processor, IPC config, SourceEntity entity) {
+			this.processor = processor;
+			this.config = config;
+			this.entity = entity;
+		}
+		
+		private void emit(List<BatchData> batches) throws IfaceXException {
+			for (BatchData batch : batches) {
+				if (pending != null)
+					processor.processBatchData(pending, entity, true);
+				pending = batch;
+			}
+		}
+
+		private void finish(boolean hasMoreEntities) throws IfaceXException {
+			processor.processBatchData(pending != null ? pending : new BatchData(config), entity, hasMoreEntities);
+		}
+	}
+	
+}
@@ -14,11 +14,13 @@
  */
 package ch.autumo.ifacex.reader;
 
+import ch.autumo.ifacex.EntityScheduler;
 import ch.autumo.ifacex.IPC;
 import ch.autumo.ifacex.IfaceXException;
 import ch.autumo.ifacex.SourceEntity;
 import ch.autumo.ifacex.batch.BatchData;
 import ch.autumo.ifacex.batch.BatchProcessor;
+import ch.autumo.ifacex.batch.ValueNormalizer;
 import ch.autumo.ifacex.generic.Generic;
 
 /**
@@ -51,11 +53,14 @@ public interface Reader extends Generic {
 	 * In order that value-altering configuration takes place, you need to call
 	 * {@link BatchData#modifyValueBeforeAdding(String, String)} for every single data 
 	 * value you add to a batch!
+	 * Alternatively, compile a {@link ValueNormalizer} once per entity and
+	 * normalize the values by field index, which is considerably faster.
 	 * 
 	 * This method is called once for every source entity, hence all data must be read
 	 * in a loop and all data batches created to process further with the batch processor.
 	 * 
-	 * Source entities are processed in the order of configuration.
+	 * Source entities are processed in the order of configuration, unless 
+	 * entities are processed concurrently; see {@link EntityScheduler}.
 	 * 
 	 * @param readerName reader name
 	 * @param batchProcessor batch processor that must process every single batch created by this reader
@@ -0,0 +1,496 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.reader.rest;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.autumo.ifacex.ExclusionFilter;
+import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.RWC;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.batch.BatchData;
+import ch.autumo.ifacex.batch.BatchProcessor;
+import ch.autumo.ifacex.batch.FilteringBatchProcessor;
+import ch.autumo.ifacex.batch.ValueNormalizer;
+import ch.autumo.ifacex.reader.ReaderException;
+
+
+/**
+ * Prefetching page fetcher for paginated REST sources.
+ *
+ * The first page is fetched alone; as soon as its pagination object tells
+ * the total amount of records ('<rw-prefix>_pagination_items_total') or the
+ * last page number ('<rw-prefix>_pagination_last_page'), the remaining pages
+ * are fetched concurrently and handed over in page order, one batch per page,
+ * so the read time approaches the time of the slowest requests rather than
+ * the sum of all requests. Without this information, pages are fetched one
+ * after the other until a page is empty or, if the source tells its page size
+ * ('<rw-prefix>_pagination_items_per_page'), has fewer records than that.
+ *
+ * Pages are requested with the page ('<rw-prefix>_param_pageName'), offset
+ * ('<rw-prefix>_param_offsetName') and fetch size ('<rw-prefix>_param_fetchSize')
+ * URL parameters, see {@link PageRequest#getParams()}; the page size is
+ * '<rw-prefix>_<source-entity-name>_fetchSize' ({@link RWC#getFetchSize(SourceEntity)}).
+ *
+ * Configuration:
+ * - '<rw-prefix>_max_concurrent_pages': Max. concurrent page requests per endpoint
+ *   ('<rw-prefix>_url'), shared by all fetchers of that endpoint with the same value fetching
+ *   at the same time (default: {@value #DEFAULT_MAX_CONCURRENT_PAGES}); 1 fetches pages one after
+ *   the other. Fetchers configured with different values, e.g. of different IPCs, have limits
+ *   of their own.
+ * - '<rw-prefix>_pagination_first_page': Number of the first page (default: 1)
+ *
+ * Fetching HTTP requests and parsing responses is up to the reader ({@link PageSource});
+ * the source must be thread-safe. At most 'max. concurrent pages' pages are fetched
+ * ahead of the page processed, so memory stays bounded.
+ *
+ * Example within {@link ch.autumo.ifacex.reader.Reader#read(String, BatchProcessor, IPC, SourceEntity, boolean)}:
+ *
+ *   PageFetcher.create(readerName, config, entity, request -> parse(get(url + "?" + request.getParams())))
+ *       .process(batchProcessor, config, entity, hasMoreEntities);
+ */
+public final class PageFetcher {
+
+	/**
+	 * Post-fix for the max. concurrent page requests per endpoint.
+	 */
+	public static final String KEY_MAX_CONCURRENT_PAGES = "_max_concurrent_pages";
+
+	/**
+	 * Default max. concurrent page requests per endpoint.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_PAGES = 4;
+
+	/**
+	 * Post-fix for the number of the first page.
+	 */
+	public static final String KEY_FIRST_PAGE = "_pagination_first_page";
+
+	/**
+	 * Unknown total amount, last page or page size.
+	 */
+	public static final long UNKNOWN = -1;
+
+	// concurrent page requests per endpoint and limit; only endpoints being fetched from are held
+	private static final Map<String, Limit> ENDPOINTS = new HashMap<String, Limit>();
+
+
+	/**
+	 * Concurrent page requests limit of an endpoint, shared by the
+	 * fetchers fetching from it with the same max. concurrent pages.
+	 */
+	private static final class Limit {
+
+		private final String key;
+		private final Semaphore permits;
+		private int fetchers = 0;
+
+		private Limit(String key, int maxConcurrentPages) {
+			this.key = key;
+			this.permits = new Semaphore(maxConcurrentPages);
+		}
+
+		private static Limit acquire(String endpoint, int maxConcurrentPages) {
+			final String key = maxConcurrentPages + "@" + endpoint;
+			synchronized (ENDPOINTS) {
+				final Limit limit = ENDPOINTS.computeIfAbsent(key, k -> new Limit(k, maxConcurrentPages));
+				limit.fetchers++;
+				return limit;
+			}
+		}
+
+		private void release() {
+			synchronized (ENDPOINTS) {
+				if (--fetchers == 0)
+					ENDPOINTS.remove(key);
+			}
+		}
+	}
+
+
+	/**
+	 * Page request.
+	 */
+	public static final class PageRequest {
+
+		private final int page;
+		private final long offset;
+		private final int size;
+		private final String params;
+
+		private PageRequest(int page, long offset, int size, String pageParam, String offsetParam, String sizeParam) {
+			this.page = page;
+			this.offset = offset;
+			this.size = size;
+			final StringBuilder sb = new StringBuilder(48);
+			param(sb, pageParam, page);
+			param(sb, offsetParam, offset);
+			param(sb, sizeParam, size);
+			this.params = sb.toString();
+		}
+
+		private static void param(StringBuilder sb, String name, long value) {
+			if (name == null || name.trim().length() == 0)
+				return;
+			if (sb.length() > 0)
+				sb.append('&');
+			sb.append(name.trim()).append('=').append(value);
+		}
+
+		/**
+		 * Page number.
+		 *
+		 * @return page number
+		 */
+		public int getPage() {
+			return page;
+		}
+
+		/**
+		 * Offset of the first record of this page.
+		 *
+		 * @return offset
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Page size.
+		 *
+		 * @return records per page
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * URL parameters for the configured page, offset and
+		 * fetch size parameter names, e.g. 'page=3&limit=100'.
+		 *
+		 * @return URL parameters; empty if no parameter names are configured
+		 */
+		public String getParams() {
+			return params;
+		}
+
+		@Override
+		public String toString() {
+			return params;
+		}
+	}
+
+	/**
+	 * Fetched page.
+	 */
+	public static final class Page {
+
+		private final List<String[]> records;
+		private final long itemsTotal;
+		private final long lastPage;
+		private final long itemsPerPage;
+
+		/**
+		 * Create a page.
+		 *
+		 * @param records records of this page in the order of the source fields
+		 * @param itemsTotal total amount of records or {@link PageFetcher#UNKNOWN}
+		 * @param lastPage last page number or {@link PageFetcher#UNKNOWN}
+		 * @param itemsPerPage records per page used by the source or {@link PageFetcher#UNKNOWN}
+		 */
+		public Page(List<String[]> records, long itemsTotal, long lastPage, long itemsPerPage) {
+			this.records = records == null ? Collections.<String[]>emptyList() : records;
+			this.itemsTotal = itemsTotal;
+			this.lastPage = lastPage;
+			this.itemsPerPage = itemsPerPage;
+		}
+
+		/**
+		 * Create a page without pagination information.
+		 *
+		 * @param records records of this page in the order of the source fields
+		 * @return page
+		 */
+		public static Page of(List<String[]> records) {
+			return new Page(records, UNKNOWN, UNKNOWN, UNKNOWN);
+		}
+
+		/**
+		 * Records of this page.
+		 *
+		 * @return records
+		 */
+		public List<String[]> getRecords() {
+			return records;
+		}
+	}
+
+	/**
+	 * Fetches and parses one page, e.g. with an HTTP GET.
+	 */
+	@FunctionalInterface
+	public interface PageSource {
+
+		/**
+		 * Fetch a page; called concurrently.
+		 *
+		 * @param request page request
+		 * @return page
+		 * @throws IfaceXException
+		 */
+		Page fetch(PageRequest request) throws IfaceXException;
+	}
+
+	/**
+	 * Consumes the pages in page order.
+	 */
+	@FunctionalInterface
+	public interface PageConsumer {
+
+		/**
+		 * Consume a page.
+		 *
+		 * @param page page
+		 * @param last true if this is the last page
+		 * @throws IfaceXException
+		 */
+		void accept(Page page, boolean last) throws IfaceXException;
+	}
+
+
+	private final PageSource source;
+	private final String endpoint;
+	private final int maxConcurrentPages;
+	private final int firstPage;
+	private final int pageSize;
+	private final String pageParam;
+	private final String offsetParam;
+	private final String sizeParam;
+
+
+	/**
+	 * Create a page fetcher.
+	 *
+	 * @param source page source
+	 * @param endpoint endpoint, e.g. the base URL; concurrent requests are limited per endpoint
+	 * @param maxConcurrentPages max. concurrent page requests per endpoint, shared by all
+	 * 			fetchers of the endpoint with the same value
+	 * @param firstPage number of the first page
+	 * @param pageSize records per page
+	 * @param pageParam page parameter name or null
+	 * @param offsetParam offset parameter name or null
+	 * @param sizeParam page size parameter name or null
+	 */
+	public PageFetcher(PageSource source, String endpoint, int maxConcurrentPages, int firstPage, int pageSize,
+			String pageParam, String offsetParam, String sizeParam) {
+		if (maxConcurrentPages < 1)
+			throw new IllegalArgumentException("Max. concurrent pages must be at least 1, but is " + maxConcurrentPages + "!");
+		if (pageSize < 1)
+			throw new IllegalArgumentException("Page size must be at least 1, but is " + pageSize + "!");
+		this.source = source;
+		this.endpoint = endpoint == null ? "" : endpoint;
+		this.maxConcurrentPages = maxConcurrentPages;
+		this.firstPage = firstPage;
+		this.pageSize = pageSize;
+		this.pageParam = pageParam;
+		this.offsetParam = offsetParam;
+		this.sizeParam = sizeParam;
+	}
+
+	/**
+	 * Create a page fetcher according to the reader configuration.
+	 *
+	 * @param readerName reader name
+	 * @param config IPC
+	 * @param entity source entity
+	 * @param source page source
+	 * @return page fetcher
+	 * @throws IfaceXException if the page size is invalid
+	 */
+	public static PageFetcher create(String readerName, IPC config, SourceEntity entity, PageSource source) throws IfaceXException {
+		final RWC rwc = config.getReaderConfig();
+		final int pageSize = rwc.getFetchSize(entity);
+		if (pageSize < 1)
+			throw new ReaderException("Reader '" + readerName + "': Invalid fetch size " + pageSize + " for entity '" + entity.getEntity() + "'!");
+		return new PageFetcher(source, rwc.getUrl(),
+				Math.max(1, rwc.getNumber(KEY_MAX_CONCURRENT_PAGES, DEFAULT_MAX_CONCURRENT_PAGES)),
+				rwc.getNumber(KEY_FIRST_PAGE, 1), pageSize,
+				rwc.getParamPage(entity), rwc.getParamOffset(entity), rwc.getParamFetchSize(entity));
+	}
+
+	/**
+	 * Fetch all pages and process a batch per page with the batch processor,
+	 * in page order. Value modifications, the exclusion filter and the
+	 * batch exclusion filter of the entity are applied.
+	 *
+	 * @param batchProcessor batch processor
+	 * @param config IPC
+	 * @param entity source entity
+	 * @param hasMoreEntities true, when more entities are following
+	 * @throws IfaceXException
+	 */
+	public void process(BatchProcessor batchProcessor, IPC config, SourceEntity entity, boolean hasMoreEntities) throws IfaceXException {
+		final String fields[] = entity.getSourceFields();
+		final ValueNormalizer normalizer = ValueNormalizer.of(config).compile(fields);
+		final ExclusionFilter exFilter = config.getReaderConfig().getCompiledExclusionFilter(entity);
+		final BatchProcessor processor = FilteringBatchProcessor.of(batchProcessor, config, entity);
+		fetch((page, last) -> {
+			final BatchData batch = new BatchData(config);
+			for (String values[] : page.getRecords()) {
+				// records may be shared with the page source
+				final String record[] = values.clone();
+				normalizer.normalize(record);
+				if (exFilter == null || exFilter.addRecord(fields, record))
+					batch.addRecordValues(record);
+			}
+			processor.processBatchData(batch, entity, !last || hasMoreEntities);
+		});
+	}
+
+	/**
+	 * Fetch all pages and hand them over in page order.
+	 *
+	 * The first failure cancels all other requests and is thrown.
+	 *
+	 * @param consumer page consumer; called in the calling thread
+	 * @throws IfaceXException
+	 */
+	public void fetch(PageConsumer consumer) throws IfaceXException {
+		final Limit limit = Limit.acquire(endpoint, maxConcurrentPages);
+		try {
+			fetch(consumer, limit.permits);
+		} finally {
+			limit.release();
+		}
+	}
+
+	private void fetch(PageConsumer consumer, Semaphore permits) throws IfaceXException {
+		final Page first = fetch(firstPage, 0, permits);
+		// offsets follow the page size of the source
+		final long perPage = first.itemsPerPage > 0 ? first.itemsPerPage : pageSize;
+		final long pages = pages(first, perPage);
+		if (pages == UNKNOWN) {
+			fetchSerially(first, perPage, consumer, permits);
+			return;
+		}
+		if (pages <= 1 || maxConcurrentPages == 1) {
+			consumer.accept(first, pages <= 1);
+			for (int p = 1; p < pages; p++)
+				consumer.accept(fetch(firstPage + p, p * perPage, permits), p == pages - 1);
+			return;
+		}
+		consumer.accept(first, false);
+
+		final AtomicInteger count = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(maxConcurrentPages, r -> {
+			final Thread t = new Thread(r, "ifaceX-pages-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		final Deque<Future<Page>> window = new ArrayDeque<Future<Page>>(maxConcurrentPages);
+		try {
+			int next = 1;
+			for (int p = 1; p < pages; p++) {
+				// keep max. concurrent pages ahead of the page processed
+				while (next < pages && window.size() < maxConcurrentPages) {
+					final int page = firstPage + next++;
+					window.add(executor.submit(() -> fetch(page, (page - firstPage) * perPage, permits)));
+				}
+				consumer.accept(window.poll().get(), p == pages - 1);
+			}
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IfaceXException)
+				throw (IfaceXException) cause;
+			throw new ReaderException("Fetching pages from '" + endpoint + "' failed: " + cause.getMessage(), cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReaderException("Interrupted while fetching pages from '" + endpoint + "'!", e);
+		} finally {
+			for (Future<Page> f : window)
+				f.cancel(true);
+			executor.shutdownNow();
+		}
+	}
+
+	private void fetchSerially(Page first, long perPage, PageConsumer consumer, Semaphore permits) throws IfaceXException {
+		Page page = first;
+		int p = firstPage;
+		// offsets follow the records received
+		long offset = 0;
+		while (true) {
+			final int size = page.getRecords().size();
+			// a short page is only the last one, if the source tells its page size
+			if (size == 0 || (page.itemsPerPage > 0 && size < perPage)) {
+				consumer.accept(page, true);
+				return;
+			}
+			offset += size;
+			final Page next = fetch(++p, offset, permits);
+			if (next.getRecords().isEmpty()) {
+				consumer.accept(page, true);
+				return;
+			}
+			consumer.accept(page, false);
+			page = next;
+		}
+	}
+
+	/**
+	 * Amount of pages according to the first page.
+	 *
+	 * @param first first page
+	 * @param perPage records per page
+	 * @return pages or {@link #UNKNOWN}
+	 */
+	private long pages(Page first, long perPage) {
+		if (first.lastPage != UNKNOWN)
+			return Math.max(1, first.lastPage - firstPage + 1);
+		if (first.itemsTotal != UNKNOWN)
+			return Math.max(1, (first.itemsTotal + perPage - 1) / perPage);
+		return UNKNOWN;
+	}
+
+	private Page fetch(int page, long offset, Semaphore permits) throws IfaceXException {
+		final Page p;
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReaderException("Interrupted while waiting to fetch page " + page + " from '" + endpoint + "'!", e);
+		}
+		try {
+			p = source.fetch(new PageRequest(page, offset, pageSize, pageParam, offsetParam, sizeParam));
+		} finally {
+			permits.release();
+		}
+		if (p == null)
+			throw new ReaderException("No page " + page + " fetched from '" + endpoint + "'!");
+		return p;
+	}
+
+}
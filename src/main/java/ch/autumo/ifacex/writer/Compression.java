@@ -0,0 +1,418 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import ch.autumo.ifacex.RWC;
+
+
+/**
+ * Compression of file outputs ('<rw-prefix>_compression'):
+ * 
+ * - 'none' (default): No compression.
+ * - 'gzip': GZIP of the JDK; file extension '.gz'.
+ * - 'zstd': Zstandard; file extension '.zst'. Needs aircompressor
+ *   ('io.airlift.compress.zstd.ZstdOutputStream', pure Java) or zstd-jni
+ *   ('com.github.luben.zstd.ZstdOutputStream') on the class path.
+ * - 'lz4': LZ4 frames; file extension '.lz4'. Needs lz4-java
+ *   ('net.jpountz.lz4.LZ4FrameOutputStream') on the class path.
+ * 
+ * Compression runs on its own thread ({@link #open(Path, int)}), so it
+ * overlaps with producing and encoding the next records; the writer only
+ * hands over filled buffers through a bounded queue of
+ * '<rw-prefix>_compression_queue' buffers (default: {@value #DEFAULT_QUEUE_DEPTH}).
+ * 
+ * Example within a file writer:
+ * 
+ *   compression = Compression.of(rwc);
+ *   channel = compression.open(Paths.get(compression.file(rwc.getFile(entity, "json"))), 8);
+ */
+public final class Compression {
+
+	/**
+	 * Post-fix for the compression: '<rw-prefix>_compression'.
+	 */
+	public static final String KEY_COMPRESSION = "_compression";
+
+	/**
+	 * Post-fix for the buffers queued for compression: '<rw-prefix>_compression_queue'.
+	 */
+	public static final String KEY_COMPRESSION_QUEUE = "_compression_queue";
+
+	/**
+	 * Default buffers queued for compression.
+	 */
+	public static final int DEFAULT_QUEUE_DEPTH = 8;
+
+	/**
+	 * No compression.
+	 */
+	public static final Compression NONE = new Compression("none", "", null);
+
+	/**
+	 * GZIP compression.
+	 */
+	public static final Compression GZIP = new Compression("gzip", ".gz", null);
+
+	/**
+	 * Zstandard compression.
+	 */
+	public static final Compression ZSTD = new Compression("zstd", ".zst", new String[] {
+			"io.airlift.compress.zstd.ZstdOutputStream",
+			"com.github.luben.zstd.ZstdOutputStream" });
+
+	/**
+	 * LZ4 compression.
+	 */
+	public static final Compression LZ4 = new Compression("lz4", ".lz4", new String[] {
+			"net.jpountz.lz4.LZ4FrameOutputStream" });
+
+	private static final int STREAM_BUFFER = 64 * 1024;
+
+	private final String name;
+	private final String extension;
+	private final String codecs[];
+
+
+	private Compression(String name, String extension, String codecs[]) {
+		this.name = name;
+		this.extension = extension;
+		this.codecs = codecs;
+	}
+
+	/**
+	 * Get the compression of a writer.
+	 * 
+	 * @param config writer configuration
+	 * @return compression
+	 * @throws WriterException if the compression is unknown
+	 */
+	public static Compression of(RWC config) throws WriterException {
+		return forName(config.getConfig(KEY_COMPRESSION));
+	}
+
+	/**
+	 * Get a compression by name.
+	 * 
+	 * @param name 'none', 'gzip', 'zstd' or 'lz4'; null or empty for none
+	 * @return compression
+	 * @throws WriterException if the compression is unknown
+	 */
+	public static Compression forName(String name) throws WriterException {
+		if (name == null || name.trim().length() == 0)
+			return NONE;
+		final String n = name.trim().toLowerCase();
+		if (n.equals(NONE.name))
+			return NONE;
+		if (n.equals(GZIP.name) || n.equals("gz"))
+			return GZIP;
+		if (n.equals(ZSTD.name))
+			return ZSTD;
+		if (n.equals(LZ4.name))
+			return LZ4;
+		throw new WriterException("Unknown compression '" + name + "' for '" + KEY_COMPRESSION + "'!");
+	}
+
+	/**
+	 * Get the queue depth of a writer.
+	 * 
+	 * @param config writer configuration
+	 * @return buffers queued for compression
+	 */
+	public static int queueDepth(RWC config) {
+		return Math.max(1, config.getNumber(KEY_COMPRESSION_QUEUE, DEFAULT_QUEUE_DEPTH));
+	}
+
+	/**
+	 * Get the name.
+	 * 
+	 * @return name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the file extension including the '.'.
+	 * 
+	 * @return file extension; empty for none
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Is this no compression?
+	 * 
+	 * @return true if so
+	 */
+	public boolean isNone() {
+		return this == NONE;
+	}
+
+	/**
+	 * Get the file name with the compression extension, e.g.
+	 * 'out_person.csv.gz' for 'out_person.csv'.
+	 * 
+	 * @param file file name, e.g. of {@link RWC#getFile(ch.autumo.ifacex.SourceEntity, String)}
+	 * @return compressed file name
+	 */
+	public String file(String file) {
+		return file + extension;
+	}
+
+	/**
+	 * Wrap an output stream with a compressing one in the calling thread.
+	 * 
+	 * @param out output stream
+	 * @return compressing output stream; close it to finish the compression
+	 * @throws IOException if the codec isn't available or fails
+	 */
+	public OutputStream wrap(OutputStream out) throws IOException {
+		if (this == NONE)
+			return out;
+		if (this == GZIP)
+			return new GZIPOutputStream(out, STREAM_BUFFER);
+		for (String codec : codecs) {
+			final Class<?> clazz;
+			try {
+				clazz = Class.forName(codec);
+			} catch (ClassNotFoundException e) {
+				continue;
+			}
+			try {
+				return (OutputStream) clazz.getConstructor(OutputStream.class).newInstance(out);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw new IOException("Codec '" + codec + "' failed: " + e.getCause(), e.getCause());
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				throw new IOException("Codec '" + codec + "' can't be used: " + e, e);
+			}
+		}
+		throw new IOException("No codec for compression '" + name + "' on the class path; one of " + String.join(", ", codecs) + " is needed!");
+	}
+
+	/**
+	 * Open a file channel that compresses on its own thread;
+	 * the file is created or overwritten.
+	 * 
+	 * Written buffers are copied into pooled chunks and queued; the
+	 * compression thread returns chunks to the pool once compressed.
+	 * Closing the channel waits until all data is compressed and written.
+	 * 
+	 * @param file file
+	 * @param queueDepth max. buffers queued for compression
+	 * @return channel; not thread-safe
+	 * @throws IOException if the file can't be opened or the codec isn't available
+	 */
+	public WritableByteChannel open(Path file, int queueDepth) throws IOException {
+		final OutputStream fileOut = Files.newOutputStream(file);
+		final OutputStream out;
+		try {
+			out = wrap(new BufferedOutputStream(fileOut, STREAM_BUFFER));
+		} catch (IOException e) {
+			fileOut.close();
+			throw e;
+		}
+		return new AsyncChannel(out, Math.max(1, queueDepth), "ifaceX-compress-" + file.getFileName());
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+
+	/**
+	 * Channel handing over buffers to a compression thread.
+	 * 
+	 * Written data is copied into pooled chunks; there are at most
+	 * queue depth + 1 chunks (queued + being compressed), which are
+	 * sized by the first write, so a writer writing its buffer over
+	 * and over doesn't allocate after the pool is filled.
+	 */
+	private static final class AsyncChannel implements WritableByteChannel, Runnable {
+
+		private static final Chunk END = new Chunk(0);
+		private static final long PUT_WAIT_MS = 100;
+		private static final int MIN_CHUNK_SIZE = 8 * 1024;
+
+		private final OutputStream out;
+		private final BlockingQueue<Chunk> queue;
+		private final BlockingQueue<Chunk> free;
+		private final int chunks;
+		private final Thread thread;
+		private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		private int allocated = 0;
+		private int chunkSize = 0;
+		private boolean open = true;
+
+		private AsyncChannel(OutputStream out, int queueDepth, String threadName) {
+			this.out = out;
+			this.queue = new ArrayBlockingQueue<Chunk>(queueDepth);
+			this.chunks = queueDepth + 1;
+			this.free = new ArrayBlockingQueue<Chunk>(chunks);
+			this.thread = new Thread(this, threadName);
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			if (!open)
+				throw new ClosedChannelException();
+			throwFailure();
+			final int n = src.remaining();
+			if (n == 0)
+				return 0;
+			if (chunkSize == 0)
+				chunkSize = Math.max(n, MIN_CHUNK_SIZE);
+			while (src.hasRemaining()) {
+				final Chunk chunk = chunk();
+				chunk.length = Math.min(src.remaining(), chunk.data.length);
+				src.get(chunk.data, 0, chunk.length);
+				put(chunk);
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!open)
+				return;
+			open = false;
+			put(END);
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for compression!");
+			}
+			throwFailure();
+		}
+
+		private Chunk chunk() throws IOException {
+			Chunk chunk = free.poll();
+			if (chunk != null)
+				return chunk;
+			if (allocated < chunks) {
+				allocated++;
+				return new Chunk(chunkSize);
+			}
+			try {
+				// never block forever on a compression thread that has died
+				while ((chunk = free.poll(PUT_WAIT_MS, TimeUnit.MILLISECONDS)) == null)
+					checkAlive();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for a compression buffer!");
+			}
+			return chunk;
+		}
+
+		private void put(Chunk chunk) throws IOException {
+			try {
+				// never block forever on a compression thread that has died
+				while (!queue.offer(chunk, PUT_WAIT_MS, TimeUnit.MILLISECONDS))
+					checkAlive();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while queuing data for compression!");
+			}
+		}
+
+		private void checkAlive() throws IOException {
+			if (!thread.isAlive()) {
+				throwFailure();
+				throw new IOException("Compression thread '" + thread.getName() + "' has terminated!");
+			}
+		}
+
+		private void throwFailure() throws IOException {
+			final Throwable e = failure.get();
+			if (e != null)
+				throw new IOException("Compression failed: " + e.getMessage(), e);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final Chunk chunk;
+					try {
+						chunk = queue.take();
+					} catch (InterruptedException e) {
+						// record it, but keep draining until END, so the writer never blocks
+						failure.compareAndSet(null, new InterruptedIOException("Compression has been interrupted!"));
+						continue;
+					}
+					if (chunk == END)
+						return;
+					// keep draining after a failure, so the writer never blocks
+					if (failure.get() == null) {
+						try {
+							out.write(chunk.data, 0, chunk.length);
+						} catch (Throwable e) {
+							failure.compareAndSet(null, e);
+						}
+					}
+					free.offer(chunk);
+				}
+			} finally {
+				try {
+					out.close();
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pooled chunk of data to compress.
+	 */
+	private static final class Chunk {
+
+		private final byte data[];
+		private int length;
+
+		private Chunk(int size) {
+			this.data = new byte[size];
+		}
+	}
+
+}
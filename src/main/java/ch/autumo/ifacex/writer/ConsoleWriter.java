@@ -14,6 +14,10 @@
  */
 package ch.autumo.ifacex.writer;
 
+import java.io.IOException;
+
+import ch.autumo.commons.utils.system.OSUtils;
+
 import ch.autumo.ifacex.IPC;
 import ch.autumo.ifacex.IfaceXException;
 import ch.autumo.ifacex.Processor;
@@ -69,7 +73,28 @@ public class ConsoleWriter implements Writer {
 	public void writeBatchData(String writerName, IPC config, BatchData batch, SourceEntity entity) throws IfaceXException {
 		
 		// Log to console
-		System.out.println(batch.toString());
+		writeToConsole(batch);
+	}
+
+	/**
+	 * Write a batch to the console; the batch isn't interleaved
+	 * with output of other threads.
+	 * 
+	 * @param batch batch data
+	 * @throws WriterException if the console couldn't be written
+	 */
+	static void writeToConsole(BatchData batch) throws WriterException {
+		synchronized (System.out) {
+			try {
+				batch.writeTo(System.out);
+				System.out.append(OSUtils.LINE_SEPARATOR);
+				System.out.flush();
+			} catch (IOException e) {
+				throw new WriterException("Couldn't write batch to console!", e);
+			}
+			if (System.out.checkError())
+				throw new WriterException("Couldn't write batch to console!");
+		}
 	}
 
 	@Override
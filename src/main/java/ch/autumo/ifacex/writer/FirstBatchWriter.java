@@ -65,7 +65,7 @@ public class FirstBatchWriter implements Writer {
 		
 		// Log to console
 		if (first) {
-			System.out.println(batch.toString());
+			ConsoleWriter.writeToConsole(batch);
 			first = false;
 		}
 	}
@@ -0,0 +1,380 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import ch.autumo.commons.utils.system.OSUtils;
+import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.Processor;
+import ch.autumo.ifacex.RWC;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.WriterMapping;
+import ch.autumo.ifacex.batch.BatchCursor;
+import ch.autumo.ifacex.batch.BatchData;
+
+
+/**
+ * NIO CSV file writer.
+ * 
+ * Every record is encoded into a reused byte array and copied at once
+ * into a pooled direct buffer, which is written to the file channel of
+ * the entity every time it is full; no CSV line is built as a string
+ * ({@link WriterMapping#getCSVValues(String[])}). Encoding into the array
+ * avoids a bounds-checked put per byte into the direct buffer, and a
+ * record that doesn't fit anymore is never split.
+ * The output mapping is applied, if the mapping has field mappings.
+ * 
+ * Values are separated by the configured delimiter; values containing
+ * the delimiter, the enclosure or line breaks are enclosed with the
+ * configured enclosure, enclosures within values are doubled.
+ * 
+ * Configuration:
+ * - '<rw-prefix>_file_extension': File extension (default: '{@value #DEFAULT_FILE_EXTENSION}');
+ *   the file is '<folder>/<rw-prefix>_<destination-entity>.<extension>',
+ *   see {@link RWC#getFileWithDestName(String, String)}
+ * - '<rw-prefix>_write_header': 'yes' (default) to write the field names first
+ * - '<rw-prefix>_buffer_size_kb': Buffer size in KB (default: {@value #DEFAULT_BUFFER_SIZE_KB})
+ * - '<rw-prefix>_force_per_batch': 'yes' to write every batch through to the
+ *   storage device ({@link FileChannel#force(boolean)}); default 'no'
+ * - '<rw-prefix>_charset': Charset of the file (default: 'UTF-8')
+ * - '<rw-prefix>_compression': 'gzip', 'zstd' or 'lz4' to compress the file on
+ *   its own thread, see {@link Compression}; the compression extension is appended
+ *   to the file name and '<rw-prefix>_force_per_batch' doesn't apply
+ * 
+ * Existing files are overwritten.
+ */
+public class NioCSVWriter implements Writer {
+
+	/**
+	 * Post-fix for the file extension.
+	 */
+	public static final String KEY_FILE_EXTENSION = "_file_extension";
+
+	/**
+	 * Default file extension.
+	 */
+	public static final String DEFAULT_FILE_EXTENSION = "csv";
+
+	/**
+	 * Post-fix for writing the header.
+	 */
+	public static final String KEY_WRITE_HEADER = "_write_header";
+
+	/**
+	 * Post-fix for the buffer size in KB.
+	 */
+	public static final String KEY_BUFFER_SIZE_KB = "_buffer_size_kb";
+
+	/**
+	 * Default buffer size in KB.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE_KB = 256;
+
+	/**
+	 * Post-fix for forcing every batch to the storage device.
+	 */
+	public static final String KEY_FORCE_PER_BATCH = "_force_per_batch";
+
+	/**
+	 * Post-fix for the charset of the file.
+	 */
+	public static final String KEY_CHARSET = "_charset";
+
+	// pooled direct buffers; shared by all CSV writers
+	private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<ByteBuffer>();
+	private static final int MAX_POOLED = 8;
+
+	private int bufferSize = DEFAULT_BUFFER_SIZE_KB * 1024;
+	private boolean forcePerBatch = false;
+	private boolean header = true;
+	private Charset charset = StandardCharsets.UTF_8;
+	private boolean utf8 = true;
+	private CharsetEncoder encoder = null;
+	private Compression compression = Compression.NONE;
+	private int compressionQueue = Compression.DEFAULT_QUEUE_DEPTH;
+
+	private byte delimiter[];
+	private byte enclosure[];
+	private byte lineSeparator[];
+	private char delimiterChar;
+	private char enclosureChar;
+
+	private ByteBuffer buffer = null;
+	private WritableByteChannel channel = null;
+	private Path file = null;
+	private WriterMapping mapping = null;
+
+	// encoded record
+	private byte scratch[] = new byte[1024];
+	private int len = 0;
+
+
+	@Override
+	public void initialize(String writerName, IPC config, Processor processor) throws IfaceXException {
+		final RWC rwc = config.getWriterConfig(writerName);
+		final int kb = rwc.getNumber(KEY_BUFFER_SIZE_KB, DEFAULT_BUFFER_SIZE_KB);
+		bufferSize = (int) Math.min((long) Math.max(4, kb) * 1024, Integer.MAX_VALUE - 8);
+		forcePerBatch = rwc.isYes(KEY_FORCE_PER_BATCH, false);
+		header = rwc.isYes(KEY_WRITE_HEADER, true);
+		final String cs = rwc.getConfig(KEY_CHARSET, StandardCharsets.UTF_8.name());
+		try {
+			charset = Charset.forName(cs.trim());
+		} catch (IllegalArgumentException e) {
+			throw new WriterException("Writer '" + writerName + "': Unknown charset '" + cs + "'!", e);
+		}
+		utf8 = charset.equals(StandardCharsets.UTF_8);
+		encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		final String delim = config.getCSVDelimiterChar();
+		final String encl = config.getCSVEnclosureChar();
+		if (delim == null || delim.length() == 0)
+			throw new WriterException("Writer '" + writerName + "': No CSV delimiter configured!");
+		delimiterChar = delim.charAt(0);
+		enclosureChar = encl == null || encl.length() == 0 ? 0 : encl.charAt(0);
+		delimiter = delim.getBytes(charset);
+		enclosure = encl == null ? new byte[0] : encl.getBytes(charset);
+		lineSeparator = OSUtils.LINE_SEPARATOR.getBytes(charset);
+
+		compression = Compression.of(rwc);
+		compressionQueue = Compression.queueDepth(rwc);
+
+		buffer = acquire(bufferSize);
+	}
+
+	@Override
+	public void initializeEntity(String writerName, IPC config, SourceEntity entity) throws IfaceXException {
+		closeFile(writerName);
+		final RWC rwc = config.getWriterConfig(writerName);
+		mapping = rwc.getMapping(entity);
+		final String destEntity = mapping.hasDestinationEntity()
+				? mapping.getDestinationEntity()
+				: mapping.createConformEntityName(entity.getEntity());
+		file = Paths.get(compression.file(rwc.getFileWithDestName(destEntity, rwc.getConfig(KEY_FILE_EXTENSION, DEFAULT_FILE_EXTENSION))));
+		try {
+			if (compression.isNone())
+				channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			else
+				channel = compression.open(file, compressionQueue);
+		} catch (IOException e) {
+			throw new WriterException("Writer '" + writerName + "': Couldn't open file '" + file + "'!", e);
+		}
+	}
+
+	@Override
+	public void writeHeader(String writerName, IPC config, SourceEntity entity) throws IfaceXException {
+		if (!header)
+			return;
+		final String fields[] = mapping.hasFieldMappings() ? mapping.getFieldsForInsert() : entity.getSourceFields();
+		try {
+			write(fields);
+		} catch (IOException e) {
+			throw new WriterException("Writer '" + writerName + "': Couldn't write header to file '" + file + "'!", e);
+		}
+	}
+
+	@Override
+	public synchronized void writeBatchData(String writerName, IPC config, BatchData batch, SourceEntity entity) throws IfaceXException {
+		final boolean mapped = mapping.hasFieldMappings();
+		final BatchCursor cursor = batch.cursor();
+		try {
+			while (cursor.hasNext()) {
+				final String record[] = cursor.next();
+				write(mapped ? mapping.getValuesForInsert(record) : record);
+			}
+			if (forcePerBatch && channel instanceof FileChannel) {
+				drain();
+				((FileChannel) channel).force(false);
+			}
+		} catch (IOException e) {
+			throw new WriterException("Writer '" + writerName + "': Couldn't write to file '" + file + "'!", e);
+		}
+	}
+
+	@Override
+	public void close(String writerName) throws IfaceXException {
+		try {
+			closeFile(writerName);
+		} finally {
+			if (buffer != null)
+				release(buffer);
+			buffer = null;
+		}
+	}
+
+	private void closeFile(String writerName) throws IfaceXException {
+		if (channel == null)
+			return;
+		try {
+			try {
+				drain();
+			} finally {
+				// even if draining fails, which also ends the
+				// compression thread of a compressed file
+				channel.close();
+			}
+		} catch (IOException e) {
+			throw new WriterException("Writer '" + writerName + "': Couldn't close file '" + file + "'!", e);
+		} finally {
+			channel = null;
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Encode a record and add it to the buffer.
+	 * 
+	 * @param values values
+	 * @throws IOException
+	 */
+	private void write(String values[]) throws IOException {
+		len = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				put(delimiter);
+			value(values[i]);
+		}
+		put(lineSeparator);
+		if (len > buffer.remaining()) {
+			drain();
+			if (len > buffer.remaining()) {
+				// larger than the buffer
+				final ByteBuffer b = ByteBuffer.wrap(scratch, 0, len);
+				while (b.hasRemaining())
+					channel.write(b);
+				return;
+			}
+		}
+		buffer.put(scratch, 0, len);
+	}
+
+	private void value(String value) throws CharacterCodingException {
+		if (value == null || value.length() == 0)
+			return;
+		final boolean enclose = enclosureChar != 0 && needsEnclosure(value);
+		if (enclose)
+			put(enclosure);
+		if (utf8)
+			utf8(value, enclose);
+		else
+			encoded(enclose ? value.replace(String.valueOf(enclosureChar), String.valueOf(enclosureChar) + enclosureChar) : value);
+		if (enclose)
+			put(enclosure);
+	}
+
+	private boolean needsEnclosure(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == delimiterChar || c == enclosureChar || c == '\n' || c == '\r')
+				return true;
+		}
+		return false;
+	}
+
+	private void utf8(String s, boolean escape) {
+		final int length = s.length();
+		// worst case: 3 bytes per char or a doubled enclosure
+		ensure(length * 3 * (escape ? 2 : 1));
+		final byte bytes[] = scratch;
+		int p = len;
+		for (int i = 0; i < length; i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				if (escape && c == enclosureChar)
+					bytes[p++] = (byte) c;
+				bytes[p++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[p++] = (byte) (0xC0 | (c >> 6));
+				bytes[p++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+				final int cp = Character.toCodePoint(c, s.charAt(++i));
+				bytes[p++] = (byte) (0xF0 | (cp >> 18));
+				bytes[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				bytes[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				bytes[p++] = (byte) (0x80 | (cp & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				bytes[p++] = '?';
+			} else {
+				bytes[p++] = (byte) (0xE0 | (c >> 12));
+				bytes[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[p++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		len = p;
+	}
+
+	private void encoded(String s) throws CharacterCodingException {
+		final ByteBuffer b = encoder.encode(CharBuffer.wrap(s));
+		ensure(b.remaining());
+		final int n = b.remaining();
+		b.get(scratch, len, n);
+		len += n;
+	}
+
+	private void put(byte b[]) {
+		ensure(b.length);
+		System.arraycopy(b, 0, scratch, len, b.length);
+		len += b.length;
+	}
+
+	private void ensure(int n) {
+		if (len + n > scratch.length)
+			scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, len + n));
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	private static ByteBuffer acquire(int capacity) {
+		for (int i = 0; i < MAX_POOLED; i++) {
+			final ByteBuffer b = POOL.poll();
+			if (b == null)
+				break;
+			if (b.capacity() == capacity)
+				return b;
+			// other sizes are dropped
+		}
+		return ByteBuffer.allocateDirect(capacity);
+	}
+
+	private static void release(ByteBuffer b) {
+		b.clear();
+		if (POOL.size() < MAX_POOLED)
+			POOL.offer(b);
+	}
+
+}
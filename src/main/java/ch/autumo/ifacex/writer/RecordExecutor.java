@@ -0,0 +1,256 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.batch.BatchCursor;
+import ch.autumo.ifacex.batch.BatchData;
+
+
+/**
+ * Executes the record-level work of a writer, e.g. one REST call or
+ * one Mongo operation per record.
+ *
+ * In the writer execution mode 'virtual' ({@link IPC#getWriterExecMode()}),
+ * records are written concurrently on virtual threads, limited per writer
+ * by '<rw-prefix>_max_concurrency' (default: {@value #DEFAULT_MAX_CONCURRENCY}),
+ * so I/O-bound writers scale with concurrency instead of round-trip latency.
+ * On Java runtimes without virtual threads, a fixed thread pool of that size
+ * is used. In the default mode 'serial', records are written one after the
+ * other in the calling thread.
+ *
+ * Example within {@link Writer#writeBatchData(String, IPC, BatchData, ch.autumo.ifacex.SourceEntity)}:
+ *
+ *   executor.execute(batch, record -> post(mapping.createJSONBodyForInsert(record)));
+ *
+ * The task must be thread-safe in the 'virtual' mode; records are not written
+ * in batch order then.
+ */
+public final class RecordExecutor implements AutoCloseable {
+
+	/**
+	 * Writer execution mode: Records are written one after the other (default).
+	 */
+	public static final String EXEC_MODE_SERIAL = "serial";
+
+	/**
+	 * Writer execution mode: Records are written concurrently on virtual threads.
+	 */
+	public static final String EXEC_MODE_VIRTUAL = "virtual";
+
+	/**
+	 * Post-fix for the max. concurrent records per writer:
+	 * '<rw-prefix>_max_concurrency'.
+	 */
+	public static final String KEY_MAX_CONCURRENCY = "_max_concurrency";
+
+	/**
+	 * Default max. concurrent records per writer.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+
+	/**
+	 * Record-level writer work.
+	 */
+	@FunctionalInterface
+	public interface RecordTask {
+
+		/**
+		 * Write one record.
+		 *
+		 * @param record record values
+		 * @throws IfaceXException
+		 */
+		void write(String record[]) throws IfaceXException;
+	}
+
+
+	private final String writerName;
+	private final int maxConcurrency;
+	private final ExecutorService executor;
+	private final boolean virtual;
+
+
+	private RecordExecutor(String writerName, int maxConcurrency, boolean concurrent) {
+		this.writerName = writerName;
+		this.maxConcurrency = maxConcurrency;
+		if (concurrent) {
+			ExecutorService service = newVirtualThreadPerTaskExecutor();
+			this.virtual = service != null;
+			if (service == null)
+				service = Executors.newFixedThreadPool(maxConcurrency, r -> {
+					final Thread t = new Thread(r, "ifaceX-record-" + writerName);
+					t.setDaemon(true);
+					return t;
+				});
+			this.executor = service;
+		} else {
+			this.virtual = false;
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * Create a record executor for a writer according to its configuration.
+	 *
+	 * @param writerName writer name
+	 * @param config IPC
+	 * @return record executor; close it when the writer is closed
+	 */
+	public static RecordExecutor forWriter(String writerName, IPC config) {
+		final boolean concurrent = EXEC_MODE_VIRTUAL.equalsIgnoreCase(config.getWriterExecMode());
+		int max = config.getWriterConfig(writerName).getNumber(KEY_MAX_CONCURRENCY, DEFAULT_MAX_CONCURRENCY);
+		if (max < 1)
+			max = DEFAULT_MAX_CONCURRENCY;
+		return new RecordExecutor(writerName, max, concurrent && max > 1);
+	}
+
+	/**
+	 * Create a serial record executor.
+	 *
+	 * @param writerName writer name
+	 * @return serial record executor
+	 */
+	public static RecordExecutor serial(String writerName) {
+		return new RecordExecutor(writerName, 1, false);
+	}
+
+	/**
+	 * Create a concurrent record executor.
+	 *
+	 * @param writerName writer name
+	 * @param maxConcurrency max. concurrent records
+	 * @return concurrent record executor; close it when the writer is closed
+	 */
+	public static RecordExecutor concurrent(String writerName, int maxConcurrency) {
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException("Max. concurrency must be at least 1, but is " + maxConcurrency + "!");
+		return new RecordExecutor(writerName, maxConcurrency, true);
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			// Java 21+; the project is built for Java 11
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Are records written concurrently?
+	 *
+	 * @return true if so
+	 */
+	public boolean isConcurrent() {
+		return executor != null;
+	}
+
+	/**
+	 * Are records written on virtual threads?
+	 *
+	 * @return true if so
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Max. concurrent records.
+	 *
+	 * @return max. concurrency
+	 */
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * Write all records of a batch and wait until all are written.
+	 *
+	 * No further records are started after the first failure; it is
+	 * thrown when all running records are done, further failures are
+	 * added as suppressed exceptions.
+	 *
+	 * @param batch batch data
+	 * @param task record task
+	 * @throws IfaceXException first failure
+	 */
+	public void execute(BatchData batch, RecordTask task) throws IfaceXException {
+		final BatchCursor cursor = batch.cursor();
+		if (executor == null) {
+			while (cursor.hasNext())
+				task.write(cursor.next());
+			return;
+		}
+
+		final Semaphore permits = new Semaphore(maxConcurrency);
+		final AtomicReference<IfaceXException> failure = new AtomicReference<IfaceXException>();
+		try {
+			while (cursor.hasNext() && failure.get() == null) {
+				final String record[] = cursor.next();
+				permits.acquire();
+				try {
+					executor.execute(() -> {
+						try {
+							task.write(record);
+						} catch (IfaceXException e) {
+							fail(failure, e);
+						} catch (Throwable e) {
+							// errors too, otherwise they'd be lost in the executor
+							fail(failure, new WriterException("Writer '" + writerName + "' failed: " + e, e));
+						} finally {
+							permits.release();
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					permits.release();
+					throw new WriterException("Record executor of writer '" + writerName + "' has been closed!", e);
+				}
+			}
+			// wait for all running records
+			permits.acquire(maxConcurrency);
+			permits.release(maxConcurrency);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WriterException("Interrupted while writing records of writer '" + writerName + "'!", e);
+		}
+		final IfaceXException e = failure.get();
+		if (e != null)
+			throw e;
+	}
+
+	private static void fail(AtomicReference<IfaceXException> failure, IfaceXException e) {
+		if (!failure.compareAndSet(null, e))
+			failure.get().addSuppressed(e);
+	}
+
+	/**
+	 * Close this executor; running records are finished.
+	 */
+	@Override
+	public void close() {
+		if (executor != null)
+			executor.shutdown();
+	}
+
+}
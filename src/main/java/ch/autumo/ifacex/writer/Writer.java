@@ -75,6 +75,10 @@ public interface Writer extends Generic {
 	 * batch mode! When a mail-writer is used, then the whole IPC will
 	 * be forced to run in serial batch mode. 
 	 * 
+	 * The batch is shared with the other writers of the IPC; records
+	 * must not be modified. Use {@link BatchData#cursor()} if the
+	 * records need to be read more than once.
+	 * 
 	 * @param writerName writer name
 	 * @param config IPC
 	 * @param batch batch data
@@ -0,0 +1,463 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Locale;
+
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.RWC;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.batch.BatchCursor;
+import ch.autumo.ifacex.batch.BatchData;
+import ch.autumo.ifacex.writer.WriterException;
+
+
+/**
+ * Inserts batches into a database table with a {@link StatementPlan},
+ * instead of one statement and round trip per record.
+ *
+ * Insert modes ('<rw-prefix>_insert_mode'):
+ *
+ * - 'batch' (default): Records are added to a JDBC batch
+ *   ({@link PreparedStatement#addBatch()}) that is executed every
+ *   '<rw-prefix>_<source-entity-name>_fetchSize' records ({@link RWC#getFetchSize(SourceEntity)}).
+ * - 'multi_row': Records are inserted with multi-row statements
+ *   'INSERT INTO t (...) VALUES (...), (...), ...' of up to fetch-size
+ *   rows, limited by '<rw-prefix>_max_parameters' bind parameters per statement
+ *   (default per database: {@value #MAX_PARAMETERS_LARGE} for PostgreSQL, MySQL,
+ *   MariaDB and H2, {@value #MAX_PARAMETERS_SQLITE} for SQLite, otherwise
+ *   {@value #DEFAULT_MAX_PARAMETERS}, which is below the limit of SQL Server).
+ *
+ * Commits ('<rw-prefix>_commit'):
+ *
+ * - 'batch' (default): Commit after every batch data.
+ * - 'entity': Commit once, when the entity is finished; see {@link #finish()}.
+ * - 'auto': The auto-commit setting of the connection is left as it is.
+ * - A number: Commit as soon as at least that many records have been written.
+ *
+ * Without 'auto', auto-commit is switched off and restored by {@link #close()},
+ * and a failure rolls back all records since the last commit.
+ *
+ * Example within a database writer:
+ *
+ *   initializeEntity: inserter = JdbcBatchInserter.create(connection, config.getWriterConfig(writerName), entity);
+ *   writeBatchData:   inserter.insert(batch);
+ *   last batch:       inserter.finish(); inserter.close();
+ *
+ * An inserter isn't thread-safe; use one per entity and connection.
+ */
+public final class JdbcBatchInserter implements AutoCloseable {
+
+	/**
+	 * Post-fix for the insert mode: '<rw-prefix>_insert_mode'.
+	 */
+	public static final String KEY_INSERT_MODE = "_insert_mode";
+
+	/**
+	 * Insert mode: JDBC batches.
+	 */
+	public static final String INSERT_MODE_BATCH = "batch";
+
+	/**
+	 * Insert mode: Multi-row insert statements.
+	 */
+	public static final String INSERT_MODE_MULTI_ROW = "multi_row";
+
+	/**
+	 * Post-fix for the commit granularity: '<rw-prefix>_commit'.
+	 */
+	public static final String KEY_COMMIT = "_commit";
+
+	/**
+	 * Commit after every batch data.
+	 */
+	public static final String COMMIT_BATCH = "batch";
+
+	/**
+	 * Commit once per entity.
+	 */
+	public static final String COMMIT_ENTITY = "entity";
+
+	/**
+	 * Leave commits to the connection's auto-commit.
+	 */
+	public static final String COMMIT_AUTO = "auto";
+
+	/**
+	 * Post-fix for the max. bind parameters per multi-row statement:
+	 * '<rw-prefix>_max_parameters'.
+	 */
+	public static final String KEY_MAX_PARAMETERS = "_max_parameters";
+
+	/**
+	 * Default max. bind parameters per multi-row statement for
+	 * databases without a known higher limit; SQL Server allows 2100.
+	 */
+	public static final int DEFAULT_MAX_PARAMETERS = 2000;
+
+	/**
+	 * Default max. bind parameters per multi-row statement for
+	 * PostgreSQL, MySQL, MariaDB and H2.
+	 */
+	public static final int MAX_PARAMETERS_LARGE = 32767;
+
+	/**
+	 * Default max. bind parameters per multi-row statement for SQLite.
+	 */
+	public static final int MAX_PARAMETERS_SQLITE = 999;
+
+	/**
+	 * Default rows per execution, if no fetch size is configured.
+	 */
+	public static final int DEFAULT_ROWS = 1000;
+
+	// commit intervals
+	static final long PER_BATCH = 0;
+	static final long PER_ENTITY = -1;
+	static final long AUTO = -2;
+
+	private final Connection connection;
+	private final StatementPlan plan;
+	private final boolean multiRow;
+	private final int rows;
+	private final long commitInterval;
+	private final boolean autoCommit;
+
+	private PreparedStatement statement;
+	private PreparedStatement rest;
+	private int restRows;
+	private String pending[][];
+	private int pendingRows = 0;
+	private long uncommitted = 0;
+	private long written = 0;
+
+
+	/**
+	 * Create an inserter.
+	 *
+	 * @param connection database connection
+	 * @param plan statement plan of the entity
+	 * @param multiRow true for multi-row statements, false for JDBC batches
+	 * @param rows max. rows per execution
+	 * @param commitInterval records per commit; 0 for every batch data, -1 per entity, -2 for auto-commit
+	 * @throws WriterException
+	 */
+	private JdbcBatchInserter(Connection connection, StatementPlan plan, boolean multiRow, int rows, long commitInterval) throws WriterException {
+		this.connection = connection;
+		this.plan = plan;
+		this.multiRow = multiRow && rows > 1;
+		this.rows = rows;
+		this.commitInterval = commitInterval;
+		try {
+			this.autoCommit = connection.getAutoCommit();
+			if (commitInterval != AUTO && autoCommit)
+				connection.setAutoCommit(false);
+			if (this.multiRow) {
+				this.statement = connection.prepareStatement(multiRowSql(rows));
+				this.pending = new String[rows][];
+			} else {
+				this.statement = connection.prepareStatement(plan.getInsertSql());
+			}
+		} catch (SQLException e) {
+			close();
+			throw new WriterException("Couldn't prepare insert into '" + plan.getTable() + "': " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Create an inserter according to the writer configuration.
+	 *
+	 * @param connection database connection
+	 * @param config writer configuration
+	 * @param entity source entity
+	 * @return inserter; close it when the entity is written
+	 * @throws IfaceXException if the configuration is invalid or the statement can't be prepared
+	 */
+	public static JdbcBatchInserter create(Connection connection, RWC config, SourceEntity entity) throws IfaceXException {
+		final StatementPlan plan = config.getMapping(entity).getStatementPlan(config);
+
+		final String mode = config.getConfig(KEY_INSERT_MODE);
+		final boolean multiRow;
+		if (mode == null || mode.trim().length() == 0 || mode.trim().equalsIgnoreCase(INSERT_MODE_BATCH))
+			multiRow = false;
+		else if (mode.trim().equalsIgnoreCase(INSERT_MODE_MULTI_ROW))
+			multiRow = true;
+		else
+			throw new WriterException("Invalid insert mode '" + mode + "' for '" + KEY_INSERT_MODE + "'!");
+
+		int rows = config.getFetchSize(entity);
+		if (rows < 1)
+			rows = DEFAULT_ROWS;
+		if (multiRow) {
+			final int maxParameters = config.getNumber(KEY_MAX_PARAMETERS, defaultMaxParameters(connection));
+			rows = Math.max(1, Math.min(rows, maxParameters / plan.getColumnCount()));
+		}
+		return new JdbcBatchInserter(connection, plan, multiRow, rows, commitInterval(config.getConfig(KEY_COMMIT)));
+	}
+
+	/**
+	 * Create an inserter.
+	 *
+	 * @param connection database connection
+	 * @param plan statement plan of the entity
+	 * @param multiRow true for multi-row statements, false for JDBC batches
+	 * @param rows max. rows per execution
+	 * @param commit commit granularity: 'batch', 'entity', 'auto' or records per commit
+	 * @return inserter; close it when the entity is written
+	 * @throws WriterException if the commit granularity is invalid or the statement can't be prepared
+	 */
+	public static JdbcBatchInserter create(Connection connection, StatementPlan plan, boolean multiRow, int rows, String commit) throws WriterException {
+		if (rows < 1)
+			throw new IllegalArgumentException("Rows must be at least 1, but is " + rows + "!");
+		return new JdbcBatchInserter(connection, plan, multiRow, rows, commitInterval(commit));
+	}
+
+	/**
+	 * Default max. bind parameters per statement of the connection's database.
+	 *
+	 * @param connection database connection
+	 * @return max. bind parameters
+	 */
+	static int defaultMaxParameters(Connection connection) {
+		try {
+			final String product = connection.getMetaData().getDatabaseProductName();
+			if (product != null) {
+				final String p = product.toLowerCase(Locale.ROOT);
+				if (p.contains("postgres") || p.contains("mysql") || p.contains("mariadb") || p.equals("h2"))
+					return MAX_PARAMETERS_LARGE;
+				if (p.contains("sqlite"))
+					return MAX_PARAMETERS_SQLITE;
+			}
+		} catch (SQLException e) {
+			// unknown database
+		}
+		return DEFAULT_MAX_PARAMETERS;
+	}
+
+	static long commitInterval(String commit) throws WriterException {
+		if (commit == null || commit.trim().length() == 0 || commit.trim().equalsIgnoreCase(COMMIT_BATCH))
+			return PER_BATCH;
+		final String c = commit.trim();
+		if (c.equalsIgnoreCase(COMMIT_ENTITY))
+			return PER_ENTITY;
+		if (c.equalsIgnoreCase(COMMIT_AUTO))
+			return AUTO;
+		try {
+			final long n = Long.parseLong(c);
+			if (n > 0)
+				return n;
+		} catch (NumberFormatException e) {
+			// invalid
+		}
+		throw new WriterException("Invalid value '" + commit + "' for '" + KEY_COMMIT + "'!");
+	}
+
+	private String multiRowSql(int count) {
+		final String insert = plan.getInsertSql();
+		final StringBuilder sb = new StringBuilder(insert.length() + count * plan.getColumnCount() * 3);
+		sb.append(insert);
+		for (int i = 1; i < count; i++) {
+			sb.append(", ");
+			StatementPlan.appendRow(sb, plan.getColumnCount());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Get the statement plan.
+	 *
+	 * @return statement plan
+	 */
+	public StatementPlan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * Are multi-row statements used?
+	 *
+	 * @return true if so
+	 */
+	public boolean isMultiRow() {
+		return multiRow;
+	}
+
+	/**
+	 * Max. rows per execution.
+	 *
+	 * @return rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Amount of records written so far.
+	 *
+	 * @return records
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	/**
+	 * Insert all records of a batch.
+	 *
+	 * @param batch batch data
+	 * @throws IfaceXException
+	 */
+	public void insert(BatchData batch) throws IfaceXException {
+		final BatchCursor cursor = batch.cursor();
+		try {
+			while (cursor.hasNext()) {
+				final String values[] = plan.values(cursor.next());
+				if (multiRow) {
+					pending[pendingRows++] = values;
+				} else {
+					plan.bindInsert(statement, values);
+					statement.addBatch();
+					pendingRows++;
+				}
+				if (pendingRows == rows)
+					flush();
+			}
+			flush();
+			if (commitInterval == PER_BATCH)
+				commit();
+		} catch (SQLException e) {
+			throw fail(e);
+		}
+	}
+
+	/**
+	 * Write all pending records and commit; call it when the entity is written.
+	 *
+	 * @throws IfaceXException
+	 */
+	public void finish() throws IfaceXException {
+		try {
+			flush();
+			commit();
+		} catch (SQLException e) {
+			throw fail(e);
+		}
+	}
+
+	private void flush() throws SQLException {
+		if (pendingRows == 0)
+			return;
+		if (!multiRow) {
+			statement.executeBatch();
+		} else if (pendingRows == rows) {
+			bindPending(statement);
+			statement.executeUpdate();
+		} else {
+			// remaining rows of a batch; the statement is reused for the same amount
+			if (rest == null || restRows != pendingRows) {
+				if (rest != null)
+					rest.close();
+				rest = connection.prepareStatement(multiRowSql(pendingRows));
+				restRows = pendingRows;
+			}
+			bindPending(rest);
+			rest.executeUpdate();
+		}
+		written += pendingRows;
+		uncommitted += pendingRows;
+		pendingRows = 0;
+		if (commitInterval > 0 && uncommitted >= commitInterval)
+			commit();
+	}
+
+	private void bindPending(PreparedStatement ps) throws SQLException {
+		int parameter = 1;
+		for (int i = 0; i < pendingRows; i++) {
+			parameter = plan.bindInsert(ps, pending[i], parameter);
+			pending[i] = null;
+		}
+	}
+
+	private void commit() throws SQLException {
+		if (commitInterval != AUTO && uncommitted > 0)
+			connection.commit();
+		uncommitted = 0;
+	}
+
+	private WriterException fail(SQLException e) {
+		if (multiRow) {
+			for (int i = 0; i < pendingRows; i++)
+				pending[i] = null;
+		} else {
+			try {
+				// commands of a failed JDBC batch may be kept by the driver
+				statement.clearBatch();
+			} catch (SQLException ce) {
+				e.addSuppressed(ce);
+			}
+		}
+		pendingRows = 0;
+		if (commitInterval != AUTO) {
+			try {
+				connection.rollback();
+			} catch (SQLException re) {
+				e.addSuppressed(re);
+			}
+			uncommitted = 0;
+		}
+		return new WriterException("Insert into '" + plan.getTable() + "' failed: " + e.getMessage(), e);
+	}
+
+	/**
+	 * Close the statements and restore the auto-commit setting of
+	 * the connection; the connection itself isn't closed. Pending
+	 * records aren't written, see {@link #finish()}.
+	 */
+	@Override
+	public void close() {
+		try {
+			close(statement);
+			close(rest);
+		} finally {
+			statement = null;
+			rest = null;
+			if (commitInterval != AUTO && autoCommit) {
+				try {
+					connection.setAutoCommit(true);
+				} catch (SQLException e) {
+					// nothing to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close a statement; a failure doesn't keep further
+	 * statements from being closed.
+	 * 
+	 * @param ps statement or null
+	 */
+	static void close(PreparedStatement ps) {
+		if (ps == null)
+			return;
+		try {
+			ps.close();
+		} catch (SQLException e) {
+			// nothing to do
+		}
+	}
+
+}
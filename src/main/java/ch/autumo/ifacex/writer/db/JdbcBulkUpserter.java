@@ -0,0 +1,496 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.RWC;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.batch.BatchCursor;
+import ch.autumo.ifacex.batch.BatchData;
+import ch.autumo.ifacex.writer.WriterException;
+
+
+/**
+ * Inserts or updates batches in a database table with a {@link StatementPlan};
+ * records are identified by the filter columns of the plan (destination filter
+ * fields or destination unique ID field), instead of looking up every record
+ * and then updating or inserting it, i.e. two statements per record.
+ *
+ * Upsert modes ('<rw-prefix>_upsert_mode'):
+ *
+ * - 'select' (default): Per batch, the keys of all records are looked up
+ *   with a few queries, then existing records are updated and new records
+ *   are inserted with JDBC batches. Keys are matched by the database
+ *   ('SELECT 0 FROM t WHERE id=? UNION ALL SELECT 1 FROM t WHERE id=? ...'),
+ *   so column types, padding and collations apply as for the update itself.
+ *   Records with the same key within a batch are inserted once and then
+ *   updated; within a batch, keys are compared as written, so keys that
+ *   are only equal for the database (e.g. '7' and '007' of a numeric key)
+ *   must not be new in the same batch.
+ * - 'on_conflict': Native 'INSERT ... ON CONFLICT (keys) DO UPDATE SET ...'
+ *   (PostgreSQL, SQLite); the keys need a unique constraint.
+ * - 'on_duplicate_key': Native 'INSERT ... ON DUPLICATE KEY UPDATE ...'
+ *   (MySQL, MariaDB); the keys need a unique constraint.
+ *
+ * Statements are executed every '<rw-prefix>_<source-entity-name>_fetchSize'
+ * records ({@link RWC#getFetchSize(SourceEntity)}); key queries are limited by
+ * '<rw-prefix>_max_parameters' bind parameters. Commits ('<rw-prefix>_commit')
+ * are the same as for the {@link JdbcBatchInserter}.
+ *
+ * An upserter isn't thread-safe; use one per entity and connection.
+ */
+public final class JdbcBulkUpserter implements AutoCloseable {
+
+	/**
+	 * Post-fix for the upsert mode: '<rw-prefix>_upsert_mode'.
+	 */
+	public static final String KEY_UPSERT_MODE = "_upsert_mode";
+
+	/**
+	 * Upsert mode: Select existing keys, then update and insert.
+	 */
+	public static final String UPSERT_MODE_SELECT = "select";
+
+	/**
+	 * Upsert mode: 'INSERT ... ON CONFLICT ... DO UPDATE'.
+	 */
+	public static final String UPSERT_MODE_ON_CONFLICT = "on_conflict";
+
+	/**
+	 * Upsert mode: 'INSERT ... ON DUPLICATE KEY UPDATE'.
+	 */
+	public static final String UPSERT_MODE_ON_DUPLICATE_KEY = "on_duplicate_key";
+
+	private static final char KEY_SEPARATOR = '\u0000';
+
+	// max. keys per key query; every key is a sub-query
+	private static final int MAX_KEYS_PER_QUERY = 500;
+
+	private final Connection connection;
+	private final StatementPlan plan;
+	private final String mode;
+	private final int rows;
+	private final int keysPerQuery;
+	private final long commitInterval;
+	private final boolean autoCommit;
+	private final int keySlots[];
+
+	private PreparedStatement insert;
+	private PreparedStatement update;
+	private PreparedStatement select;
+	private PreparedStatement selectRest;
+	private int selectRestKeys;
+
+	private int pendingInserts = 0;
+	private int pendingUpdates = 0;
+	private long uncommitted = 0;
+	private long inserted = 0;
+	private long updated = 0;
+
+
+	private JdbcBulkUpserter(Connection connection, StatementPlan plan, String mode, int rows, int maxParameters, long commitInterval) throws WriterException {
+		if (!plan.hasFilter())
+			throw new WriterException("Can't upsert into '" + plan.getTable() + "' without filter fields or a written unique ID field!");
+		this.connection = connection;
+		this.plan = plan;
+		this.mode = mode;
+		this.rows = rows;
+		this.keySlots = plan.getFilterSlots();
+		this.keysPerQuery = Math.max(1, Math.min(Math.min(rows, MAX_KEYS_PER_QUERY), maxParameters / keySlots.length));
+		this.commitInterval = commitInterval;
+		try {
+			this.autoCommit = connection.getAutoCommit();
+			if (commitInterval != JdbcBatchInserter.AUTO && autoCommit)
+				connection.setAutoCommit(false);
+			if (UPSERT_MODE_SELECT.equals(mode)) {
+				this.insert = connection.prepareStatement(plan.getInsertSql());
+				if (plan.getUpdateSql() != null)
+					this.update = connection.prepareStatement(plan.getUpdateSql());
+			} else {
+				this.insert = connection.prepareStatement(nativeSql(plan, mode));
+			}
+		} catch (SQLException e) {
+			close();
+			throw new WriterException("Couldn't prepare upsert into '" + plan.getTable() + "': " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Create an upserter according to the writer configuration.
+	 *
+	 * @param connection database connection
+	 * @param config writer configuration
+	 * @param entity source entity
+	 * @return upserter; close it when the entity is written
+	 * @throws IfaceXException if the configuration is invalid or the statements can't be prepared
+	 */
+	public static JdbcBulkUpserter create(Connection connection, RWC config, SourceEntity entity) throws IfaceXException {
+		final StatementPlan plan = config.getMapping(entity).getStatementPlan(config);
+		final String mode = config.getConfig(KEY_UPSERT_MODE);
+		int rows = config.getFetchSize(entity);
+		if (rows < 1)
+			rows = JdbcBatchInserter.DEFAULT_ROWS;
+		final int maxParameters = config.getNumber(JdbcBatchInserter.KEY_MAX_PARAMETERS, JdbcBatchInserter.defaultMaxParameters(connection));
+		return new JdbcBulkUpserter(connection, plan, mode(mode), rows, maxParameters,
+				JdbcBatchInserter.commitInterval(config.getConfig(JdbcBatchInserter.KEY_COMMIT)));
+	}
+
+	/**
+	 * Create an upserter.
+	 *
+	 * @param connection database connection
+	 * @param plan statement plan of the entity; it must have filter columns
+	 * @param mode upsert mode: 'select', 'on_conflict' or 'on_duplicate_key'
+	 * @param rows max. rows per execution
+	 * @param commit commit granularity: 'batch', 'entity', 'auto' or records per commit
+	 * @return upserter; close it when the entity is written
+	 * @throws WriterException if the mode or commit granularity is invalid or the statements can't be prepared
+	 */
+	public static JdbcBulkUpserter create(Connection connection, StatementPlan plan, String mode, int rows, String commit) throws WriterException {
+		if (rows < 1)
+			throw new IllegalArgumentException("Rows must be at least 1, but is " + rows + "!");
+		return new JdbcBulkUpserter(connection, plan, mode(mode), rows, JdbcBatchInserter.defaultMaxParameters(connection),
+				JdbcBatchInserter.commitInterval(commit));
+	}
+
+	private static String mode(String mode) throws WriterException {
+		if (mode == null || mode.trim().length() == 0)
+			return UPSERT_MODE_SELECT;
+		final String m = mode.trim().toLowerCase(Locale.ROOT);
+		if (m.equals(UPSERT_MODE_SELECT) || m.equals(UPSERT_MODE_ON_CONFLICT) || m.equals(UPSERT_MODE_ON_DUPLICATE_KEY))
+			return m;
+		throw new WriterException("Invalid upsert mode '" + mode + "' for '" + KEY_UPSERT_MODE + "'!");
+	}
+
+	/**
+	 * Native upsert statement.
+	 *
+	 * @param plan statement plan
+	 * @param mode 'on_conflict' or 'on_duplicate_key'
+	 * @return upsert SQL
+	 */
+	static String nativeSql(StatementPlan plan, String mode) {
+		final String columns[] = plan.getColumns();
+		final int keys[] = plan.getFilterSlots();
+		final boolean key[] = new boolean[columns.length];
+		for (int i = 0; i < keys.length; i++)
+			key[keys[i]] = true;
+
+		final StringBuilder sb = new StringBuilder(plan.getInsertSql());
+		if (UPSERT_MODE_ON_CONFLICT.equals(mode)) {
+			sb.append(" ON CONFLICT (");
+			for (int i = 0; i < keys.length; i++)
+				sb.append(i > 0 ? ", " : "").append(columns[keys[i]]);
+			sb.append(')');
+			int n = 0;
+			for (int i = 0; i < columns.length; i++) {
+				if (!key[i])
+					sb.append(n++ == 0 ? " DO UPDATE SET " : ", ").append(columns[i]).append("=EXCLUDED.").append(columns[i]);
+			}
+			if (n == 0)
+				sb.append(" DO NOTHING");
+		} else {
+			sb.append(" ON DUPLICATE KEY UPDATE ");
+			int n = 0;
+			for (int i = 0; i < columns.length; i++) {
+				if (!key[i])
+					sb.append(n++ == 0 ? "" : ", ").append(columns[i]).append("=VALUES(").append(columns[i]).append(')');
+			}
+			if (n == 0)
+				sb.append(columns[keys[0]]).append('=').append(columns[keys[0]]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Key query for a given amount of keys; a sub-query per key that
+	 * returns the position of the key if the database has a matching
+	 * record, e.g. 'SELECT 0 FROM t WHERE id=? UNION ALL SELECT 1 FROM t WHERE id=?'
+	 * or 'SELECT 0 FROM t WHERE a=? AND b=? UNION ALL ...'.
+	 *
+	 * @param count amount of keys
+	 * @return select SQL
+	 */
+	private String selectSql(int count) {
+		final String keys[] = plan.getFilterColumns();
+		final StringBuilder sb = new StringBuilder(count * (32 + plan.getTable().length() + keys.length * 16));
+		for (int k = 0; k < count; k++) {
+			if (k > 0)
+				sb.append(" UNION ALL ");
+			sb.append("SELECT ").append(k).append(" FROM ").append(plan.getTable()).append(" WHERE ");
+			for (int i = 0; i < keys.length; i++)
+				sb.append(i > 0 ? " AND " : "").append(keys[i]).append("=?");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Get the statement plan.
+	 *
+	 * @return statement plan
+	 */
+	public StatementPlan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * Get the upsert mode.
+	 *
+	 * @return upsert mode
+	 */
+	public String getMode() {
+		return mode;
+	}
+
+	/**
+	 * Amount of records inserted so far; in the native modes, all
+	 * records written.
+	 *
+	 * @return records
+	 */
+	public long getInserted() {
+		return inserted;
+	}
+
+	/**
+	 * Amount of records updated so far; always 0 in the native modes.
+	 *
+	 * @return records
+	 */
+	public long getUpdated() {
+		return updated;
+	}
+
+	/**
+	 * Insert or update all records of a batch.
+	 *
+	 * @param batch batch data
+	 * @throws IfaceXException
+	 */
+	public void upsert(BatchData batch) throws IfaceXException {
+		final BatchCursor cursor = batch.cursor();
+		final String values[][] = new String[cursor.size()][];
+		for (int i = 0; cursor.hasNext(); i++)
+			values[i] = plan.values(cursor.next());
+		try {
+			if (UPSERT_MODE_SELECT.equals(mode))
+				selectAndWrite(values);
+			else
+				writeNative(values);
+			flush();
+			if (commitInterval == JdbcBatchInserter.PER_BATCH)
+				commit();
+		} catch (SQLException e) {
+			throw fail(e);
+		}
+	}
+
+	private void writeNative(String values[][]) throws SQLException {
+		for (int i = 0; i < values.length; i++) {
+			plan.bindInsert(insert, values[i]);
+			insert.addBatch();
+			if (++pendingInserts == rows)
+				flush();
+		}
+	}
+
+	private void selectAndWrite(String values[][]) throws SQLException {
+		final Set<String> existing = existingKeys(values);
+		for (int i = 0; i < values.length; i++) {
+			final String key = key(values[i]);
+			if (key != null && !existing.add(key)) {
+				if (update != null) {
+					plan.bindUpdate(update, values[i]);
+					update.addBatch();
+					pendingUpdates++;
+				}
+			} else {
+				plan.bindInsert(insert, values[i]);
+				insert.addBatch();
+				pendingInserts++;
+			}
+			if (pendingInserts + pendingUpdates >= rows)
+				flush();
+		}
+	}
+
+	private Set<String> existingKeys(String values[][]) throws SQLException {
+		// distinct keys of the batch
+		final Set<String> keys = new HashSet<String>(values.length * 2);
+		final String distinct[][] = new String[values.length][];
+		int count = 0;
+		for (int i = 0; i < values.length; i++) {
+			final String key = key(values[i]);
+			if (key != null && keys.add(key))
+				distinct[count++] = values[i];
+		}
+		final Set<String> existing = new HashSet<String>(values.length * 2);
+		for (int from = 0; from < count; from += keysPerQuery) {
+			final int n = Math.min(keysPerQuery, count - from);
+			final PreparedStatement ps;
+			if (n == keysPerQuery) {
+				if (select == null)
+					select = connection.prepareStatement(selectSql(keysPerQuery));
+				ps = select;
+			} else {
+				if (selectRest == null || selectRestKeys != n) {
+					if (selectRest != null)
+						selectRest.close();
+					selectRest = connection.prepareStatement(selectSql(n));
+					selectRestKeys = n;
+				}
+				ps = selectRest;
+			}
+			int parameter = 1;
+			for (int i = from; i < from + n; i++) {
+				for (int k = 0; k < keySlots.length; k++)
+					plan.bind(ps, parameter++, distinct[i][keySlots[k]]);
+			}
+			try (ResultSet rs = ps.executeQuery()) {
+				// positions of the keys matched by the database
+				while (rs.next())
+					existing.add(key(distinct[from + rs.getInt(1)]));
+			}
+		}
+		return existing;
+	}
+
+	/**
+	 * Key of a record.
+	 *
+	 * @param values values
+	 * @return key or null if a key value is null
+	 */
+	private String key(String values[]) {
+		if (keySlots.length == 1)
+			return values[keySlots[0]];
+		final String key[] = new String[keySlots.length];
+		for (int k = 0; k < key.length; k++)
+			key[k] = values[keySlots[k]];
+		return join(key);
+	}
+
+	private static String join(String key[]) {
+		if (key.length == 1)
+			return key[0];
+		final StringBuilder sb = new StringBuilder();
+		for (int k = 0; k < key.length; k++) {
+			if (key[k] == null)
+				return null;
+			if (k > 0)
+				sb.append(KEY_SEPARATOR);
+			sb.append(key[k]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Write all pending records and commit; call it when the entity is written.
+	 *
+	 * @throws IfaceXException
+	 */
+	public void finish() throws IfaceXException {
+		try {
+			flush();
+			commit();
+		} catch (SQLException e) {
+			throw fail(e);
+		}
+	}
+
+	private void flush() throws SQLException {
+		// inserts first; later records of the same key are updates
+		if (pendingInserts > 0)
+			insert.executeBatch();
+		if (pendingUpdates > 0)
+			update.executeBatch();
+		inserted += pendingInserts;
+		updated += pendingUpdates;
+		uncommitted += pendingInserts + pendingUpdates;
+		pendingInserts = 0;
+		pendingUpdates = 0;
+		if (commitInterval > 0 && uncommitted >= commitInterval)
+			commit();
+	}
+
+	private void commit() throws SQLException {
+		if (commitInterval != JdbcBatchInserter.AUTO && uncommitted > 0)
+			connection.commit();
+		uncommitted = 0;
+	}
+
+	private WriterException fail(SQLException e) {
+		// commands of a failed JDBC batch may be kept by the driver
+		clearBatch(insert, e);
+		clearBatch(update, e);
+		pendingInserts = 0;
+		pendingUpdates = 0;
+		if (commitInterval != JdbcBatchInserter.AUTO) {
+			try {
+				connection.rollback();
+			} catch (SQLException re) {
+				e.addSuppressed(re);
+			}
+			uncommitted = 0;
+		}
+		return new WriterException("Upsert into '" + plan.getTable() + "' failed: " + e.getMessage(), e);
+	}
+
+	/**
+	 * Close the statements and restore the auto-commit setting of
+	 * the connection; the connection itself isn't closed. Pending
+	 * records aren't written, see {@link #finish()}.
+	 */
+	@Override
+	public void close() {
+		try {
+			JdbcBatchInserter.close(insert);
+			JdbcBatchInserter.close(update);
+			JdbcBatchInserter.close(select);
+			JdbcBatchInserter.close(selectRest);
+		} finally {
+			insert = null;
+			update = null;
+			select = null;
+			selectRest = null;
+			if (commitInterval != JdbcBatchInserter.AUTO && autoCommit) {
+				try {
+					connection.setAutoCommit(true);
+				} catch (SQLException e) {
+					// nothing to do
+				}
+			}
+		}
+	}
+
+	private static void clearBatch(PreparedStatement ps, SQLException e) {
+		if (ps == null)
+			return;
+		try {
+			ps.clearBatch();
+		} catch (SQLException ce) {
+			e.addSuppressed(ce);
+		}
+	}
+
+}
@@ -0,0 +1,396 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.RWC;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.WriterMapping;
+
+
+/**
+ * Compiled statement plan of a writer mapping for one source entity.
+ *
+ * The SQL of a database writer only depends on the mapping, not on the
+ * record values; so instead of building SQL fragments for every record
+ * ({@link WriterMapping#getDbFieldsForInsert()},
+ * {@link WriterMapping#getDbValuesForInsert(String[])},
+ * {@link WriterMapping#getDbWhereClauseForUpdate(String[])}), the plan
+ * is compiled once per entity, e.g. in
+ * {@link ch.autumo.ifacex.writer.Writer#initializeEntity(String, ch.autumo.ifacex.IPC, SourceEntity)},
+ * and every record is bound to the parameter slots of one prepared statement,
+ * which the database parses only once:
+ *
+ *   plan = mapping.getStatementPlan(writerConfig);
+ *   insert = connection.prepareStatement(plan.getInsertSql());
+ *   ...
+ *   plan.bindInsert(insert, plan.values(record));
+ *   insert.addBatch();
+ *
+ * Columns are the destination fields for inserts ({@link WriterMapping#getFieldsForInsert()});
+ * without field mappings, the source fields are written one to one. Filter columns
+ * are the destination filter fields ('<rw-prefix>_dest_filter_fields',
+ * {@link RWC#getDestFilterFields(SourceEntity)}); they must be insert columns too.
+ * Without filter fields, the destination unique ID field ('<rw-prefix>_dest_unique_id_field',
+ * {@link RWC#getDestUniqueIdField(SourceEntity)}) is the filter column, if it is written.
+ * Updates set all other columns where the filter columns match.
+ *
+ * Values are bound as strings; use the driver's implicit conversion for
+ * other column types (e.g. 'stringtype=unspecified' for PostgreSQL). With
+ * the extended insert mapping ({@link RWC#getExtendedInsertMapping()}),
+ * the values 'NULL' and 'NOW()' are bound as SQL NULL and the current
+ * timestamp.
+ *
+ * Plans are immutable and thread-safe.
+ */
+public final class StatementPlan {
+
+	private static final String NULL = "NULL";
+	private static final String NOW = "NOW()";
+
+	private final WriterMapping mapping;
+	private final boolean mapped;
+	private final boolean extended;
+
+	private final String table;
+	private final String columns[];
+	private final String filterColumns[];
+	private final int filterSlots[];
+	private final int setSlots[];
+
+	private final String insertSql;
+	private final String updateSql;
+	private final String selectSql;
+
+
+	private StatementPlan(WriterMapping mapping, boolean mapped, boolean extended, String table, String columns[], int filterSlots[]) {
+		this.mapping = mapping;
+		this.mapped = mapped;
+		this.extended = extended;
+		this.table = table;
+		this.columns = columns;
+		this.filterSlots = filterSlots;
+		this.filterColumns = new String[filterSlots.length];
+		for (int i = 0; i < filterSlots.length; i++)
+			filterColumns[i] = columns[filterSlots[i]];
+		this.setSlots = setSlots(columns.length, filterSlots);
+
+		final StringBuilder sb = new StringBuilder(64 + columns.length * 16);
+		sb.append("INSERT INTO ").append(table).append(" (");
+		appendList(sb, columns);
+		sb.append(") VALUES ");
+		appendRow(sb, columns.length);
+		this.insertSql = sb.toString();
+
+		if (filterSlots.length > 0 && setSlots.length > 0) {
+			sb.setLength(0);
+			sb.append("UPDATE ").append(table).append(" SET ");
+			for (int i = 0; i < setSlots.length; i++) {
+				if (i > 0)
+					sb.append(", ");
+				sb.append(columns[setSlots[i]]).append("=?");
+			}
+			appendWhere(sb, filterColumns);
+			this.updateSql = sb.toString();
+		} else {
+			this.updateSql = null;
+		}
+
+		if (filterSlots.length > 0) {
+			sb.setLength(0);
+			sb.append("SELECT ");
+			appendList(sb, filterColumns);
+			sb.append(" FROM ").append(table);
+			appendWhere(sb, filterColumns);
+			this.selectSql = sb.toString();
+		} else {
+			this.selectSql = null;
+		}
+	}
+
+	/**
+	 * Compile the statement plan of a writer mapping.
+	 *
+	 * @param mapping writer mapping of the source entity
+	 * @param config writer configuration
+	 * @return statement plan
+	 * @throws IfaceXException if a filter field isn't a column of the plan
+	 */
+	public static StatementPlan compile(WriterMapping mapping, RWC config) throws IfaceXException {
+		final SourceEntity entity = mapping.getSourceEntity();
+		final boolean mapped = mapping.hasFieldMappings();
+		final String columns[] = mapped ? mapping.getFieldsForInsert() : entity.getSourceFields();
+		if (columns == null || columns.length == 0)
+			throw new IfaceXException("No columns to write for entity '" + entity.getEntity() + "'!");
+		final String table = mapping.hasDestinationEntity()
+				? mapping.getDestinationEntity()
+				: mapping.createConformEntityName(entity.getEntity());
+
+		String filterFields[] = config.getDestFilterFields(entity);
+		if (filterFields == null || filterFields.length == 0) {
+			// unique ID, unless it is generated by the database
+			final String id = config.getDestUniqueIdField(entity);
+			filterFields = id == null || indexOf(columns, id.trim()) < 0 ? null : new String[] { id };
+		}
+		final int filterSlots[] = new int[filterFields == null ? 0 : filterFields.length];
+		for (int i = 0; i < filterSlots.length; i++) {
+			filterSlots[i] = indexOf(columns, filterFields[i].trim());
+			if (filterSlots[i] < 0)
+				throw new IfaceXException("Filter field '" + filterFields[i] + "' of entity '" + entity.getEntity()
+						+ "' isn't written to '" + table + "'; columns are " + Arrays.toString(columns) + "!");
+		}
+		return new StatementPlan(mapping, mapped, config.getExtendedInsertMapping(), table, columns.clone(), filterSlots);
+	}
+
+	private static int indexOf(String columns[], String name) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equalsIgnoreCase(name))
+				return i;
+		}
+		return -1;
+	}
+
+	private static int[] setSlots(int count, int filterSlots[]) {
+		final boolean filter[] = new boolean[count];
+		int n = count;
+		for (int i = 0; i < filterSlots.length; i++) {
+			if (!filter[filterSlots[i]]) {
+				filter[filterSlots[i]] = true;
+				n--;
+			}
+		}
+		final int slots[] = new int[n];
+		for (int i = 0, j = 0; i < count; i++) {
+			if (!filter[i])
+				slots[j++] = i;
+		}
+		return slots;
+	}
+
+	private static void appendList(StringBuilder sb, String names[]) {
+		for (int i = 0; i < names.length; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(names[i]);
+		}
+	}
+
+	private static void appendWhere(StringBuilder sb, String names[]) {
+		sb.append(" WHERE ");
+		for (int i = 0; i < names.length; i++) {
+			if (i > 0)
+				sb.append(" AND ");
+			sb.append(names[i]).append("=?");
+		}
+	}
+
+	/**
+	 * Append one parameter row, e.g. '(?, ?, ?)'.
+	 *
+	 * @param sb string builder
+	 * @param count parameter count
+	 */
+	static void appendRow(StringBuilder sb, int count) {
+		sb.append('(');
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append('?');
+		}
+		sb.append(')');
+	}
+
+	/**
+	 * Get the destination table.
+	 *
+	 * @return table name
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * Get the columns in the order of the insert parameters.
+	 *
+	 * @return column names
+	 */
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * Get the amount of columns.
+	 *
+	 * @return column count
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * Get the filter columns.
+	 *
+	 * @return filter column names; empty if no filter fields are configured
+	 */
+	public String[] getFilterColumns() {
+		return filterColumns.clone();
+	}
+
+	/**
+	 * Get the indexes of the filter columns in {@link #getColumns()}.
+	 *
+	 * @return filter column indexes
+	 */
+	public int[] getFilterSlots() {
+		return filterSlots.clone();
+	}
+
+	/**
+	 * Has this plan filter columns, so records can be updated?
+	 *
+	 * @return true if so
+	 */
+	public boolean hasFilter() {
+		return filterSlots.length > 0;
+	}
+
+	/**
+	 * Get the insert statement, e.g.
+	 * 'INSERT INTO address (id, street, city) VALUES (?, ?, ?)'.
+	 *
+	 * @return insert SQL
+	 */
+	public String getInsertSql() {
+		return insertSql;
+	}
+
+	/**
+	 * Get the update statement, e.g.
+	 * 'UPDATE address SET street=?, city=? WHERE id=?'.
+	 *
+	 * @return update SQL or null if there are no filter columns
+	 * 	or all columns are filter columns
+	 */
+	public String getUpdateSql() {
+		return updateSql;
+	}
+
+	/**
+	 * Get the select statement for existing records, e.g.
+	 * 'SELECT id FROM address WHERE id=?'.
+	 *
+	 * @return select SQL or null if there are no filter columns
+	 */
+	public String getSelectSql() {
+		return selectSql;
+	}
+
+	/**
+	 * Get the values to write for a record; the output mapping is applied.
+	 *
+	 * @param record source record
+	 * @return values in the order of {@link #getColumns()}
+	 * @throws IfaceXException
+	 */
+	public String[] values(String record[]) throws IfaceXException {
+		return mapped ? mapping.getValuesForInsert(record) : record;
+	}
+
+	/**
+	 * Bind values to the insert statement.
+	 *
+	 * @param ps insert statement of {@link #getInsertSql()}
+	 * @param values values, see {@link #values(String[])}
+	 * @throws SQLException
+	 */
+	public void bindInsert(PreparedStatement ps, String values[]) throws SQLException {
+		bindInsert(ps, values, 1);
+	}
+
+	/**
+	 * Bind values to the insert parameters of a statement,
+	 * e.g. a row of a multi-row insert.
+	 *
+	 * @param ps statement
+	 * @param values values, see {@link #values(String[])}
+	 * @param parameter index of the first parameter
+	 * @return index of the next parameter
+	 * @throws SQLException
+	 */
+	public int bindInsert(PreparedStatement ps, String values[], int parameter) throws SQLException {
+		for (int i = 0; i < columns.length; i++)
+			bind(ps, parameter++, values[i]);
+		return parameter;
+	}
+
+	/**
+	 * Bind values to the update statement.
+	 *
+	 * @param ps update statement of {@link #getUpdateSql()}
+	 * @param values values, see {@link #values(String[])}
+	 * @throws SQLException
+	 */
+	public void bindUpdate(PreparedStatement ps, String values[]) throws SQLException {
+		int parameter = 1;
+		for (int i = 0; i < setSlots.length; i++)
+			bind(ps, parameter++, values[setSlots[i]]);
+		for (int i = 0; i < filterSlots.length; i++)
+			bind(ps, parameter++, values[filterSlots[i]]);
+	}
+
+	/**
+	 * Bind the filter values to the select statement.
+	 *
+	 * @param ps select statement of {@link #getSelectSql()}
+	 * @param values values, see {@link #values(String[])}
+	 * @throws SQLException
+	 */
+	public void bindSelect(PreparedStatement ps, String values[]) throws SQLException {
+		for (int i = 0; i < filterSlots.length; i++)
+			bind(ps, i + 1, values[filterSlots[i]]);
+	}
+
+	/**
+	 * Bind one value.
+	 *
+	 * @param ps statement
+	 * @param parameter parameter index
+	 * @param value value
+	 * @throws SQLException
+	 */
+	void bind(PreparedStatement ps, int parameter, String value) throws SQLException {
+		if (value == null) {
+			ps.setNull(parameter, Types.VARCHAR);
+		} else if (extended && NULL.equalsIgnoreCase(value)) {
+			ps.setNull(parameter, Types.VARCHAR);
+		} else if (extended && NOW.equalsIgnoreCase(value)) {
+			ps.setTimestamp(parameter, new Timestamp(System.currentTimeMillis()));
+		} else {
+			ps.setString(parameter, value);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return insertSql;
+	}
+
+}
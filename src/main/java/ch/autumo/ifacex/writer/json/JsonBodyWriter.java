@@ -0,0 +1,347 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.WriterMapping;
+import ch.autumo.ifacex.batch.BatchCursor;
+import ch.autumo.ifacex.batch.BatchData;
+
+
+/**
+ * Streaming JSON bodies of a writer mapping for one source entity.
+ *
+ * Writes the UTF-8 JSON object of a record, e.g.
+ * '{"param1":"value1","param2":"value2","param3":"value3"}', or the
+ * JSON array of all records of a batch directly into an output stream
+ * or byte buffer, instead of building a string
+ * ({@link WriterMapping#createJSONBodyForInsert(String[])}) or a map
+ * ({@link WriterMapping#getMapForUpdateAndInsert(String[])}) for every
+ * record. Field names are escaped and encoded once, when the writer
+ * is created; see {@link WriterMapping#getJSONBodyWriter()}.
+ *
+ * Values are JSON strings, null values are JSON null.
+ *
+ * A JSON body writer is thread-safe, e.g. for records written
+ * concurrently by a {@link ch.autumo.ifacex.writer.RecordExecutor};
+ * records are encoded into a buffer per thread that is reused.
+ */
+public final class JsonBodyWriter {
+
+	private static final byte NULL[] = { 'n', 'u', 'l', 'l' };
+	private static final byte HEX[] = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+	// flush threshold of batch arrays
+	private static final int CHUNK = 8192;
+
+	// max. size of a buffer kept for reuse
+	private static final int MAX_RETAINED = 64 * 1024;
+
+	private final String fields[];
+	private final WriterMapping mapping;
+
+	// '{"field1":', ',"field2":', ...
+	private final byte prefixes[][];
+	private final int recordSize;
+
+	// record buffer per thread
+	private final ThreadLocal<Buffer> buffers;
+
+
+	private JsonBodyWriter(String fields[], WriterMapping mapping) {
+		this.fields = fields.clone();
+		this.mapping = mapping;
+		this.prefixes = new byte[fields.length][];
+		final Buffer b = new Buffer(64);
+		int size = 2;
+		for (int i = 0; i < fields.length; i++) {
+			b.len = 0;
+			b.put(i == 0 ? (byte) '{' : (byte) ',');
+			string(fields[i], b);
+			b.put((byte) ':');
+			prefixes[i] = Arrays.copyOf(b.bytes, b.len);
+			size += b.len + 8;
+		}
+		this.recordSize = size;
+		this.buffers = ThreadLocal.withInitial(() -> new Buffer(recordSize));
+	}
+
+	/**
+	 * Create a JSON body writer for plain values, without output mapping.
+	 *
+	 * @param fields field names in the order of the values
+	 * @return JSON body writer
+	 */
+	public static JsonBodyWriter of(String fields[]) {
+		return new JsonBodyWriter(fields, null);
+	}
+
+	/**
+	 * Create a JSON body writer for inserts: The fields are the insert fields
+	 * of the mapping, the output mapping is applied to the source records.
+	 * Without field mappings, the source fields are written one to one.
+	 *
+	 * @param mapping writer mapping
+	 * @return JSON body writer
+	 * @throws IfaceXException
+	 */
+	public static JsonBodyWriter forInsert(WriterMapping mapping) throws IfaceXException {
+		if (!mapping.hasFieldMappings())
+			return withoutMapping(mapping.getSourceEntity());
+		return new JsonBodyWriter(mapping.getFieldsForInsert(), mapping);
+	}
+
+	/**
+	 * Create a JSON body writer for the source fields of an entity; the
+	 * streaming equivalent of {@link WriterMapping#createJSONBodyWithoutMapping(String[], SourceEntity)}.
+	 *
+	 * @param entity source entity
+	 * @return JSON body writer
+	 */
+	public static JsonBodyWriter withoutMapping(SourceEntity entity) {
+		return new JsonBodyWriter(entity.getSourceFields(), null);
+	}
+
+	/**
+	 * Get the field names.
+	 *
+	 * @return field names
+	 */
+	public String[] getFields() {
+		return fields.clone();
+	}
+
+	/**
+	 * Write the JSON object of a record.
+	 *
+	 * @param record source record
+	 * @param out output stream
+	 * @throws IfaceXException if the mapping fails
+	 * @throws IOException
+	 */
+	public void write(String record[], OutputStream out) throws IfaceXException, IOException {
+		final Buffer b = buffer();
+		try {
+			object(record, b);
+			out.write(b.bytes, 0, b.len);
+		} finally {
+			release(b);
+		}
+	}
+
+	/**
+	 * Write the JSON object of a record into a byte buffer.
+	 *
+	 * @param record source record
+	 * @param buffer byte buffer
+	 * @return true if written, false if the record doesn't fit into the
+	 * 	remaining buffer; nothing is written then
+	 * @throws IfaceXException if the mapping fails
+	 */
+	public boolean write(String record[], ByteBuffer buffer) throws IfaceXException {
+		final Buffer b = buffer();
+		try {
+			object(record, b);
+			if (b.len > buffer.remaining())
+				return false;
+			buffer.put(b.bytes, 0, b.len);
+			return true;
+		} finally {
+			release(b);
+		}
+	}
+
+	/**
+	 * Get the JSON object of a record.
+	 *
+	 * @param record source record
+	 * @return UTF-8 JSON
+	 * @throws IfaceXException if the mapping fails
+	 */
+	public byte[] toBytes(String record[]) throws IfaceXException {
+		final Buffer b = buffer();
+		try {
+			object(record, b);
+			return Arrays.copyOf(b.bytes, b.len);
+		} finally {
+			release(b);
+		}
+	}
+
+	/**
+	 * Write the JSON array of all records of a batch, e.g.
+	 * '[{"id":"1","name":"a"},{"id":"2","name":"b"}]'.
+	 *
+	 * @param batch batch data
+	 * @param out output stream
+	 * @throws IfaceXException if the mapping fails
+	 * @throws IOException
+	 */
+	public void writeArray(BatchData batch, OutputStream out) throws IfaceXException, IOException {
+		final BatchCursor cursor = batch.cursor();
+		writeArray(cursor, cursor.size(), out);
+	}
+
+	/**
+	 * Write the JSON array of the next records, e.g. a chunk
+	 * of a batch with a {@link BatchCursor}.
+	 *
+	 * @param records records
+	 * @param max max. records to write
+	 * @param out output stream
+	 * @return amount of records written
+	 * @throws IfaceXException if the mapping fails
+	 * @throws IOException
+	 */
+	public int writeArray(Iterator<String[]> records, int max, OutputStream out) throws IfaceXException, IOException {
+		final Buffer b = new Buffer(CHUNK + recordSize);
+		b.put((byte) '[');
+		int count = 0;
+		while (count < max && records.hasNext()) {
+			if (count++ > 0)
+				b.put((byte) ',');
+			object(records.next(), b);
+			if (b.len >= CHUNK) {
+				out.write(b.bytes, 0, b.len);
+				b.len = 0;
+			}
+		}
+		b.put((byte) ']');
+		out.write(b.bytes, 0, b.len);
+		return count;
+	}
+
+	private Buffer buffer() {
+		final Buffer b = buffers.get();
+		b.len = 0;
+		return b;
+	}
+
+	private void release(Buffer b) {
+		// don't keep buffers grown by huge records
+		if (b.bytes.length > MAX_RETAINED)
+			buffers.remove();
+	}
+
+	private void object(String record[], Buffer b) throws IfaceXException {
+		final String values[] = mapping == null ? record : mapping.getValuesForInsert(record);
+		if (prefixes.length == 0) {
+			b.put((byte) '{');
+		} else {
+			for (int i = 0; i < prefixes.length; i++) {
+				b.put(prefixes[i]);
+				final String value = i < values.length ? values[i] : null;
+				if (value == null)
+					b.put(NULL);
+				else
+					string(value, b);
+			}
+		}
+		b.put((byte) '}');
+	}
+
+	/**
+	 * Write a quoted and escaped JSON string in UTF-8.
+	 *
+	 * @param s string
+	 * @param b buffer
+	 */
+	static void string(String s, Buffer b) {
+		final int length = s.length();
+		// worst case: 3 bytes per char, 6 per escaped control char
+		b.ensure(length * 6 + 2);
+		final byte bytes[] = b.bytes;
+		int p = b.len;
+		bytes[p++] = '"';
+		for (int i = 0; i < length; i++) {
+			final char c = s.charAt(i);
+			if (c >= 0x20 && c < 0x80) {
+				if (c == '"' || c == '\\')
+					bytes[p++] = '\\';
+				bytes[p++] = (byte) c;
+			} else if (c < 0x20) {
+				bytes[p++] = '\\';
+				switch (c) {
+					case '\n': bytes[p++] = 'n'; break;
+					case '\r': bytes[p++] = 'r'; break;
+					case '\t': bytes[p++] = 't'; break;
+					case '\b': bytes[p++] = 'b'; break;
+					case '\f': bytes[p++] = 'f'; break;
+					default:
+						bytes[p++] = 'u';
+						bytes[p++] = '0';
+						bytes[p++] = '0';
+						bytes[p++] = HEX[c >> 4];
+						bytes[p++] = HEX[c & 0xF];
+				}
+			} else if (c < 0x800) {
+				bytes[p++] = (byte) (0xC0 | (c >> 6));
+				bytes[p++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+				final int cp = Character.toCodePoint(c, s.charAt(++i));
+				bytes[p++] = (byte) (0xF0 | (cp >> 18));
+				bytes[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				bytes[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				bytes[p++] = (byte) (0x80 | (cp & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogate, as String#getBytes(UTF_8) does
+				bytes[p++] = '?';
+			} else {
+				bytes[p++] = (byte) (0xE0 | (c >> 12));
+				bytes[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[p++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		bytes[p++] = '"';
+		b.len = p;
+	}
+
+	/**
+	 * Growable byte array.
+	 */
+	static final class Buffer {
+
+		private byte bytes[];
+		private int len = 0;
+
+		Buffer(int capacity) {
+			this.bytes = new byte[Math.max(16, capacity)];
+		}
+
+		void ensure(int n) {
+			if (len + n > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, len + n));
+		}
+
+		void put(byte b) {
+			ensure(1);
+			bytes[len++] = b;
+		}
+
+		void put(byte b[]) {
+			ensure(b.length);
+			System.arraycopy(b, 0, bytes, len, b.length);
+			len += b.length;
+		}
+	}
+
+}
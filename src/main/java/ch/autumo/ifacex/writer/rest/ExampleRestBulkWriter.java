@@ -0,0 +1,83 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer.rest;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.Processor;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.batch.BatchData;
+import ch.autumo.ifacex.writer.Writer;
+import ch.autumo.ifacex.writer.WriterException;
+
+
+/**
+ * EXAMPLE REST writer that posts batches to a bulk endpoint.
+ * 
+ * Shows how a writer uses the {@link RestBulkPoster}; the poster
+ * is a helper that doesn't do anything on its own: The writer checks
+ * the bulk mode ('<rw-prefix>_bulk=yes'), creates a poster per entity
+ * and posts every batch with it.
+ */
+public class ExampleRestBulkWriter implements Writer {
+
+	private HttpClient client = null;
+	private RestBulkPoster poster = null;
+	
+	
+	@Override
+	public void initialize(String writerName, IPC config, Processor processor) throws IfaceXException {
+		
+		// This writer only posts in bulk mode; a writer supporting both
+		// posts every record by itself if the bulk mode is off
+		if (!RestBulkPoster.isBulk(config.getWriterConfig(writerName)))
+			throw new WriterException("Writer '" + writerName + "' needs the bulk mode ('" + RestBulkPoster.KEY_BULK + "=yes')!");
+		
+		// One HTTP client for all entities
+		client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+	}
+
+	@Override
+	public void initializeEntity(String writerName, IPC config, SourceEntity entity) throws IfaceXException {
+		
+		// Bulk endpoint, JSON bodies and headers of the entity
+		poster = RestBulkPoster.create(writerName, config, entity, client);
+	}
+
+	@Override
+	public void writeHeader(String writerName, IPC config, SourceEntity entity) throws IfaceXException {
+		
+		// No header for REST APIs
+	}
+
+	@Override
+	public void writeBatchData(String writerName, IPC config, BatchData batch, SourceEntity entity) throws IfaceXException {
+		
+		// Post the whole batch in chunks of '<rw-prefix>_bulk_size' records
+		poster.post(batch);
+	}
+	
+	@Override
+	public void close(String writerName) throws IfaceXException {
+		
+		// The HTTP client has no resources to close
+		poster = null;
+		client = null;
+	}
+
+}
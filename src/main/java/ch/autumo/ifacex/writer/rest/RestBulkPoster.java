@@ -0,0 +1,376 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+import ch.autumo.commons.utils.UtilsException;
+import ch.autumo.ifacex.IPC;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.RWC;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.WriterMapping;
+import ch.autumo.ifacex.batch.BatchCursor;
+import ch.autumo.ifacex.batch.BatchData;
+import ch.autumo.ifacex.writer.RecordExecutor;
+import ch.autumo.ifacex.writer.WriterException;
+import ch.autumo.ifacex.writer.json.JsonBodyWriter;
+
+
+/**
+ * Posts batches as JSON arrays to REST APIs with bulk endpoints,
+ * instead of one HTTP request per record.
+ *
+ * Bulk mode is switched on with '<rw-prefix>_bulk' (yes/no, see {@link #isBulk(RWC)}).
+ * Every batch is posted in chunks of '<rw-prefix>_bulk_size' records (default 0:
+ * the whole batch in one request) as '[{...},{...},...]'; the objects are the
+ * JSON insert bodies of the mapping ({@link JsonBodyWriter}).
+ *
+ * The URL is '<rw-prefix>_url' followed by '<rw-prefix>_bulk_url' or, if not
+ * configured, by the entities URL of the mapping ({@link RWC#getEntitiesUrl(WriterMapping)}).
+ * The API key ('<rw-prefix>_api_key_name' and '<rw-prefix>_api_key') and the
+ * additional headers of the entity are sent; further headers, e.g. an OAuth
+ * bearer token, can be added with {@link #setHeader(String, String)}.
+ *
+ * Responses are checked by a {@link ResponseMapper}; the default one fails
+ * the whole chunk for non-2xx status codes. APIs that report failures per item
+ * can map them to {@link WriterException}s with a code and raw message.
+ *
+ * In the writer execution mode 'virtual' ({@link IPC#getWriterExecMode()}),
+ * the chunks of a batch are posted concurrently, limited by
+ * '<rw-prefix>_max_concurrency' ({@link RecordExecutor}).
+ *
+ * The poster is a helper a writer calls explicitly: It checks the bulk
+ * mode with {@link #isBulk(RWC)}, creates a poster per entity with
+ * {@link #create(String, IPC, SourceEntity, HttpClient)} and posts every
+ * batch with {@link #post(BatchData)}; see {@link ExampleRestBulkWriter}.
+ */
+public final class RestBulkPoster {
+
+	/**
+	 * Post-fix for the bulk mode: '<rw-prefix>_bulk'.
+	 */
+	public static final String KEY_BULK = "_bulk";
+
+	/**
+	 * Post-fix for the records per request: '<rw-prefix>_bulk_size'.
+	 */
+	public static final String KEY_BULK_SIZE = "_bulk_size";
+
+	/**
+	 * Post-fix for the relative bulk URL: '<rw-prefix>_bulk_url'.
+	 */
+	public static final String KEY_BULK_URL = "_bulk_url";
+
+	/**
+	 * Max. suppressed item failures added to the thrown failure.
+	 */
+	private static final int MAX_SUPPRESSED = 100;
+
+
+	/**
+	 * Maps the response of a bulk request to failures per item.
+	 */
+	@FunctionalInterface
+	public interface ResponseMapper {
+
+		/**
+		 * Map a response.
+		 *
+		 * @param status HTTP status code
+		 * @param body response body
+		 * @param items amount of records posted
+		 * @return failures in the order the records have been posted with
+		 * 	null entries for written records; null if all have been written
+		 * @throws WriterException if the whole request failed
+		 */
+		WriterException[] map(int status, String body, int items) throws WriterException;
+	}
+
+	/**
+	 * Default response mapper: All records of a request are written with
+	 * a 2xx status code; otherwise, the request failed with the status
+	 * code as {@link WriterException#getCode()} and the response body as
+	 * {@link WriterException#getRawMessage()}.
+	 */
+	public static final ResponseMapper STATUS_MAPPER = (status, body, items) -> {
+		if (status >= 200 && status < 300)
+			return null;
+		final WriterException e = new WriterException("Bulk request of " + items + " records failed with HTTP status " + status + "!", status);
+		e.setRawMessage(body);
+		throw e;
+	};
+
+
+	private final HttpClient client;
+	private final URI uri;
+	private final JsonBodyWriter json;
+	private final String entityName;
+	private final int bulkSize;
+	private final int maxConcurrency;
+	private final Duration timeout;
+	private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+	private ResponseMapper mapper = STATUS_MAPPER;
+
+
+	/**
+	 * Create a bulk poster.
+	 *
+	 * @param client HTTP client
+	 * @param uri bulk endpoint
+	 * @param json JSON body writer of the entity
+	 * @param entityName source entity name for messages
+	 * @param bulkSize records per request; 0 for whole batches
+	 * @param maxConcurrency max. concurrent requests per batch
+	 * @param timeout request timeout or null
+	 */
+	public RestBulkPoster(HttpClient client, URI uri, JsonBodyWriter json, String entityName, int bulkSize, int maxConcurrency, Duration timeout) {
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException("Max. concurrency must be at least 1, but is " + maxConcurrency + "!");
+		this.client = client;
+		this.uri = uri;
+		this.json = json;
+		this.entityName = entityName;
+		this.bulkSize = Math.max(0, bulkSize);
+		this.maxConcurrency = maxConcurrency;
+		this.timeout = timeout;
+		this.headers.put("Content-Type", "application/json; charset=UTF-8");
+		this.headers.put("Accept", "application/json");
+	}
+
+	/**
+	 * Create a bulk poster for an entity according to the writer configuration.
+	 *
+	 * @param writerName writer name
+	 * @param config IPC
+	 * @param entity source entity
+	 * @param client HTTP client; share it between entities
+	 * @return bulk poster
+	 * @throws IfaceXException if the URL is invalid or the API key can't be decrypted
+	 */
+	public static RestBulkPoster create(String writerName, IPC config, SourceEntity entity, HttpClient client) throws IfaceXException {
+		final RWC rwc = config.getWriterConfig(writerName);
+		final WriterMapping mapping = rwc.getMapping(entity);
+
+		String path = rwc.getConfig(KEY_BULK_URL);
+		if (path == null || path.trim().length() == 0)
+			path = rwc.getEntitiesUrl(mapping);
+		final String base = rwc.getUrl();
+		final URI uri;
+		try {
+			uri = URI.create((base == null ? "" : base) + (path == null ? "" : path.trim()));
+		} catch (IllegalArgumentException e) {
+			throw new WriterException("Invalid bulk URL for entity '" + entity.getEntity() + "': " + e.getMessage(), e);
+		}
+
+		int maxConcurrency = 1;
+		if (RecordExecutor.EXEC_MODE_VIRTUAL.equalsIgnoreCase(config.getWriterExecMode()))
+			maxConcurrency = Math.max(1, rwc.getNumber(RecordExecutor.KEY_MAX_CONCURRENCY, RecordExecutor.DEFAULT_MAX_CONCURRENCY));
+		final int seconds = rwc.getTimeout();
+
+		final RestBulkPoster poster = new RestBulkPoster(client, uri, mapping.getJSONBodyWriter(), entity.getEntity(),
+				rwc.getNumber(KEY_BULK_SIZE, 0), maxConcurrency, seconds > 0 ? Duration.ofSeconds(seconds) : null);
+
+		final String keyName = rwc.getApiKeyName();
+		if (keyName != null && keyName.trim().length() > 0) {
+			try {
+				poster.setHeader(keyName.trim(), rwc.getApiKey());
+			} catch (UtilsException e) {
+				throw new WriterException("Couldn't decrypt API key of writer '" + writerName + "'!", e);
+			}
+		}
+		final List<String[]> additional = rwc.getAdditionalHeaders(entity);
+		if (additional != null) {
+			for (String header[] : additional) {
+				if (header.length == 2)
+					poster.setHeader(header[0].trim(), header[1].trim());
+			}
+		}
+		return poster;
+	}
+
+	/**
+	 * Is the bulk mode configured for a writer?
+	 *
+	 * @param config writer configuration
+	 * @return true if so
+	 */
+	public static boolean isBulk(RWC config) {
+		return config.isYes(KEY_BULK, false);
+	}
+
+	/**
+	 * Set a request header.
+	 *
+	 * @param name header name
+	 * @param value header value
+	 * @return this poster
+	 */
+	public RestBulkPoster setHeader(String name, String value) {
+		headers.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Set the response mapper; default: {@link #STATUS_MAPPER}.
+	 *
+	 * @param mapper response mapper
+	 * @return this poster
+	 */
+	public RestBulkPoster setResponseMapper(ResponseMapper mapper) {
+		this.mapper = mapper;
+		return this;
+	}
+
+	/**
+	 * Get the bulk endpoint.
+	 *
+	 * @return URI
+	 */
+	public URI getUri() {
+		return uri;
+	}
+
+	/**
+	 * Post all records of a batch and wait until all requests are done.
+	 *
+	 * The first failure is thrown, when all requests are done; item
+	 * failures are thrown as one failure with the code and raw message
+	 * of the first failed item, all item failures are added as
+	 * suppressed exceptions.
+	 *
+	 * @param batch batch data
+	 * @throws IfaceXException
+	 */
+	public void post(BatchData batch) throws IfaceXException {
+		final BatchCursor cursor = batch.cursor();
+		final int chunk = bulkSize > 0 ? bulkSize : Math.max(1, cursor.size());
+		final List<Failure> failures = new ArrayList<Failure>();
+		final Semaphore permits = new Semaphore(maxConcurrency);
+		final List<CompletableFuture<Void>> requests = new ArrayList<CompletableFuture<Void>>();
+		try {
+			while (cursor.hasNext()) {
+				final int first = cursor.position();
+				final ByteArrayOutputStream body = new ByteArrayOutputStream(chunk * 64);
+				final int items = json.writeArray(cursor, chunk, body);
+				final HttpRequest request = request(body.toByteArray());
+				if (maxConcurrency == 1) {
+					final HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+					check(response, first, items, failures);
+				} else {
+					permits.acquire();
+					requests.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+							.whenComplete((r, t) -> permits.release())
+							.thenAccept(r -> check(r, first, items, failures)));
+				}
+			}
+			for (CompletableFuture<Void> request : requests) {
+				try {
+					request.join();
+				} catch (CompletionException e) {
+					final Throwable cause = e.getCause();
+					synchronized (failures) {
+						failures.add(new Failure(-1, new WriterException("Bulk request to '" + uri + "' failed: " + cause.getMessage(), cause)));
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new WriterException("Bulk request to '" + uri + "' failed: " + e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WriterException("Interrupted while posting records of entity '" + entityName + "'!", e);
+		} finally {
+			for (CompletableFuture<Void> request : requests)
+				request.cancel(true);
+		}
+		if (!failures.isEmpty()) {
+			// request failures first, then items in batch order
+			failures.sort((a, b) -> Integer.compare(a.record, b.record));
+			throw failure(failures, cursor.size());
+		}
+	}
+
+	private HttpRequest request(byte body[]) {
+		final HttpRequest.Builder builder = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofByteArray(body));
+		if (timeout != null)
+			builder.timeout(timeout);
+		for (Map.Entry<String, String> header : headers.entrySet())
+			builder.setHeader(header.getKey(), header.getValue());
+		return builder.build();
+	}
+
+	private void check(HttpResponse<String> response, int first, int items, List<Failure> failures) {
+		final WriterException errors[];
+		try {
+			errors = mapper.map(response.statusCode(), response.body(), items);
+		} catch (WriterException e) {
+			synchronized (failures) {
+				failures.add(new Failure(-1, e));
+			}
+			return;
+		}
+		if (errors == null)
+			return;
+		synchronized (failures) {
+			for (int i = 0; i < errors.length; i++) {
+				if (errors[i] != null)
+					failures.add(new Failure(first + i, errors[i]));
+			}
+		}
+	}
+
+	private WriterException failure(List<Failure> failures, int records) {
+		final Failure f = failures.get(0);
+		final WriterException e;
+		if (f.record < 0) {
+			e = f.exception;
+		} else {
+			e = new WriterException(failures.size() + " of " + records + " records of entity '" + entityName
+					+ "' failed; first record " + f.record + ": " + f.exception.getMessage(), f.exception.getCode());
+			e.setRawMessage(f.exception.getRawMessage());
+		}
+		for (int i = f.record < 0 ? 1 : 0; i < failures.size() && i < MAX_SUPPRESSED; i++)
+			e.addSuppressed(failures.get(i).exception);
+		return e;
+	}
+
+
+	/**
+	 * Failed item or request.
+	 */
+	private static final class Failure {
+		private final int record;
+		private final WriterException exception;
+		private Failure(int record, WriterException exception) {
+			this.record = record;
+			this.exception = exception;
+		}
+	}
+
+}
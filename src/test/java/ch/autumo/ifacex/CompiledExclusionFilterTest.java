@@ -0,0 +1,176 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * Exclusion rules: parser, predicates and the adaptive order
+ * of combined predicates.
+ */
+public class CompiledExclusionFilterTest {
+
+	private static final String FIELDS[] = {"id", "name", "country", "zip", "position"};
+
+	private static boolean excludes(String rules, String... values) throws IfaceXException {
+		return CompiledExclusionFilter.compile(rules, FIELDS).excludes(values);
+	}
+
+	private static void assertInvalid(String rules) {
+		try {
+			CompiledExclusionFilter.compile(rules, FIELDS);
+			fail("Invalid rules accepted: " + rules);
+		} catch (IfaceXException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void comparisons() throws IfaceXException {
+		assertTrue(excludes("country = 'CH'", "1", "a", "CH"));
+		assertFalse(excludes("country = 'CH'", "1", "a", "DE"));
+		assertTrue(excludes("country != 'CH'", "1", "a", "DE"));
+		assertTrue(excludes("country <> 'CH'", "1", "a", "DE"));
+		assertTrue(excludes("id = 7", "7"));
+		assertTrue(excludes("id < 10", "9"));
+		assertFalse(excludes("id < 10", "10"));
+		assertTrue(excludes("id <= 10", "10"));
+		assertTrue(excludes("id > 10", "11"));
+		assertTrue(excludes("id >= 10", "10"));
+		assertFalse(excludes("id >= 10", "abc"));
+	}
+
+	@Test
+	public void ranges() throws IfaceXException {
+		// numeric: 999 < 1000, lexically it wouldn't be
+		assertFalse(excludes("zip BETWEEN 1000 AND 1999", "1", "a", "CH", "999"));
+		assertTrue(excludes("zip BETWEEN 1000 AND 1999", "1", "a", "CH", " 1999 "));
+		assertFalse(excludes("zip BETWEEN 1000 AND 1999", "1", "a", "CH", "2000"));
+		// lexical
+		assertTrue(excludes("name BETWEEN 'a' AND 'c'", "1", "b"));
+		assertFalse(excludes("name BETWEEN 'a' AND 'c'", "1", "d"));
+	}
+
+	@Test
+	public void sets() throws IfaceXException {
+		assertTrue(excludes("position IN ('CEO', 'CFO')", "1", "a", "CH", "8000", "CFO"));
+		assertFalse(excludes("position IN ('CEO', 'CFO')", "1", "a", "CH", "8000", "CTO"));
+		assertTrue(excludes("position NOT IN ('CEO', 'CFO')", "1", "a", "CH", "8000", "CTO"));
+	}
+
+	@Test
+	public void regularExpressions() throws IfaceXException {
+		assertTrue(excludes("name ~ '^[0-9]+$'", "1", "123"));
+		assertFalse(excludes("name ~ '^[0-9]+$'", "1", "12a"));
+		assertTrue(excludes("name ~ 'x'", "1", "axb"));
+	}
+
+	@Test
+	public void nullAndEmpty() throws IfaceXException {
+		assertTrue(excludes("zip IS NULL", "1", "a"));
+		assertFalse(excludes("zip IS NULL", "1", "a", "CH", ""));
+		assertTrue(excludes("zip IS EMPTY", "1", "a", "CH", " \t"));
+		assertTrue(excludes("zip IS EMPTY", "1", "a"));
+		assertTrue(excludes("zip IS NOT EMPTY", "1", "a", "CH", "8000"));
+		assertTrue(excludes("zip IS NOT NULL", "1", "a", "CH", ""));
+	}
+
+	@Test
+	public void combinations() throws IfaceXException {
+		final String rules = "position IN ('CEO', 'CFO') OR (country = 'CH' AND NOT zip BETWEEN 1000 AND 1999)";
+		assertTrue(excludes(rules, "1", "a", "DE", "1000", "CEO"));
+		assertTrue(excludes(rules, "1", "a", "CH", "8000", "CTO"));
+		assertFalse(excludes(rules, "1", "a", "CH", "1500", "CTO"));
+		assertFalse(excludes(rules, "1", "a", "DE", "8000", "CTO"));
+		// AND binds stronger than OR, keywords are case-insensitive
+		assertTrue(excludes("id = 1 or id = 2 and name = 'x'", "1", "y"));
+		assertFalse(excludes("(id = 1 or id = 2) and name = 'x'", "1", "y"));
+		assertTrue(excludes("not not id = 1", "1"));
+	}
+
+	@Test
+	public void quoting() throws IfaceXException {
+		assertTrue(excludes("name = 'O''Brien'", "1", "O'Brien"));
+		assertTrue(excludes("name = 'a OR b'", "1", "a OR b"));
+		final CompiledExclusionFilter filter = CompiledExclusionFilter.compile("\"first name\" = 'x'", new String[] {"first name"});
+		assertTrue(filter.excludes(new String[] {"x"}));
+	}
+
+	@Test
+	public void invalidRules() {
+		assertInvalid("unknown = 'x'");
+		assertInvalid("name = 'x");
+		assertInvalid("name ~ '['");
+		assertInvalid("name = 'x' garbage");
+		assertInvalid("name BETWEEN 1 2");
+		assertInvalid("(name = 'x'");
+		assertInvalid("name");
+		assertInvalid("name IS 'x'");
+		assertInvalid("= 'x'");
+	}
+
+	@Test
+	public void addRecordRebindsToOtherFields() throws IfaceXException {
+		final CompiledExclusionFilter filter = CompiledExclusionFilter.compile("country = 'CH'", FIELDS);
+		assertFalse(filter.addRecord(FIELDS, new String[] {"1", "a", "CH"}));
+		assertTrue(filter.addRecord(FIELDS, new String[] {"1", "a", "DE"}));
+		// other field order; unknown fields are missing
+		final String other[] = {"country", "id"};
+		assertFalse(filter.addRecord(other, new String[] {"CH", "1"}));
+		assertTrue(filter.addRecord(new String[] {"id"}, new String[] {"1"}));
+	}
+
+	@Test
+	public void predicatesAreReorderedBySelectivity() throws IfaceXException {
+		final CompiledExclusionFilter filter = CompiledExclusionFilter.compile("name = 'x' AND country = 'CH'", FIELDS);
+		assertEquals("(name = 'x' AND country = 'CH')", filter.toString());
+		// name always passes, country decides
+		for (int i = 0; i < 10000; i++)
+			assertFalse(filter.excludes(new String[] {"1", "x", "DE"}));
+		assertEquals("(country = 'CH' AND name = 'x')", filter.toString());
+		assertTrue(filter.excludes(new String[] {"1", "x", "CH"}));
+		// a copy starts with its own statistics
+		assertEquals("(name = 'x' AND country = 'CH')", filter.copy().toString());
+	}
+
+	@Test
+	public void reorderingKeepsResults() throws IfaceXException {
+		final CompiledExclusionFilter filter = CompiledExclusionFilter.compile(
+				"(name ~ 'a' OR country IN ('CH', 'AT') OR zip < 3000) AND NOT position = 'CEO'", FIELDS);
+		final String countries[] = {"CH", "AT", "DE", "FR"};
+		final String positions[] = {"CEO", "CTO", "DEV"};
+		final Random random = new Random(7);
+		for (int i = 0; i < 50000; i++) {
+			// selectivity changes half way
+			final boolean late = i > 25000;
+			final String name = random.nextInt(10) < (late ? 1 : 8) ? "anna" : "bob";
+			final String country = countries[random.nextInt(late ? 4 : 2)];
+			final int zip = 1000 + random.nextInt(8000);
+			final String position = positions[random.nextInt(3)];
+			final boolean expected = (name.contains("a") || country.equals("CH") || country.equals("AT") || zip < 3000)
+					&& !position.equals("CEO");
+			assertEquals(expected, filter.excludes(new String[] {"1", name, country, String.valueOf(zip), position}));
+		}
+	}
+
+}
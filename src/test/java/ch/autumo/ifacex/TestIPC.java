@@ -0,0 +1,209 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Offline IPC for tests; no configuration files needed.
+ * 
+ * Configuration values can be set with {@link #set(String, String)}.
+ */
+public class TestIPC implements IPC {
+
+	private final Map<String, String> values = new HashMap<String, String>();
+	private final RWC readerConfig;
+	private RWC writerConfig;
+	
+	private String delimiter = ";";
+	private String enclosure = "\"";
+	
+
+	/**
+	 * Create a test IPC.
+	 */
+	public TestIPC() {
+		readerConfig = TestRWC.create(values);
+		writerConfig = TestRWC.create(values);
+	}
+	
+	/**
+	 * Set a configuration value.
+	 * 
+	 * @param key key
+	 * @param value value
+	 * @return this IPC
+	 */
+	public TestIPC set(String key, String value) {
+		values.put(key, value);
+		return this;
+	}
+
+	/**
+	 * Set the writer configuration, e.g. with specific method
+	 * results, see {@link TestRWC#create(Map, Map)}.
+	 * 
+	 * @param writerConfig writer configuration
+	 * @return this IPC
+	 */
+	public TestIPC writer(RWC writerConfig) {
+		this.writerConfig = writerConfig;
+		return this;
+	}
+
+	/**
+	 * Set CSV delimiter and enclosure.
+	 * 
+	 * @param delimiter delimiter
+	 * @param enclosure enclosure, empty for none
+	 * @return this IPC
+	 */
+	public TestIPC csv(String delimiter, String enclosure) {
+		this.delimiter = delimiter;
+		this.enclosure = enclosure;
+		return this;
+	}
+	
+	@Override
+	public String getReaderName() {
+		return "test_in";
+	}
+
+	@Override
+	public String[] getWriterNames() {
+		return new String[] {"test_out"};
+	}
+
+	@Override
+	public RWC getReaderConfig() {
+		return readerConfig;
+	}
+
+	@Override
+	public RWC getWriterConfig(String writerName) {
+		return writerConfig;
+	}
+
+	/**
+	 * Reference implementation: Split by delimiter, 
+	 * remove enclosures.
+	 */
+	@Override
+	public String[] getCSVSepValues(String line) {
+		final List<String> result = new ArrayList<String>();
+		final char delim = delimiter.charAt(0);
+		final char encl = enclosure.length() == 0 ? 0 : enclosure.charAt(0);
+		final StringBuilder value = new StringBuilder();
+		boolean enclosed = false;
+		for (int i = 0; i < line.length(); i++) {
+			final char c = line.charAt(i);
+			if (encl != 0 && c == encl) {
+				if (enclosed && i + 1 < line.length() && line.charAt(i + 1) == encl) {
+					value.append(c);
+					i++;
+				} else {
+					enclosed = !enclosed;
+				}
+			} else if (c == delim && !enclosed) {
+				result.add(value.toString());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		result.add(value.toString());
+		return result.toArray(new String[result.size()]);
+	}
+
+	@Override
+	public String getFolder() {
+		return "files/";
+	}
+
+	@Override
+	public String getCSVDelimiterChar() {
+		return delimiter;
+	}
+
+	@Override
+	public String getCSVEnclosureChar() {
+		return enclosure;
+	}
+
+	@Override
+	public int getProcTimeout() {
+		return 0;
+	}
+
+	@Override
+	public String getBatchMode() {
+		return getValue("batch_mode", "serial");
+	}
+
+	@Override
+	public int getGeneralBatchSize() {
+		return getInt("general_batch_size");
+	}
+
+	@Override
+	public boolean writeHeader() {
+		return false;
+	}
+
+	@Override
+	public String getProcCfgFileName() {
+		return "test.ifacex";
+	}
+
+	@Override
+	public int getInt(String key) {
+		try {
+			return Integer.parseInt(getValue(key, "-1").trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public String getValue(String key) {
+		return values.get(key);
+	}
+
+	@Override
+	public String getValue(String key, String defaultValue) {
+		final String value = values.get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	@Override
+	public String getSourceInterface() {
+		return "test_in";
+	}
+
+	@Override
+	public String[] getDestinationInterfaces() {
+		return new String[] {"test_out"};
+	}
+
+	@Override
+	public String[] getSourceEntities() {
+		return new String[] {"test"};
+	}
+
+}
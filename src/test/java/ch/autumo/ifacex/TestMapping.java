@@ -0,0 +1,83 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex;
+
+import java.lang.reflect.Proxy;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * Writer mapping for tests.
+ * 
+ * Only the accessors of the destination entity, the insert fields and
+ * values and the source entity are implemented; all other methods throw
+ * an {@link UnsupportedOperationException}.
+ */
+public final class TestMapping {
+
+	private TestMapping() {
+	}
+	
+	/**
+	 * Create a writer mapping without field mappings; the
+	 * source fields are written one to one.
+	 * 
+	 * @param entity source entity
+	 * @param table destination entity or null
+	 * @return writer mapping
+	 */
+	public static WriterMapping create(SourceEntity entity, String table) {
+		return create(entity, table, null, null);
+	}
+	
+	/**
+	 * Create a writer mapping.
+	 * 
+	 * @param entity source entity
+	 * @param table destination entity or null
+	 * @param fields insert fields; null without field mappings
+	 * @param values output mapping of source records to insert values
+	 * @return writer mapping
+	 */
+	public static WriterMapping create(SourceEntity entity, String table, String fields[], UnaryOperator<String[]> values) {
+		return (WriterMapping) Proxy.newProxyInstance(WriterMapping.class.getClassLoader(), new Class<?>[] {WriterMapping.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getSourceEntity":
+					return entity;
+				case "getDestinationEntity":
+					return table;
+				case "hasDestinationEntity":
+					return Boolean.valueOf(table != null);
+				case "hasFieldMappings":
+					return Boolean.valueOf(fields != null);
+				case "getFieldsForInsert":
+					return fields;
+				case "getValuesForInsert":
+					return values.apply((String[]) args[0]);
+				case "createConformEntityName":
+					return ((String) args[0]).replace('/', ':');
+				case "toString":
+					return "TestMapping[" + entity.getEntity() + "]";
+				case "hashCode":
+					return Integer.valueOf(System.identityHashCode(proxy));
+				case "equals":
+					return Boolean.valueOf(proxy == args[0]);
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+	
+}
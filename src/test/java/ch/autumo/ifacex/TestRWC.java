@@ -0,0 +1,91 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ * 
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ * 
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ * 
+ */
+package ch.autumo.ifacex;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+
+
+/**
+ * Offline reader/writer configuration for tests.
+ * 
+ * The generic configuration accessors ('isYes', 'getConfig', 'getNumber',
+ * 'getSeparatedValues') read the given values by post-fix; other methods
+ * return the given results by method name, otherwise null, 0 or false.
+ */
+public final class TestRWC {
+
+	private TestRWC() {
+	}
+	
+	/**
+	 * Create a test configuration.
+	 * 
+	 * @param values configuration values by post-fix, e.g. '_my_variable'
+	 * @return reader/writer configuration
+	 */
+	public static RWC create(final Map<String, String> values) {
+		return create(values, Collections.<String, Object>emptyMap());
+	}
+	
+	/**
+	 * Create a test configuration with specific method results.
+	 * 
+	 * @param values configuration values by post-fix, e.g. '_my_variable'
+	 * @param results results by method name, e.g. 'getDestUniqueIdField'
+	 * @return reader/writer configuration
+	 */
+	public static RWC create(final Map<String, String> values, final Map<String, Object> results) {
+		return (RWC) Proxy.newProxyInstance(RWC.class.getClassLoader(), new Class<?>[] {RWC.class}, (proxy, method, args) -> {
+			if (results.containsKey(method.getName()))
+				return results.get(method.getName());
+			final String value = args != null && args.length > 0 && args[0] instanceof String ? values.get(args[0]) : null;
+			switch (method.getName()) {
+				case "isYes":
+					return value != null ? Boolean.valueOf(value.equalsIgnoreCase("yes")) : (args.length > 1 ? args[1] : Boolean.FALSE);
+				case "getConfig":
+					return value != null ? value : (args.length > 1 ? args[1] : null);
+				case "getNumber":
+					try {
+						return Integer.valueOf(value.trim());
+					} catch (RuntimeException e) {
+						return args.length > 1 ? args[1] : Integer.valueOf(-1);
+					}
+				case "getSeparatedValues":
+					return value != null ? value.split(",") : null;
+				case "toString":
+					return "TestRWC" + values;
+				case "hashCode":
+					return Integer.valueOf(System.identityHashCode(proxy));
+				case "equals":
+					return Boolean.valueOf(proxy == args[0]);
+				default:
+					return defaultValue(method.getReturnType());
+			}
+		});
+	}
+	
+	private static Object defaultValue(Class<?> type) {
+		if (!type.isPrimitive() || type == void.class)
+			return null;
+		if (type == boolean.class)
+			return Boolean.FALSE;
+		if (type == double.class)
+			return Double.valueOf(0);
+		return Integer.valueOf(0);
+	}
+	
+}
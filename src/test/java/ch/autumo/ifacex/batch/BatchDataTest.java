@@ -0,0 +1,108 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.batch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import ch.autumo.commons.utils.system.OSUtils;
+import ch.autumo.ifacex.TestIPC;
+
+
+/**
+ * Batch storages and the batch representation.
+ */
+public class BatchDataTest {
+
+	private static BatchData batch(boolean columnar) {
+		final BatchData batch = new BatchData(new TestIPC().csv(",", "\""), columnar);
+		batch.addRecordValues(new String[] {"1", "Zürich", "CH"});
+		batch.addRecordValues(new String[] {"2", "€ 10", null});
+		batch.addRecordValues(new String[] {"3"});
+		return batch;
+	}
+
+	@Test
+	public void rowAndColumnarStorageHoldTheSameRecords() {
+		final BatchData rows = batch(false);
+		final BatchData columns = batch(true);
+		assertEquals(rows.size(), columns.size());
+		while (rows.hasNext())
+			assertArrayEquals(rows.next(), columns.next());
+		assertEquals(rows.toString(), columns.toString());
+	}
+
+	@Test
+	public void representation() {
+		final String nl = OSUtils.LINE_SEPARATOR;
+		assertEquals("1,Zürich,CH" + nl + "2,€ 10,null" + nl + "3", batch(false).toString());
+		assertEquals("", new BatchData(new TestIPC(), false).toString());
+	}
+
+	@Test
+	public void writeToAppendableEqualsToString() throws Exception {
+		for (boolean columnar : new boolean[] {false, true}) {
+			final BatchData batch = batch(columnar);
+			final StringWriter out = new StringWriter();
+			batch.writeTo(out);
+			assertEquals(batch.toString(), out.toString());
+		}
+	}
+
+	@Test
+	public void writeToChannelEqualsToString() throws Exception {
+		final BatchData batch = batch(true);
+		// buffers smaller than a multi-byte character and larger than the batch
+		for (int capacity : new int[] {4, 7, 64, 4096}) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			batch.writeTo(Channels.newChannel(out), ByteBuffer.allocateDirect(capacity), StandardCharsets.UTF_8);
+			assertEquals("capacity " + capacity, batch.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void writeToChannelWritesBufferedContentFirst() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final ByteBuffer buffer = ByteBuffer.allocate(16);
+		buffer.put("head:".getBytes(StandardCharsets.UTF_8));
+		final BatchData batch = batch(false);
+		batch.writeTo(Channels.newChannel(out), buffer, StandardCharsets.UTF_8);
+		assertEquals("head:" + batch.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void frozenBatchRejectsRecords() {
+		final BatchData batch = batch(false);
+		batch.copy();
+		batch.addRecordValues(new String[] {"4"});
+	}
+
+	@Test
+	public void copyNormalizesValues() {
+		final BatchData batch = batch(false);
+		final BatchData copy = batch.copy();
+		assertEquals(batch.modifyValueBeforeAdding(" null ", "id"), copy.modifyValueBeforeAdding(" null ", "id"));
+		assertEquals(batch.modifyValueBeforeAdding(" a ", "id"), copy.modifyValueBeforeAdding(" a ", "id"));
+	}
+
+}
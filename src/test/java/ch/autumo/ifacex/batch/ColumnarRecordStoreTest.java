@@ -0,0 +1,112 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.batch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * Columnar record storage; dictionary encoding, the char buffer
+ * for high-cardinality columns and records of different widths.
+ */
+public class ColumnarRecordStoreTest {
+
+	@Test
+	public void dictionaryValuesAreShared() {
+		final ColumnarRecordStore store = new ColumnarRecordStore();
+		final String ch = new String("CH");
+		store.add(new String[] {"1", ch});
+		store.add(new String[] {"2", new String("CH")});
+		store.add(new String[] {"3", "DE"});
+		assertEquals(3, store.size());
+		assertSame(ch, store.value(0, 1));
+		assertSame(ch, store.value(1, 1));
+		assertEquals("DE", store.value(2, 1));
+		assertArrayEquals(new String[] {"2", "CH"}, store.get(1));
+	}
+
+	@Test
+	public void highCardinalityColumnSpillsToCharBuffer() {
+		final ColumnarRecordStore store = new ColumnarRecordStore(4);
+		final int rows = 1000;
+		for (int i = 0; i < rows; i++)
+			store.add(new String[] {"id-" + i, i % 2 == 0 ? "even" : "odd", i % 7 == 0 ? null : ""});
+		assertEquals(rows, store.size());
+		for (int i = 0; i < rows; i++) {
+			assertArrayEquals(new String[] {"id-" + i, i % 2 == 0 ? "even" : "odd", i % 7 == 0 ? null : ""}, store.get(i));
+			assertEquals("id-" + i, store.value(i, 0));
+		}
+	}
+
+	@Test
+	public void recordsOfDifferentWidths() {
+		final ColumnarRecordStore store = new ColumnarRecordStore();
+		for (int i = 0; i < 100; i++)
+			store.add(new String[] {"a" + i});
+		// opens a new column after more than the initial rows
+		store.add(new String[] {"wide", "b", "c"});
+		store.add(new String[0]);
+		store.add(new String[] {"x", "y"});
+
+		assertEquals(1, store.width(0));
+		assertEquals(3, store.width(100));
+		assertEquals(0, store.width(101));
+		assertEquals(2, store.width(102));
+		assertArrayEquals(new String[] {"a5"}, store.get(5));
+		assertArrayEquals(new String[] {"wide", "b", "c"}, store.get(100));
+		assertArrayEquals(new String[0], store.get(101));
+		assertArrayEquals(new String[] {"x", "y"}, store.get(102));
+		assertNull(store.value(5, 1));
+		assertNull(store.value(102, 2));
+	}
+
+	@Test
+	public void sameRecordsAsRowStorage() {
+		final Random random = new Random(42);
+		final RecordStore rows = new RowRecordStore();
+		final RecordStore columns = new ColumnarRecordStore(16);
+		for (int i = 0; i < 2000; i++) {
+			final String record[] = new String[1 + random.nextInt(5)];
+			for (int j = 0; j < record.length; j++) {
+				final int r = random.nextInt(100);
+				record[j] = r < 5 ? null : (r < 60 ? "v" + (r % 10) : Long.toHexString(random.nextLong()));
+			}
+			rows.add(record.clone());
+			columns.add(record.clone());
+		}
+		assertEquals(rows.size(), columns.size());
+		for (int i = 0; i < rows.size(); i++) {
+			assertArrayEquals("record " + i, rows.get(i), columns.get(i));
+			assertEquals(rows.width(i), columns.width(i));
+			for (int j = 0; j < 6; j++)
+				assertEquals(rows.value(i, j), columns.value(i, j));
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void getOutOfBounds() {
+		final ColumnarRecordStore store = new ColumnarRecordStore();
+		store.add(new String[] {"a"});
+		store.get(1);
+	}
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.reader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.autumo.ifacex.TestIPC;
+
+
+/**
+ * CSV tokenizer; all input types are checked against the
+ * reference split {@link ch.autumo.ifacex.IPC#getCSVSepValues(String)}.
+ */
+public class CSVTokenizerTest {
+
+	private static final String ALPHABET = "ab ;\"üx1€";
+
+	private final TestIPC config = new TestIPC().csv(";", "\"");
+	private final CSVTokenizer tokenizer = CSVTokenizer.of(config);
+	private final FieldSlices fields = new FieldSlices(2);
+
+
+	private String[] fromString(String line) {
+		tokenizer.tokenize(line, fields);
+		return fields.toArray();
+	}
+
+	private String[] fromChars(String line) {
+		// surrounded by delimiters that must not be seen
+		final char chars[] = (";;;" + line + ";;;").toCharArray();
+		tokenizer.tokenize(chars, 3, line.length(), fields);
+		return fields.toArray();
+	}
+
+	private String[] fromBytes(String line) {
+		final byte raw[] = line.getBytes(StandardCharsets.UTF_8);
+		final byte bytes[] = new byte[raw.length + 6];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = ';';
+		System.arraycopy(raw, 0, bytes, 3, raw.length);
+		tokenizer.tokenize(bytes, 3, raw.length, fields);
+		return fields.toArray();
+	}
+
+	private void assertTokenized(String line) {
+		final String expected[] = config.getCSVSepValues(line);
+		assertArrayEquals("string: " + line, expected, fromString(line));
+		assertArrayEquals("chars: " + line, expected, fromChars(line));
+		assertArrayEquals("bytes: " + line, expected, fromBytes(line));
+	}
+
+	@Test
+	public void plainFields() {
+		assertTokenized("");
+		assertTokenized("a");
+		assertTokenized(";");
+		assertTokenized("a;b;c");
+		assertTokenized(";a;;b;");
+		assertTokenized(" a ; b ");
+		assertTokenized("Zürich;€;1");
+	}
+
+	@Test
+	public void enclosedFields() {
+		assertTokenized("\"a\"");
+		assertTokenized("\"a;b\";c");
+		assertTokenized("a;\"\";c");
+		assertTokenized("\"say \"\"hi\"\"\";x");
+		assertTokenized("\"\"\"\"");
+		assertTokenized("\"ü;€\";\"\"\"ü\"\"\"");
+	}
+
+	@Test
+	public void unclosedEnclosure() {
+		assertTokenized("\"a;b");
+		assertTokenized("x;\"a\"\"b;c");
+	}
+
+	@Test
+	public void charactersAfterClosingEnclosure() {
+		assertTokenized("\"a\"b;c");
+		assertTokenized("\"a\"b");
+	}
+
+	@Test
+	public void longLinesForWordScan() {
+		final StringBuilder sb = new StringBuilder();
+		for (int len = 0; len < 40; len++) {
+			sb.setLength(0);
+			for (int i = 0; i < len; i++)
+				sb.append('x');
+			// delimiter at every position of an 8 byte word
+			for (int d = 0; d <= len; d++)
+				assertTokenized(sb.substring(0, d) + ";" + sb.substring(d));
+		}
+	}
+
+	@Test
+	public void randomWellFormedLines() {
+		final Random random = new Random(4711);
+		for (int n = 0; n < 2000; n++) {
+			final int count = 1 + random.nextInt(6);
+			final String values[] = new String[count];
+			final StringBuilder line = new StringBuilder();
+			for (int f = 0; f < count; f++) {
+				final StringBuilder value = new StringBuilder();
+				final int len = random.nextInt(20);
+				for (int i = 0; i < len; i++)
+					value.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+				values[f] = value.toString();
+				final boolean enclose = value.indexOf(";") >= 0 || value.indexOf("\"") >= 0 || random.nextBoolean();
+				if (f > 0)
+					line.append(';');
+				if (enclose)
+					line.append('"').append(values[f].replace("\"", "\"\"")).append('"');
+				else
+					line.append(values[f]);
+			}
+			assertArrayEquals(line.toString(), values, fromString(line.toString()));
+			assertTokenized(line.toString());
+		}
+	}
+
+	@Test
+	public void withoutEnclosure() {
+		final TestIPC plain = new TestIPC().csv(",", "");
+		final CSVTokenizer t = CSVTokenizer.of(plain);
+		assertEquals(CSVTokenizer.NO_ENCLOSURE, t.getEnclosure());
+		final String line = "\"a\",b,,\"c";
+		t.tokenize(line, fields);
+		assertArrayEquals(plain.getCSVSepValues(line), fields.toArray());
+	}
+
+	@Test
+	public void slices() {
+		final String line = "ab;\"c\"\"d\";\"e\"";
+		assertEquals(3, tokenizer.tokenize(line, fields));
+		assertEquals(0, fields.start(0));
+		assertEquals(2, fields.end(0));
+		assertFalse(fields.isEscaped(0));
+		assertTrue(fields.isEscaped(1));
+		assertFalse(fields.isEscaped(2));
+		assertTrue(fields.contentEquals(0, "ab"));
+		assertTrue(fields.contentEquals(1, "c\"d"));
+		assertTrue(fields.contentEquals(2, "e"));
+		assertFalse(fields.contentEquals(0, "abc"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void multiCharDelimiter() {
+		CSVTokenizer.of(new TestIPC().csv(";;", "\""));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void nonAsciiDelimiterForBytes() {
+		new CSVTokenizer('§', '"').tokenize(new byte[0], 0, 0, fields);
+	}
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+
+/**
+ * Asynchronous compression channel with pooled buffers.
+ */
+public class CompressionTest {
+
+	@Test
+	public void reusedAndOversizedBuffers() throws IOException {
+		final Path file = Files.createTempFile("ifacex-compression", ".gz");
+		try {
+			final Random random = new Random(42);
+			final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			try (WritableByteChannel channel = Compression.GZIP.open(file, 1)) {
+				for (int i = 0; i < 200; i++) {
+					// small first write sizes the chunks, later ones are split
+					final int n = i == 0 ? 10 : random.nextInt(buffer.capacity());
+					buffer.clear();
+					for (int j = 0; j < n; j++)
+						buffer.put((byte) random.nextInt(16));
+					buffer.flip();
+					expected.write(buffer.array(), 0, n);
+					channel.write(buffer);
+				}
+			}
+			final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+				final byte b[] = new byte[8192];
+				int n;
+				while ((n = in.read(b)) > 0)
+					actual.write(b, 0, n);
+			}
+			assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.autumo.commons.utils.system.OSUtils;
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.TestIPC;
+import ch.autumo.ifacex.TestMapping;
+import ch.autumo.ifacex.TestRWC;
+import ch.autumo.ifacex.WriterMapping;
+import ch.autumo.ifacex.batch.BatchData;
+
+
+/**
+ * CSV files written by the NIO CSV writer; enclosure, charsets,
+ * buffer boundaries and compression.
+ */
+public class NioCSVWriterTest {
+
+	private static final String NL = OSUtils.LINE_SEPARATOR;
+	private static final String WRITER = "csv_out";
+
+	private Path folder;
+	private Path file;
+
+
+	@Before
+	public void createFolder() throws IOException {
+		folder = Files.createTempDirectory("ifacex-csv");
+		file = folder.resolve("out.csv");
+	}
+
+	@After
+	public void deleteFolder() throws IOException {
+		try (java.util.stream.Stream<Path> files = Files.list(folder)) {
+			for (Path p : (Iterable<Path>) files::iterator)
+				Files.delete(p);
+		}
+		Files.delete(folder);
+	}
+
+	private String write(SourceEntity entity, WriterMapping mapping, Map<String, String> values, String[]... records) throws IfaceXException {
+		final Map<String, Object> results = new HashMap<String, Object>();
+		results.put("getMapping", mapping);
+		results.put("getFileWithDestName", file.toString());
+		final TestIPC config = new TestIPC().csv(";", "\"").writer(TestRWC.create(values, results));
+		final BatchData batch = new BatchData(config);
+		for (String record[] : records)
+			batch.addRecordValues(record);
+		final NioCSVWriter writer = new NioCSVWriter();
+		writer.initialize(WRITER, config, null);
+		writer.initializeEntity(WRITER, config, entity);
+		writer.writeHeader(WRITER, config, entity);
+		writer.writeBatchData(WRITER, config, batch, entity);
+		writer.close(WRITER);
+		return WRITER;
+	}
+
+	private String write(Map<String, String> values, String[]... records) throws IfaceXException {
+		final SourceEntity entity = new SourceEntity(new TestIPC(), "person", new String[] {"id", "name"});
+		return write(entity, TestMapping.create(entity, null), values, records);
+	}
+
+	private static Map<String, String> config(String... keyValues) {
+		final Map<String, String> values = new HashMap<String, String>();
+		for (int i = 0; i < keyValues.length; i += 2)
+			values.put(keyValues[i], keyValues[i + 1]);
+		return values;
+	}
+
+	private String read(Charset charset) throws IOException {
+		return new String(Files.readAllBytes(file), charset);
+	}
+
+	@Test
+	public void enclosure() throws Exception {
+		write(config(),
+				new String[] {"1", "plain"},
+				new String[] {"2", "a;b"},
+				new String[] {"3", "say \"hi\""},
+				new String[] {"4", "line\nbreak"},
+				new String[] {"5", "cr\r"},
+				new String[] {"6", null},
+				new String[] {"7", ""},
+				new String[] {"8", "Zürich 😀"});
+		assertEquals("id;name" + NL
+				+ "1;plain" + NL
+				+ "2;\"a;b\"" + NL
+				+ "3;\"say \"\"hi\"\"\"" + NL
+				+ "4;\"line\nbreak\"" + NL
+				+ "5;\"cr\r\"" + NL
+				+ "6;" + NL
+				+ "7;" + NL
+				+ "8;Zürich 😀" + NL, read(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void otherCharset() throws Exception {
+		write(config(NioCSVWriter.KEY_CHARSET, "ISO-8859-1", NioCSVWriter.KEY_WRITE_HEADER, "no"),
+				new String[] {"1", "Zürich \"ZH\""},
+				new String[] {"2", "€"});
+		assertEquals("1;\"Zürich \"\"ZH\"\"\"" + NL + "2;?" + NL, read(StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	public void recordsAcrossAndLargerThanTheBuffer() throws Exception {
+		final String records[][] = new String[2000][];
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < records.length; i++) {
+			final StringBuilder name = new StringBuilder("name-").append(i);
+			// some records are larger than the buffer of 4 KB
+			if (i % 500 == 7)
+				for (int j = 0; j < 1000; j++)
+					name.append("ü;");
+			records[i] = new String[] {String.valueOf(i), name.toString()};
+			final String value = name.indexOf(";") >= 0 ? "\"" + name + "\"" : name.toString();
+			expected.append(i).append(';').append(value).append(NL);
+		}
+		write(config(NioCSVWriter.KEY_BUFFER_SIZE_KB, "4", NioCSVWriter.KEY_WRITE_HEADER, "no"), records);
+		assertEquals(expected.toString(), read(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void outputMapping() throws Exception {
+		final SourceEntity entity = new SourceEntity(new TestIPC(), "person", new String[] {"id", "name"});
+		final WriterMapping mapping = TestMapping.create(entity, "contact", new String[] {"contact", "upper"},
+				record -> new String[] {"C" + record[0], record[1].toUpperCase()});
+		write(entity, mapping, config(), new String[] {"1", "anna"});
+		assertEquals("contact;upper" + NL + "C1;ANNA" + NL, read(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void gzipCompression() throws Exception {
+		final String records[][] = new String[5000][];
+		final StringBuilder expected = new StringBuilder("id;name" + NL);
+		for (int i = 0; i < records.length; i++) {
+			records[i] = new String[] {String.valueOf(i), "name;" + i};
+			expected.append(i).append(";\"name;").append(i).append('"').append(NL);
+		}
+		write(config(Compression.KEY_COMPRESSION, "gzip", NioCSVWriter.KEY_BUFFER_SIZE_KB, "4"), records);
+		final Path gz = folder.resolve("out.csv.gz");
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(gz))) {
+			final byte b[] = new byte[8192];
+			int n;
+			while ((n = in.read(b)) > 0)
+				out.write(b, 0, n);
+		}
+		assertEquals(expected.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * In-memory fake of a JDBC connection to one table for tests.
+ * 
+ * Inserted rows are logged and their keys are kept; key queries
+ * ('SELECT k FROM t WHERE ...=? UNION ALL ...') return the positions
+ * of the keys that exist. Updates are logged only. Failures can be
+ * injected for statements and for closing statements.
+ */
+final class FakeDatabase {
+
+	/** Executed rows, e.g. 'INSERT [1, a]' or 'UPDATE [a, 1]'. */
+	final List<String> executed = new ArrayList<String>();
+	/** Prepared SQL statements. */
+	final List<String> prepared = new ArrayList<String>();
+	/** Existing keys; key values joined by '|'. */
+	final Set<String> keys = new HashSet<String>();
+
+	int commits = 0;
+	int rollbacks = 0;
+	int closed = 0;
+	int cleared = 0;
+	boolean autoCommit = true;
+
+	/** Statements starting with this SQL fail on execution. */
+	String failOn = null;
+	/** Statements starting with this SQL fail when they are closed. */
+	String failOnClose = null;
+
+	private final int columns;
+	private final int keySlots[];
+	private final String product;
+
+
+	/**
+	 * Create a fake database.
+	 * 
+	 * @param columns columns of the table
+	 * @param keySlots indexes of the key columns
+	 * @param product database product name
+	 */
+	FakeDatabase(int columns, int keySlots[], String product) {
+		this.columns = columns;
+		this.keySlots = keySlots;
+		this.product = product;
+	}
+
+	/**
+	 * Connection to this database.
+	 * 
+	 * @return connection
+	 */
+	Connection connection() {
+		return proxy(Connection.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getAutoCommit":
+					return Boolean.valueOf(autoCommit);
+				case "setAutoCommit":
+					autoCommit = ((Boolean) args[0]).booleanValue();
+					return null;
+				case "commit":
+					commits++;
+					return null;
+				case "rollback":
+					rollbacks++;
+					return null;
+				case "prepareStatement":
+					prepared.add((String) args[0]);
+					return statement((String) args[0]);
+				case "getMetaData":
+					return proxy(DatabaseMetaData.class, (p, m, a) -> {
+						if (m.getName().equals("getDatabaseProductName"))
+							return product;
+						throw new UnsupportedOperationException(m.getName());
+					});
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private PreparedStatement statement(String sql) {
+		final List<Object> parameters = new ArrayList<Object>();
+		final List<List<Object>> batch = new ArrayList<List<Object>>();
+		return proxy(PreparedStatement.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "setString":
+				case "setTimestamp":
+					set(parameters, ((Integer) args[0]).intValue(), args[1]);
+					return null;
+				case "setNull":
+					set(parameters, ((Integer) args[0]).intValue(), null);
+					return null;
+				case "addBatch":
+					batch.add(new ArrayList<Object>(parameters));
+					parameters.clear();
+					return null;
+				case "clearBatch":
+					batch.clear();
+					cleared++;
+					return null;
+				case "executeBatch":
+					check(sql, failOn);
+					final int counts[] = new int[batch.size()];
+					for (int i = 0; i < counts.length; i++)
+						counts[i] = execute(sql, batch.get(i));
+					batch.clear();
+					return counts;
+				case "executeUpdate":
+					check(sql, failOn);
+					final int count = execute(sql, new ArrayList<Object>(parameters));
+					parameters.clear();
+					return Integer.valueOf(count);
+				case "executeQuery":
+					check(sql, failOn);
+					return query(sql, new ArrayList<Object>(parameters));
+				case "close":
+					closed++;
+					check(sql, failOnClose);
+					return null;
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private int execute(String sql, List<Object> parameters) {
+		if (!sql.startsWith("INSERT")) {
+			executed.add(sql.substring(0, sql.indexOf(' ')) + " " + parameters);
+			return 1;
+		}
+		// multi-row inserts: several rows per parameter list
+		final int rows = parameters.size() / columns;
+		for (int r = 0; r < rows; r++) {
+			final List<Object> row = parameters.subList(r * columns, (r + 1) * columns);
+			executed.add("INSERT " + row);
+			keys.add(key(row, keySlots));
+		}
+		return rows;
+	}
+
+	private ResultSet query(String sql, List<Object> parameters) {
+		final int count = sql.split(" UNION ALL ").length;
+		final int perKey = parameters.size() / count;
+		final int all[] = new int[perKey];
+		for (int i = 0; i < perKey; i++)
+			all[i] = i;
+		final List<Integer> found = new ArrayList<Integer>();
+		for (int k = 0; k < count; k++) {
+			if (keys.contains(key(parameters.subList(k * perKey, (k + 1) * perKey), all)))
+				found.add(Integer.valueOf(k));
+		}
+		final int position[] = {-1};
+		return proxy(ResultSet.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "next":
+					return Boolean.valueOf(++position[0] < found.size());
+				case "getInt":
+					return found.get(position[0]);
+				case "close":
+					return null;
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private static String key(List<Object> values, int slots[]) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < slots.length; i++)
+			sb.append(i > 0 ? "|" : "").append(values.get(slots[i]));
+		return sb.toString();
+	}
+
+	private static void set(List<Object> parameters, int index, Object value) {
+		while (parameters.size() < index)
+			parameters.add(null);
+		parameters.set(index - 1, value);
+	}
+
+	private static void check(String sql, String fail) throws SQLException {
+		if (fail != null && sql.startsWith(fail))
+			throw new SQLException("Failed: " + sql);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+	}
+
+	@Override
+	public String toString() {
+		return "FakeDatabase" + Arrays.toString(executed.toArray());
+	}
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.TestIPC;
+import ch.autumo.ifacex.TestMapping;
+import ch.autumo.ifacex.TestRWC;
+import ch.autumo.ifacex.batch.BatchData;
+
+
+/**
+ * Batch and multi-row inserts against an in-memory fake database.
+ */
+public class JdbcBatchInserterTest {
+
+	private static final SourceEntity ADDRESS = new SourceEntity(new TestIPC(), "address", new String[] {"id", "street", "city"});
+
+	private static StatementPlan plan() throws IfaceXException {
+		return StatementPlan.compile(TestMapping.create(ADDRESS, null), TestRWC.create(new HashMap<String, String>()));
+	}
+
+	private static BatchData batch(String... ids) {
+		final BatchData batch = new BatchData(new TestIPC());
+		for (String id : ids)
+			batch.addRecordValues(new String[] {id, "street " + id, "city"});
+		return batch;
+	}
+
+	@Test
+	public void multiRowInsertWithRest() throws IfaceXException {
+		final FakeDatabase db = new FakeDatabase(3, new int[0], "PostgreSQL");
+		try (JdbcBatchInserter inserter = JdbcBatchInserter.create(db.connection(), plan(), true, 2, "batch")) {
+			assertFalse(db.autoCommit);
+			inserter.insert(batch("1", "2", "3"));
+			inserter.finish();
+			assertEquals(3, inserter.getWritten());
+		}
+		assertEquals(Arrays.asList(
+				"INSERT [1, street 1, city]",
+				"INSERT [2, street 2, city]",
+				"INSERT [3, street 3, city]"), db.executed);
+		assertEquals(Arrays.asList(
+				"INSERT INTO address (id, street, city) VALUES (?, ?, ?), (?, ?, ?)",
+				"INSERT INTO address (id, street, city) VALUES (?, ?, ?)"), db.prepared);
+		assertEquals(2, db.closed);
+		assertTrue(db.autoCommit);
+	}
+
+	@Test
+	public void failingCloseClosesAllStatements() throws IfaceXException {
+		final FakeDatabase db = new FakeDatabase(3, new int[0], "PostgreSQL");
+		db.failOnClose = "INSERT";
+		try (JdbcBatchInserter inserter = JdbcBatchInserter.create(db.connection(), plan(), true, 2, "batch")) {
+			inserter.insert(batch("1", "2", "3"));
+			inserter.finish();
+		}
+		// both the full and the rest statement, although the first fails
+		assertEquals(2, db.closed);
+		assertTrue(db.autoCommit);
+	}
+
+}
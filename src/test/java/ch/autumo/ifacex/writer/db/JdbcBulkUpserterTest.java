@@ -0,0 +1,201 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.RWC;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.TestIPC;
+import ch.autumo.ifacex.TestMapping;
+import ch.autumo.ifacex.TestRWC;
+import ch.autumo.ifacex.batch.BatchData;
+import ch.autumo.ifacex.writer.WriterException;
+
+
+/**
+ * Bulk upserts against an in-memory fake database.
+ */
+public class JdbcBulkUpserterTest {
+
+	private static final SourceEntity ADDRESS = new SourceEntity(new TestIPC(), "address", new String[] {"id", "street", "city"});
+
+	private static StatementPlan plan(String... filterFields) throws IfaceXException {
+		final Map<String, Object> results = new HashMap<String, Object>();
+		results.put("getDestFilterFields", filterFields.length == 0 ? null : filterFields);
+		results.put("getDestUniqueIdField", "id");
+		final RWC config = TestRWC.create(new HashMap<String, String>(), results);
+		return StatementPlan.compile(TestMapping.create(ADDRESS, null), config);
+	}
+
+	private static BatchData batch(String... ids) {
+		final BatchData batch = new BatchData(new TestIPC());
+		for (String id : ids)
+			batch.addRecordValues(new String[] {id, "street " + id, "city"});
+		return batch;
+	}
+
+	@Test
+	public void existingKeysAreUpdated() throws IfaceXException {
+		final FakeDatabase db = new FakeDatabase(3, new int[] {0}, "PostgreSQL");
+		db.keys.addAll(Arrays.asList("1", "2"));
+		try (JdbcBulkUpserter upserter = JdbcBulkUpserter.create(db.connection(), plan(), "select", 100, "batch")) {
+			// the second '3' is an update of the first
+			upserter.upsert(batch("1", "3", "2", "3"));
+			upserter.finish();
+			assertEquals(1, upserter.getInserted());
+			assertEquals(3, upserter.getUpdated());
+		}
+		assertEquals(Arrays.asList(
+				"INSERT [3, street 3, city]",
+				"UPDATE [street 1, city, 1]",
+				"UPDATE [street 2, city, 2]",
+				"UPDATE [street 3, city, 3]"), db.executed);
+		assertTrue(db.prepared.contains(
+				"SELECT 0 FROM address WHERE id=? UNION ALL SELECT 1 FROM address WHERE id=? UNION ALL SELECT 2 FROM address WHERE id=?"));
+		assertEquals(1, db.commits);
+	}
+
+	@Test
+	public void keysAreQueriedInChunks() throws IfaceXException {
+		final FakeDatabase db = new FakeDatabase(3, new int[] {0}, "PostgreSQL");
+		db.keys.addAll(Arrays.asList("2", "5"));
+		// max. 2 rows per execution, hence 2 keys per query
+		try (JdbcBulkUpserter upserter = JdbcBulkUpserter.create(db.connection(), plan(), "select", 2, "entity")) {
+			upserter.upsert(batch("1", "2", "3", "4", "5"));
+			// keys inserted before are updated
+			upserter.upsert(batch("1", "6"));
+			upserter.finish();
+			assertEquals(4, upserter.getInserted());
+			assertEquals(3, upserter.getUpdated());
+		}
+		assertTrue(db.prepared.contains("SELECT 0 FROM address WHERE id=? UNION ALL SELECT 1 FROM address WHERE id=?"));
+		assertTrue(db.prepared.contains("SELECT 0 FROM address WHERE id=?"));
+		assertEquals(1, db.commits);
+	}
+
+	@Test
+	public void compositeKeys() throws IfaceXException {
+		final FakeDatabase db = new FakeDatabase(3, new int[] {1, 2}, "PostgreSQL");
+		db.keys.add("street 1|city");
+		try (JdbcBulkUpserter upserter = JdbcBulkUpserter.create(db.connection(), plan("street", "city"), "select", 10, "batch")) {
+			upserter.upsert(batch("1", "2"));
+			assertEquals(1, upserter.getInserted());
+			assertEquals(1, upserter.getUpdated());
+		}
+		assertEquals(Arrays.asList("INSERT [2, street 2, city]", "UPDATE [1, street 1, city]"), db.executed);
+		assertTrue(db.prepared.contains(
+				"SELECT 0 FROM address WHERE street=? AND city=? UNION ALL SELECT 1 FROM address WHERE street=? AND city=?"));
+	}
+
+	@Test
+	public void nullKeysAreInserted() throws IfaceXException {
+		final FakeDatabase db = new FakeDatabase(3, new int[] {0}, "PostgreSQL");
+		try (JdbcBulkUpserter upserter = JdbcBulkUpserter.create(db.connection(), plan(), "select", 10, "batch")) {
+			upserter.upsert(batch(null, null));
+			assertEquals(2, upserter.getInserted());
+		}
+		assertFalse(db.prepared.toString().contains("SELECT"));
+	}
+
+	@Test
+	public void nativeSql() throws IfaceXException {
+		assertEquals("INSERT INTO address (id, street, city) VALUES (?, ?, ?) ON CONFLICT (id)"
+				+ " DO UPDATE SET street=EXCLUDED.street, city=EXCLUDED.city",
+				JdbcBulkUpserter.nativeSql(plan(), JdbcBulkUpserter.UPSERT_MODE_ON_CONFLICT));
+		assertEquals("INSERT INTO address (id, street, city) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE"
+				+ " street=VALUES(street), city=VALUES(city)",
+				JdbcBulkUpserter.nativeSql(plan(), JdbcBulkUpserter.UPSERT_MODE_ON_DUPLICATE_KEY));
+		// all columns are keys
+		final StatementPlan keys = plan("id", "street", "city");
+		assertEquals("INSERT INTO address (id, street, city) VALUES (?, ?, ?) ON CONFLICT (id, street, city) DO NOTHING",
+				JdbcBulkUpserter.nativeSql(keys, JdbcBulkUpserter.UPSERT_MODE_ON_CONFLICT));
+		assertEquals("INSERT INTO address (id, street, city) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE id=id",
+				JdbcBulkUpserter.nativeSql(keys, JdbcBulkUpserter.UPSERT_MODE_ON_DUPLICATE_KEY));
+	}
+
+	@Test
+	public void nativeMode() throws IfaceXException {
+		final FakeDatabase db = new FakeDatabase(3, new int[] {0}, "MySQL");
+		try (JdbcBulkUpserter upserter = JdbcBulkUpserter.create(db.connection(), plan(), " ON_DUPLICATE_KEY ", 10, "batch")) {
+			assertEquals(JdbcBulkUpserter.UPSERT_MODE_ON_DUPLICATE_KEY, upserter.getMode());
+			upserter.upsert(batch("1", "2"));
+			assertEquals(2, upserter.getInserted());
+		}
+		assertEquals(1, db.prepared.size());
+		assertTrue(db.prepared.get(0).endsWith("ON DUPLICATE KEY UPDATE street=VALUES(street), city=VALUES(city)"));
+	}
+
+	@Test
+	public void invalidConfiguration() throws IfaceXException {
+		final FakeDatabase db = new FakeDatabase(3, new int[] {0}, "PostgreSQL");
+		try {
+			JdbcBulkUpserter.create(db.connection(), plan(), "merge", 10, "batch");
+			fail("Invalid mode accepted");
+		} catch (WriterException e) {
+			// expected
+		}
+		final SourceEntity noKey = new SourceEntity(new TestIPC(), "log", new String[] {"text"});
+		final StatementPlan plan = StatementPlan.compile(TestMapping.create(noKey, null), TestRWC.create(new HashMap<String, String>()));
+		try {
+			JdbcBulkUpserter.create(db.connection(), plan, "select", 10, "batch");
+			fail("Plan without filter accepted");
+		} catch (WriterException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void failureRollsBack() throws IfaceXException {
+		final FakeDatabase db = new FakeDatabase(3, new int[] {0}, "PostgreSQL");
+		db.failOn = "INSERT";
+		try (JdbcBulkUpserter upserter = JdbcBulkUpserter.create(db.connection(), plan(), "select", 10, "batch")) {
+			assertFalse(db.autoCommit);
+			upserter.upsert(batch("1"));
+			fail("Failure not thrown");
+		} catch (WriterException e) {
+			// expected
+		}
+		assertEquals(1, db.rollbacks);
+		assertEquals(0, db.commits);
+		assertTrue(db.cleared > 0);
+		assertTrue(db.autoCommit);
+	}
+
+	@Test
+	public void failingCloseClosesAllStatements() throws IfaceXException {
+		final FakeDatabase db = new FakeDatabase(3, new int[] {0}, "PostgreSQL");
+		db.keys.add("1");
+		db.failOnClose = "INSERT";
+		try (JdbcBulkUpserter upserter = JdbcBulkUpserter.create(db.connection(), plan(), "select", 100, "batch")) {
+			upserter.upsert(batch("1", "2"));
+			upserter.finish();
+		}
+		// insert, update and key select, although the insert fails
+		assertEquals(db.prepared.size(), db.closed);
+		assertTrue(db.autoCommit);
+	}
+
+}
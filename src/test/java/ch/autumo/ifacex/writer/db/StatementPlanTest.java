@@ -0,0 +1,174 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.autumo.ifacex.IfaceXException;
+import ch.autumo.ifacex.RWC;
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.TestIPC;
+import ch.autumo.ifacex.TestMapping;
+import ch.autumo.ifacex.TestRWC;
+import ch.autumo.ifacex.WriterMapping;
+
+
+/**
+ * SQL and parameter binding of compiled statement plans.
+ */
+public class StatementPlanTest {
+
+	private static final SourceEntity ADDRESS = new SourceEntity(new TestIPC(), "address", new String[] {"id", "street", "city"});
+
+	private static RWC config(String filterFields[], String uniqueId, boolean extended) {
+		final Map<String, Object> results = new HashMap<String, Object>();
+		results.put("getDestFilterFields", filterFields);
+		results.put("getDestUniqueIdField", uniqueId);
+		results.put("getExtendedInsertMapping", Boolean.valueOf(extended));
+		return TestRWC.create(new HashMap<String, String>(), results);
+	}
+
+	/**
+	 * Prepared statement recording the bound parameters.
+	 */
+	private static PreparedStatement recorder(Map<Integer, Object> parameters) {
+		return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "setString":
+				case "setTimestamp":
+					parameters.put((Integer) args[0], args[1]);
+					return null;
+				case "setNull":
+					parameters.put((Integer) args[0], null);
+					return null;
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	@Test
+	public void sqlWithUniqueId() throws IfaceXException {
+		final StatementPlan plan = StatementPlan.compile(TestMapping.create(ADDRESS, null), config(null, "id", false));
+		assertEquals("address", plan.getTable());
+		assertEquals("INSERT INTO address (id, street, city) VALUES (?, ?, ?)", plan.getInsertSql());
+		assertEquals("UPDATE address SET street=?, city=? WHERE id=?", plan.getUpdateSql());
+		assertEquals("SELECT id FROM address WHERE id=?", plan.getSelectSql());
+		assertArrayEquals(new String[] {"id"}, plan.getFilterColumns());
+		assertArrayEquals(new int[] {0}, plan.getFilterSlots());
+		assertTrue(plan.hasFilter());
+	}
+
+	@Test
+	public void sqlWithFilterFields() throws IfaceXException {
+		final StatementPlan plan = StatementPlan.compile(TestMapping.create(ADDRESS, "ADDR"),
+				config(new String[] {" city", "STREET"}, "id", false));
+		assertEquals("INSERT INTO ADDR (id, street, city) VALUES (?, ?, ?)", plan.getInsertSql());
+		assertEquals("UPDATE ADDR SET id=? WHERE city=? AND street=?", plan.getUpdateSql());
+		assertEquals("SELECT city, street FROM ADDR WHERE city=? AND street=?", plan.getSelectSql());
+		assertArrayEquals(new int[] {2, 1}, plan.getFilterSlots());
+	}
+
+	@Test
+	public void sqlWithoutFilter() throws IfaceXException {
+		// a unique ID that isn't written is generated by the database
+		final StatementPlan plan = StatementPlan.compile(TestMapping.create(ADDRESS, null), config(null, "uid", false));
+		assertFalse(plan.hasFilter());
+		assertNull(plan.getUpdateSql());
+		assertNull(plan.getSelectSql());
+	}
+
+	@Test
+	public void sqlWithOnlyFilterColumns() throws IfaceXException {
+		final SourceEntity ids = new SourceEntity(new TestIPC(), "ids", new String[] {"id"});
+		final StatementPlan plan = StatementPlan.compile(TestMapping.create(ids, null), config(null, "id", false));
+		assertNull(plan.getUpdateSql());
+		assertEquals("SELECT id FROM ids WHERE id=?", plan.getSelectSql());
+	}
+
+	@Test
+	public void mappedColumns() throws IfaceXException {
+		final WriterMapping mapping = TestMapping.create(ADDRESS, "contact", new String[] {"contact_id", "town"},
+				record -> new String[] {"C" + record[0], record[2].toUpperCase()});
+		final StatementPlan plan = StatementPlan.compile(mapping, config(null, "contact_id", false));
+		assertEquals("INSERT INTO contact (contact_id, town) VALUES (?, ?)", plan.getInsertSql());
+		assertEquals("UPDATE contact SET town=? WHERE contact_id=?", plan.getUpdateSql());
+		assertArrayEquals(new String[] {"C1", "BERN"}, plan.values(new String[] {"1", "Main St", "Bern"}));
+	}
+
+	@Test(expected = IfaceXException.class)
+	public void unknownFilterField() throws IfaceXException {
+		StatementPlan.compile(TestMapping.create(ADDRESS, null), config(new String[] {"zip"}, null, false));
+	}
+
+	@Test
+	public void conformTableName() throws IfaceXException {
+		final SourceEntity entity = new SourceEntity(new TestIPC(), "crm/address", new String[] {"id"});
+		final StatementPlan plan = StatementPlan.compile(TestMapping.create(entity, null), config(null, null, false));
+		assertEquals("INSERT INTO crm:address (id) VALUES (?)", plan.getInsertSql());
+	}
+
+	@Test
+	public void binding() throws Exception {
+		final StatementPlan plan = StatementPlan.compile(TestMapping.create(ADDRESS, null), config(null, "id", false));
+		final String values[] = {"1", null, "NULL"};
+		final Map<Integer, Object> parameters = new HashMap<Integer, Object>();
+		plan.bindInsert(recorder(parameters), values);
+		assertEquals(3, parameters.size());
+		assertEquals("1", parameters.get(1));
+		assertNull(parameters.get(2));
+		assertEquals("NULL", parameters.get(3));
+
+		parameters.clear();
+		plan.bindUpdate(recorder(parameters), values);
+		assertNull(parameters.get(1));
+		assertEquals("NULL", parameters.get(2));
+		assertEquals("1", parameters.get(3));
+
+		parameters.clear();
+		plan.bindSelect(recorder(parameters), values);
+		assertEquals(1, parameters.size());
+		assertEquals("1", parameters.get(1));
+
+		// second row of a multi-row insert
+		parameters.clear();
+		assertEquals(7, plan.bindInsert(recorder(parameters), values, 4));
+		assertEquals("1", parameters.get(4));
+	}
+
+	@Test
+	public void extendedInsertMapping() throws Exception {
+		final StatementPlan plan = StatementPlan.compile(TestMapping.create(ADDRESS, null), config(null, "id", true));
+		final Map<Integer, Object> parameters = new HashMap<Integer, Object>();
+		plan.bindInsert(recorder(parameters), new String[] {"1", "null", "now()"});
+		assertEquals("1", parameters.get(1));
+		assertTrue(parameters.containsKey(2));
+		assertNull(parameters.get(2));
+		assertTrue(parameters.get(3) instanceof Timestamp);
+	}
+
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2023 autumo GmbH, Michael Gasche.
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of autumo GmbH The intellectual and technical
+ * concepts contained herein are proprietary to autumo GmbH
+ * and are protected by trade secret or copyright law.
+ *
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from autumo GmbH.
+ *
+ */
+package ch.autumo.ifacex.writer.json;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ch.autumo.ifacex.SourceEntity;
+import ch.autumo.ifacex.TestIPC;
+import ch.autumo.ifacex.TestMapping;
+import ch.autumo.ifacex.batch.BatchData;
+
+
+/**
+ * JSON escaping and encoding of the streaming JSON body writer.
+ */
+public class JsonBodyWriterTest {
+
+	/**
+	 * Reference: escaped JSON string, encoded afterwards.
+	 */
+	private static String json(String s) {
+		final StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			switch (c) {
+				case '"': sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				case '\b': sb.append("\\b"); break;
+				case '\f': sb.append("\\f"); break;
+				default:
+					if (c < 0x20)
+						sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+					else
+						sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private static String utf8(byte bytes[]) {
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void object() throws Exception {
+		final JsonBodyWriter writer = JsonBodyWriter.of(new String[] {"id", "name", "note"});
+		assertEquals("{\"id\":\"1\",\"name\":\"a\",\"note\":null}", utf8(writer.toBytes(new String[] {"1", "a", null})));
+		// missing values are null
+		assertEquals("{\"id\":\"1\",\"name\":null,\"note\":null}", utf8(writer.toBytes(new String[] {"1"})));
+		assertEquals("{}", utf8(JsonBodyWriter.of(new String[0]).toBytes(new String[] {"1"})));
+	}
+
+	@Test
+	public void escaping() throws Exception {
+		final JsonBodyWriter writer = JsonBodyWriter.of(new String[] {"say \"hi\"\n"});
+		final String values[] = {
+				"", "plain", "quote \" and backslash \\", "tab\tcr\rnl\nbs\bff\f", "\u0000\u0001\u001f",
+				"Zürich", "€ 10", "emoji 😀", "\u007f\u0080߿ࠀ￿" };
+		for (String value : values) {
+			final String expected = "{" + json("say \"hi\"\n") + ":" + json(value) + "}";
+			assertArrayEquals(value, expected.getBytes(StandardCharsets.UTF_8), writer.toBytes(new String[] {value}));
+		}
+	}
+
+	@Test
+	public void unpairedSurrogates() throws Exception {
+		final JsonBodyWriter writer = JsonBodyWriter.of(new String[] {"v"});
+		for (String value : new String[] {"a\ud83db", "a\ude00b", "\ud83d", "\ude00\ud83d"}) {
+			// same as String#getBytes(UTF_8)
+			assertArrayEquals(value, ("{\"v\":\"" + value + "\"}").getBytes(StandardCharsets.UTF_8), writer.toBytes(new String[] {value}));
+		}
+	}
+
+	@Test
+	public void randomStrings() throws Exception {
+		final JsonBodyWriter writer = JsonBodyWriter.of(new String[] {"v"});
+		final Random random = new Random(11);
+		for (int n = 0; n < 5000; n++) {
+			final StringBuilder sb = new StringBuilder();
+			final int len = random.nextInt(30);
+			for (int i = 0; i < len; i++) {
+				final int kind = random.nextInt(5);
+				if (kind == 0)
+					sb.append((char) random.nextInt(0x20));
+				else if (kind == 1)
+					sb.append((char) (0x20 + random.nextInt(0x60)));
+				else if (kind == 2)
+					sb.append((char) (0x80 + random.nextInt(0x780)));
+				else if (kind == 3)
+					sb.append((char) (0x800 + random.nextInt(0xD000)));
+				else
+					sb.appendCodePoint(0x10000 + random.nextInt(0xFFFFF));
+			}
+			final String value = sb.toString();
+			assertArrayEquals(value, ("{\"v\":" + json(value) + "}").getBytes(StandardCharsets.UTF_8), writer.toBytes(new String[] {value}));
+		}
+	}
+
+	@Test
+	public void outputs() throws Exception {
+		final JsonBodyWriter writer = JsonBodyWriter.of(new String[] {"id"});
+		final String record[] = {"Zürich"};
+		final byte expected[] = writer.toBytes(record);
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.write(record, out);
+		assertArrayEquals(expected, out.toByteArray());
+
+		final ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+		assertTrue(writer.write(record, buffer));
+		assertArrayEquals(expected, buffer.array());
+		// doesn't fit anymore: nothing is written
+		assertFalse(writer.write(record, buffer));
+		assertEquals(expected.length, buffer.position());
+	}
+
+	@Test
+	public void hugeRecordsDontBreakReuse() throws Exception {
+		final JsonBodyWriter writer = JsonBodyWriter.of(new String[] {"v"});
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++)
+			sb.append((char) ('a' + i % 26));
+		final String huge = sb.toString();
+		assertEquals("{\"v\":\"" + huge + "\"}", utf8(writer.toBytes(new String[] {huge})));
+		assertEquals("{\"v\":\"x\"}", utf8(writer.toBytes(new String[] {"x"})));
+	}
+
+	@Test
+	public void arrays() throws Exception {
+		final BatchData batch = new BatchData(new TestIPC());
+		final StringBuilder expected = new StringBuilder("[");
+		for (int i = 0; i < 1000; i++) {
+			batch.addRecordValues(new String[] {String.valueOf(i), "name \"" + i + "\""});
+			expected.append(i > 0 ? "," : "").append("{\"id\":\"").append(i).append("\",\"name\":\"name \\\"").append(i).append("\\\"\"}");
+		}
+		expected.append(']');
+		final JsonBodyWriter writer = JsonBodyWriter.of(new String[] {"id", "name"});
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.writeArray(batch, out);
+		assertEquals(expected.toString(), utf8(out.toByteArray()));
+
+		out.reset();
+		writer.writeArray(new BatchData(new TestIPC()), out);
+		assertEquals("[]", utf8(out.toByteArray()));
+	}
+
+	@Test
+	public void insertMapping() throws Exception {
+		final SourceEntity entity = new SourceEntity(new TestIPC(), "person", new String[] {"id", "name"});
+		final JsonBodyWriter mapped = JsonBodyWriter.forInsert(TestMapping.create(entity, "contact",
+				new String[] {"contact", "upper"}, record -> new String[] {"C" + record[0], record[1].toUpperCase()}));
+		assertEquals("{\"contact\":\"C1\",\"upper\":\"ANNA\"}", utf8(mapped.toBytes(new String[] {"1", "anna"})));
+
+		final JsonBodyWriter plain = JsonBodyWriter.forInsert(TestMapping.create(entity, null));
+		assertArrayEquals(new String[] {"id", "name"}, plain.getFields());
+		assertEquals("{\"id\":\"1\",\"name\":\"anna\"}", utf8(plain.toBytes(new String[] {"1", "anna"})));
+	}
+
+	@Test
+	public void concurrentRecords() throws Exception {
+		final JsonBodyWriter writer = JsonBodyWriter.of(new String[] {"id", "value"});
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int t = 0; t < 4; t++) {
+				final int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 2000; i++) {
+						final String value = thread + "-" + i + (i % 100 == 0 ? new String(new char[70000]).replace('\0', 'x') : "");
+						final String expected = "{\"id\":\"" + i + "\",\"value\":\"" + value + "\"}";
+						if (!expected.equals(utf8(writer.toBytes(new String[] {String.valueOf(i), value}))))
+							return Boolean.FALSE;
+					}
+					return Boolean.TRUE;
+				}));
+			}
+			for (Future<Boolean> future : futures)
+				assertTrue(future.get().booleanValue());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}